@@ -0,0 +1,136 @@
+package de.hitec.nhplus.benchmarks;
+
+import de.hitec.nhplus.datastorage.CaregiverDao;
+import de.hitec.nhplus.datastorage.ConnectionManager;
+import de.hitec.nhplus.datastorage.PatientDao;
+import de.hitec.nhplus.datastorage.SchemaMigrator;
+import de.hitec.nhplus.datastorage.TreatmentDao;
+import de.hitec.nhplus.model.Caregiver;
+import de.hitec.nhplus.model.Patient;
+import de.hitec.nhplus.model.Treatment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Temporary SQLite database for the benchmarks. The database is created in a temporary directory with the schema of
+ * the application and seeded with the given number of patients, caregivers and treatments. The seed data is generated
+ * with a fixed seed, so every run measures the same data. Closing the database deletes the directory.
+ * <p>
+ * Treatments are placed into hourly slots from 07:00 to 18:00 and last at most an hour, like the data of the
+ * <code>DataGenerator</code>. The n-th treatment gets caregiver n modulo the number of caregivers and patient n modulo
+ * the number of patients, and slot n divided by the number of caregivers. So no two treatments of a caregiver or of a
+ * patient overlap, and neither the seed data nor the treatments written by a benchmark are rejected by the conflict
+ * check of <code>TreatmentDao</code>.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+
+    private static final String[] DESCRIPTIONS = {"Gespräch", "Waschen", "Spaziergang", "Höhrtraining", "Lesen"};
+    private static final String[] SURNAMES = {"Herberger", "Gerdsen", "Franzen", "Yilmaz", "Neumann", "Müller"};
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+    private static final int FIRST_HOUR = 7;
+    private static final int SLOTS_PER_DAY = 12;
+
+    private final Path directory;
+    private final ConnectionManager connectionManager;
+    private final int patients;
+    private final int caregivers;
+    private long treatmentCount;
+
+    private BenchmarkDatabase(Path directory, ConnectionManager connectionManager, int patients, int caregivers) {
+        this.directory = directory;
+        this.connectionManager = connectionManager;
+        this.patients = patients;
+        this.caregivers = caregivers;
+    }
+
+    /**
+     * Creates and seeds a temporary database.
+     *
+     * @param patients   Number of patients, at least the number of caregivers.
+     * @param caregivers Number of caregivers.
+     * @param treatments Number of treatments, distributed evenly over the patients and caregivers.
+     * @return The seeded database.
+     */
+    public static BenchmarkDatabase create(int patients, int caregivers, int treatments)
+            throws IOException, SQLException {
+        if (patients < caregivers) {
+            throw new IllegalArgumentException("At least as many patients as caregivers are needed, were " + patients +
+                    " and " + caregivers);
+        }
+        Path directory = Files.createTempDirectory("nhplus-benchmark");
+        ConnectionManager connectionManager = new ConnectionManager(
+                "jdbc:sqlite:" + directory.resolve("nursingHome.db"), ConnectionManager.DEFAULT_READER_COUNT);
+        SchemaMigrator.migrate(connectionManager.getWriter());
+        BenchmarkDatabase database = new BenchmarkDatabase(directory, connectionManager, patients, caregivers);
+        database.seed(treatments);
+        return database;
+    }
+
+    public ConnectionManager getConnectionManager() {
+        return this.connectionManager;
+    }
+
+    /**
+     * Returns a new treatment of one of the seeded patients and caregivers in the next free slot, so it overlaps
+     * neither the seeded treatments nor the treatments returned before. Description, remark and duration are random.
+     *
+     * @param random Source of randomness.
+     * @return Treatment without tid.
+     */
+    public Treatment nextTreatment(Random random) {
+        long n = this.treatmentCount++;
+        long slot = n / this.caregivers;
+        LocalTime begin = LocalTime.of(FIRST_HOUR + (int) (slot % SLOTS_PER_DAY), 0);
+        return new Treatment(1 + n % this.patients, FIRST_DAY.plusDays(slot / SLOTS_PER_DAY), begin,
+                begin.plusMinutes(30 + 15 * random.nextInt(3)), DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)],
+                "Bemerkung " + random.nextInt(1000), 1 + n % this.caregivers);
+    }
+
+    private void seed(int treatments) throws SQLException {
+        Random random = new Random(42);
+
+        List<Patient> patientList = new ArrayList<>(this.patients);
+        for (int i = 0; i < this.patients; i++) {
+            patientList.add(new Patient("Vorname" + i, SURNAMES[random.nextInt(SURNAMES.length)],
+                    LocalDate.of(1930, 1, 1).plusDays(random.nextInt(10000)),
+                    String.valueOf(1 + random.nextInt(5)), String.format("%03d", random.nextInt(200))));
+        }
+        new PatientDao(this.connectionManager).createAll(patientList);
+
+        List<Caregiver> caregiverList = new ArrayList<>(this.caregivers);
+        for (int i = 0; i < this.caregivers; i++) {
+            caregiverList.add(new Caregiver("Vorname" + i, SURNAMES[random.nextInt(SURNAMES.length)],
+                    "0421/" + (100000 + random.nextInt(900000)), null));
+        }
+        new CaregiverDao(this.connectionManager).createAll(caregiverList);
+
+        List<Treatment> treatmentList = new ArrayList<>(treatments);
+        for (int i = 0; i < treatments; i++) {
+            treatmentList.add(nextTreatment(random));
+        }
+        new TreatmentDao(this.connectionManager).createAll(treatmentList);
+    }
+
+    /**
+     * Closes all connections and deletes the temporary database.
+     */
+    @Override
+    public void close() throws IOException {
+        this.connectionManager.close();
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package de.hitec.nhplus.benchmarks;
+
+import de.hitec.nhplus.utils.DateConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of converting the date and time columns of one treatment row. The <code>ofPattern</code>
+ * benchmarks reproduce the former conversion, which compiled a new <code>DateTimeFormatter</code> per call, the
+ * <code>formatter</code> benchmarks use a prebuilt formatter, and the <code>dateConverter</code> benchmarks the
+ * fixed-width codec of <code>DateConverter</code>. Run with <code>-prof gc</code> to compare the garbage per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateConverterBenchmark {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final String date = "2023-06-03";
+    private final String begin = "11:00";
+    private final String end = "15:45";
+    private final LocalDate localDate = LocalDate.of(2023, 6, 3);
+
+    @Benchmark
+    public Object parseRowOfPattern() {
+        return new Object[]{
+                LocalDate.parse(this.date, DateTimeFormatter.ofPattern("yyyy-MM-dd")),
+                LocalTime.parse(this.begin, DateTimeFormatter.ofPattern("HH:mm")),
+                LocalTime.parse(this.end, DateTimeFormatter.ofPattern("HH:mm"))};
+    }
+
+    @Benchmark
+    public Object parseRowFormatter() {
+        return new Object[]{
+                LocalDate.parse(this.date, DATE_FORMATTER),
+                LocalTime.parse(this.begin, TIME_FORMATTER),
+                LocalTime.parse(this.end, TIME_FORMATTER)};
+    }
+
+    @Benchmark
+    public Object parseRowDateConverter() {
+        return new Object[]{
+                DateConverter.convertStringToLocalDate(this.date),
+                DateConverter.convertStringToLocalTime(this.begin),
+                DateConverter.convertStringToLocalTime(this.end)};
+    }
+
+    @Benchmark
+    public long parseEpochDay() {
+        return DateConverter.convertStringToEpochDay(this.date);
+    }
+
+    @Benchmark
+    public String formatDateOfPattern() {
+        return this.localDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+    }
+
+    @Benchmark
+    public String formatDateFormatter() {
+        return this.localDate.format(DATE_FORMATTER);
+    }
+
+    @Benchmark
+    public String formatDateDateConverter() {
+        return DateConverter.convertLocalDateToString(this.localDate);
+    }
+}
@@ -0,0 +1,102 @@
+package de.hitec.nhplus.benchmarks;
+
+import de.hitec.nhplus.datastorage.CaregiverDao;
+import de.hitec.nhplus.datastorage.PatientDao;
+import de.hitec.nhplus.datastorage.TreatmentDao;
+import de.hitec.nhplus.datastorage.TreatmentFilter;
+import de.hitec.nhplus.model.Caregiver;
+import de.hitec.nhplus.model.Patient;
+import de.hitec.nhplus.model.Treatment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of the read operations of the DAOs, including the mapping of the <code>ResultSet</code> to
+ * model objects by <code>getListFromResultSet</code> and <code>getInstanceFromResultSet</code>. The number of
+ * treatments is set with <code>-p treatments=...</code>; patients and caregivers grow with it. Run with
+ * <code>-prof gc</code> to see the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+    @Param({"1000", "100000"})
+    private int treatments;
+
+    private BenchmarkDatabase database;
+    private PatientDao patientDao;
+    private CaregiverDao caregiverDao;
+    private TreatmentDao treatmentDao;
+    private int patients;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        this.patients = Math.max(10, this.treatments / 100);
+        int caregivers = Math.max(5, this.treatments / 1000);
+        this.database = BenchmarkDatabase.create(this.patients, caregivers, this.treatments);
+        this.patientDao = new PatientDao(this.database.getConnectionManager());
+        this.caregiverDao = new CaregiverDao(this.database.getConnectionManager());
+        this.treatmentDao = new TreatmentDao(this.database.getConnectionManager());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.database.close();
+    }
+
+    @Benchmark
+    public List<Treatment> treatmentReadAll() throws SQLException {
+        return this.treatmentDao.readAll();
+    }
+
+    @Benchmark
+    public Treatment treatmentRead() throws SQLException {
+        return this.treatmentDao.read(1 + ThreadLocalRandom.current().nextInt(this.treatments));
+    }
+
+    @Benchmark
+    public List<Treatment> treatmentReadByPatient() throws SQLException {
+        return this.treatmentDao.readTreatmentsByPid(1 + ThreadLocalRandom.current().nextInt(this.patients));
+    }
+
+    @Benchmark
+    public List<Treatment> treatmentReadPage() throws SQLException {
+        return this.treatmentDao.readPage(ThreadLocalRandom.current().nextInt(this.treatments), 200);
+    }
+
+    @Benchmark
+    public long[] treatmentReadTids() throws SQLException {
+        return this.treatmentDao.readTids(TreatmentFilter.all());
+    }
+
+    @Benchmark
+    public List<Patient> patientReadAll() throws SQLException {
+        return this.patientDao.readAll();
+    }
+
+    @Benchmark
+    public List<Caregiver> caregiverReadAll() throws SQLException {
+        return this.caregiverDao.readAll();
+    }
+}
@@ -0,0 +1,156 @@
+package de.hitec.nhplus.benchmarks;
+
+import de.hitec.nhplus.datastorage.CaregiverDao;
+import de.hitec.nhplus.datastorage.PatientDao;
+import de.hitec.nhplus.datastorage.TreatmentDao;
+import de.hitec.nhplus.model.Caregiver;
+import de.hitec.nhplus.model.Patient;
+import de.hitec.nhplus.model.Treatment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the write operations of <code>TreatmentDao</code>: single inserts, batched inserts,
+ * updates and deletes, and of the single inserts, updates and deletes of <code>PatientDao</code> and
+ * <code>CaregiverDao</code>. The written rows stay in the database, so it grows slowly during a run; the number of
+ * seeded treatments is set with <code>-p treatments=...</code>. New treatments are taken from the free slots of the
+ * {@link BenchmarkDatabase}, and updates only change the remark of seeded treatments, so the conflict check of
+ * <code>create</code> and <code>update</code> never rejects a write. The batch of <code>createAll</code> is written
+ * without the check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+
+    @Param({"10000"})
+    private int treatments;
+
+    private BenchmarkDatabase database;
+    private TreatmentDao treatmentDao;
+    private PatientDao patientDao;
+    private CaregiverDao caregiverDao;
+    private List<Treatment> sample;
+    private List<Patient> patientSample;
+    private List<Caregiver> caregiverSample;
+    private List<Treatment> batch;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        int patients = Math.max(10, this.treatments / 100);
+        int caregivers = Math.max(5, this.treatments / 1000);
+        this.database = BenchmarkDatabase.create(patients, caregivers, this.treatments);
+        this.treatmentDao = new TreatmentDao(this.database.getConnectionManager());
+        this.patientDao = new PatientDao(this.database.getConnectionManager());
+        this.caregiverDao = new CaregiverDao(this.database.getConnectionManager());
+        this.sample = this.treatmentDao.readPage(0, 1000);
+        this.patientSample = this.patientDao.readAll();
+        this.caregiverSample = this.caregiverDao.readAll();
+        this.random = new Random(7);
+        this.batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            this.batch.add(this.database.nextTreatment(this.random));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.database.close();
+    }
+
+    @Benchmark
+    public void create() throws SQLException {
+        this.treatmentDao.create(this.database.nextTreatment(this.random));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Long> createAll() throws SQLException {
+        return this.treatmentDao.createAll(this.batch);
+    }
+
+    @Benchmark
+    public void update() throws SQLException {
+        Treatment treatment = this.sample.get(this.random.nextInt(this.sample.size()));
+        treatment.setRemarks("Bemerkung " + this.random.nextInt(1000));
+        this.treatmentDao.update(treatment);
+    }
+
+    @Benchmark
+    public void createAndDelete() throws SQLException {
+        Treatment treatment = this.database.nextTreatment(this.random);
+        long tid = this.treatmentDao.createAll(List.of(treatment)).get(0);
+        this.treatmentDao.deleteById(tid);
+    }
+
+    @Benchmark
+    public void createPatient() throws SQLException {
+        this.patientDao.create(newPatient());
+    }
+
+    @Benchmark
+    public void updatePatient() throws SQLException {
+        Patient patient = this.patientSample.get(this.random.nextInt(this.patientSample.size()));
+        patient.setRoomNumber(String.format("%03d", this.random.nextInt(200)));
+        this.patientDao.update(patient);
+    }
+
+    @Benchmark
+    public void createAndDeletePatient() throws SQLException {
+        long pid = this.patientDao.createAll(List.of(newPatient())).get(0);
+        this.patientDao.deleteById(pid);
+    }
+
+    @Benchmark
+    public void createCaregiver() throws SQLException {
+        this.caregiverDao.create(newCaregiver());
+    }
+
+    @Benchmark
+    public void updateCaregiver() throws SQLException {
+        Caregiver caregiver = this.caregiverSample.get(this.random.nextInt(this.caregiverSample.size()));
+        caregiver.setPhoneNumber("0421/" + (100000 + this.random.nextInt(900000)));
+        this.caregiverDao.update(caregiver);
+    }
+
+    @Benchmark
+    public void createAndDeleteCaregiver() throws SQLException {
+        long cid = this.caregiverDao.createAll(List.of(newCaregiver())).get(0);
+        this.caregiverDao.deleteById(cid);
+    }
+
+    private Patient newPatient() {
+        return new Patient("Vorname", "Nachname", LocalDate.of(1930, 1, 1).plusDays(this.random.nextInt(10000)),
+                String.valueOf(1 + this.random.nextInt(5)), String.format("%03d", this.random.nextInt(200)));
+    }
+
+    private Caregiver newCaregiver() {
+        return new Caregiver("Vorname", "Nachname", "0421/" + (100000 + this.random.nextInt(900000)), null);
+    }
+}
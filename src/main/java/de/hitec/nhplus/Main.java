@@ -1,6 +1,9 @@
 package de.hitec.nhplus;
 
+import de.hitec.nhplus.datastorage.AsyncDao;
 import de.hitec.nhplus.datastorage.ConnectionBuilder;
+import de.hitec.nhplus.datastorage.DaoMetrics;
+import de.hitec.nhplus.datastorage.WriteBehindQueue;
 
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -18,6 +21,7 @@ public class Main extends Application {
     @Override
     public void start(Stage primaryStage) {
         this.primaryStage = primaryStage;
+        DaoMetrics.getInstance().startReporting();
         showLoginWindow();
     }
 
@@ -33,6 +37,9 @@ public class Main extends Application {
             this.primaryStage.show();
 
             this.primaryStage.setOnCloseRequest(event -> {
+                WriteBehindQueue.shutdown();
+                AsyncDao.shutdown();
+                DaoMetrics.getInstance().stopReporting();
                 ConnectionBuilder.closeConnection();
                 Platform.exit();
                 System.exit(0);
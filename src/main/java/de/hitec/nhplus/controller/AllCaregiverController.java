@@ -1,8 +1,12 @@
 package de.hitec.nhplus.controller;
 
+import de.hitec.nhplus.datastorage.AsyncDao;
 import de.hitec.nhplus.datastorage.CaregiverDao;
 import de.hitec.nhplus.datastorage.DaoFactory;
+import de.hitec.nhplus.datastorage.SqlOperation;
+import de.hitec.nhplus.datastorage.WriteBehindQueue;
 import de.hitec.nhplus.model.Caregiver;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -13,6 +17,7 @@ import javafx.scene.control.cell.TextFieldTableCell;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.List;
 
 /**
  * The <code>AllCaregiverController</code> manages the caregiver view in the UI.
@@ -45,13 +50,21 @@ public class AllCaregiverController {
     private ComboBox<String> filterBox;
 
     private final ObservableList<Caregiver> caregivers = FXCollections.observableArrayList();
+    private final BackgroundLoader<List<Caregiver>> loader = new BackgroundLoader<>();
     private CaregiverDao dao;
+    private AsyncDao<Caregiver> asyncDao;
+    private WriteBehindQueue<Caregiver> writeQueue;
+    private TableChangeListener<Caregiver> changeListener;
 
     /**
      * Initializes the controller. Sets up the table view, binds columns, configures listeners and loads initial data.
      */
     public void initialize() {
-        this.readAllAndShowInTableView();
+        this.dao = DaoFactory.getDaoFactory().createCaregiverDAO();
+        this.asyncDao = new AsyncDao<>(this.dao);
+        this.writeQueue = DaoFactory.getDaoFactory().getCaregiverWriteQueue();
+        this.writeQueue.setFailureHandler(exception -> Platform.runLater(() -> showWriteFailure(exception)));
+        this.loader.showProgressIn(this.tableView);
 
         this.columnCId.setCellValueFactory(new PropertyValueFactory<>("cid"));
 
@@ -86,6 +99,9 @@ public class AllCaregiverController {
             }
         }));
         readAllAndShowInTableView();
+        this.changeListener = new TableChangeListener<>(this.caregivers, this.dao, Caregiver::getCid,
+                this::isShown, this::readAllAndShowInTableView);
+        DaoFactory.getDaoFactory().getCaregiverChangeNotifier().addListener(this.changeListener);
 
         this.buttonAdd.setDisable(true);
         textFieldFirstName.textProperty().addListener((observable, oldValue, newValue) -> checkAddButtonState());
@@ -137,16 +153,27 @@ public class AllCaregiverController {
     }
 
     /**
-     * Persists the changes of a caregiver in the database using {@link CaregiverDao#update(Caregiver)}.
+     * Submits the changed caregiver to the {@link WriteBehindQueue} of the caregivers, which writes the edits of the
+     * next moments together in the background.
      *
      * @param event the event containing the changed caregiver
      */
     private void handleUpdate(TableColumn.CellEditEvent<Caregiver, String> event) {
-        try {
-            this.dao.update(event.getRowValue());
-        } catch (SQLException exception) {
-            exception.printStackTrace();
-        }
+        this.writeQueue.submit(event.getRowValue());
+    }
+
+    /**
+     * Shows that edits could not be saved. The edited rows are read again by the <code>TableChangeListener</code>, so
+     * the table shows the stored values afterwards.
+     *
+     * @param exception Failure of the write.
+     */
+    private void showWriteFailure(SQLException exception) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Fehler");
+        alert.setHeaderText("Änderungen konnten nicht gespeichert werden");
+        alert.setContentText(exception.getMessage());
+        alert.showAndWait();
     }
 
     /**
@@ -157,37 +184,39 @@ public class AllCaregiverController {
         String firstName = this.textFieldFirstName.getText();
         String surName = this.textFieldSurName.getText();
         String phoneNumber = this.textFieldPhoneNumber.getText();
-        try {
-            this.dao.create(new Caregiver(firstName, surName, phoneNumber, null));
-        } catch (SQLException exception) {
-            exception.printStackTrace();
-        }
-        readAllAndShowInTableView();
+        BackgroundLoader.whenDone(this.asyncDao.create(new Caregiver(firstName, surName, phoneNumber, null)));
         clearTextfield();
     }
 
     /**
-     * Loads all caregivers from the database and displays them in the TableView.
-     * Applies filtering based on the selected filter option.
+     * Loads the caregivers matching the selected filter option from the database in the background and displays them
+     * in the TableView. The filter is evaluated by the database. A load still running is cancelled.
      */
     private void readAllAndShowInTableView() {
-        this.caregivers.clear();
-        this.dao = DaoFactory.getDaoFactory().createCaregiverDAO();
-        try {
-            var all = this.dao.readAll();
-            String filter = filterBox.getValue();
-
-            if ("Nur aktive".equals(filter)) {
-                this.caregivers.addAll(all.stream().filter(Caregiver::isActive).toList());
-            } else if ("Nur inaktive".equals(filter)) {
-                this.caregivers.addAll(all.stream().filter(c -> !c.isActive()).toList());
-            } else {
-                this.caregivers.addAll(all);
-            }
+        String filter = filterBox.getValue();
+        SqlOperation<List<Caregiver>> query;
+        if ("Nur aktive".equals(filter)) {
+            query = this.dao::readActive;
+        } else if ("Nur inaktive".equals(filter)) {
+            query = this.dao::readInactive;
+        } else {
+            query = this.dao::readAll;
+        }
+        this.loader.load(AsyncDao.execute(query), this.caregivers::setAll);
+    }
 
-        } catch (SQLException exception) {
-            exception.printStackTrace();
+    /**
+     * Tests whether a caregiver matches the selected filter option, e.g. after it was changed.
+     *
+     * @param caregiver Caregiver to test.
+     * @return <code>true</code> if the caregiver belongs to the table.
+     */
+    private boolean isShown(Caregiver caregiver) {
+        String filter = filterBox.getValue();
+        if ("Nur aktive".equals(filter)) {
+            return caregiver.isActive();
         }
+        return !"Nur inaktive".equals(filter) || !caregiver.isActive();
     }
 
     /**
@@ -213,13 +242,9 @@ public class AllCaregiverController {
             }
 
             selected.setInactiveSince(LocalDate.now());
-            try {
-                dao.update(selected);
-                readAllAndShowInTableView();
+            BackgroundLoader.whenDone(this.asyncDao.update(selected), result -> {
                 showInfo("Pflegekraft als inaktiv markiert: " + selected.getFirstName() + " " + selected.getSurname());
-            } catch (SQLException exception) {
-                exception.printStackTrace();
-            }
+            });
         }
     }
 
@@ -1,12 +1,16 @@
 package de.hitec.nhplus.controller;
 
+import de.hitec.nhplus.datastorage.AsyncDao;
 import de.hitec.nhplus.datastorage.DaoFactory;
 import de.hitec.nhplus.datastorage.PatientDao;
+import de.hitec.nhplus.datastorage.WriteBehindQueue;
+import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
@@ -18,6 +22,7 @@ import de.hitec.nhplus.utils.DateConverter;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.List;
 
 
 /**
@@ -68,7 +73,11 @@ public class AllPatientController {
     private TextField textFieldRoomNumber;
 
     private final ObservableList<Patient> patients = FXCollections.observableArrayList();
+    private final BackgroundLoader<List<Patient>> loader = new BackgroundLoader<>();
     private PatientDao dao;
+    private AsyncDao<Patient> asyncDao;
+    private WriteBehindQueue<Patient> writeQueue;
+    private TableChangeListener<Patient> changeListener;
 
     /**
      * When <code>initialize()</code> gets called, all fields are already initialized. For example from the FXMLLoader
@@ -76,7 +85,15 @@ public class AllPatientController {
      * configured.
      */
     public void initialize() {
+        this.dao = DaoFactory.getDaoFactory().createPatientDAO();
+        this.asyncDao = new AsyncDao<>(this.dao);
+        this.writeQueue = DaoFactory.getDaoFactory().getPatientWriteQueue();
+        this.writeQueue.setFailureHandler(exception -> Platform.runLater(() -> showWriteFailure(exception)));
+        this.loader.showProgressIn(this.tableView);
         this.readAllAndShowInTableView();
+        this.changeListener = new TableChangeListener<>(this.patients, this.dao, Patient::getPid,
+                patient -> true, this::readAllAndShowInTableView);
+        DaoFactory.getDaoFactory().getPatientChangeNotifier().addListener(this.changeListener);
 
         this.columnId.setCellValueFactory(new PropertyValueFactory<>("pid"));
 
@@ -147,6 +164,13 @@ public class AllPatientController {
      */
     @FXML
     public void handleOnEditDateOfBirth(TableColumn.CellEditEvent<Patient, String> event) {
+        try {
+            DateConverter.convertStringToLocalDate(event.getNewValue());
+        } catch (Exception exception) {
+            this.tableView.refresh();
+            showInvalidDate(event.getNewValue());
+            return;
+        }
         event.getRowValue().setDateOfBirth(event.getNewValue());
         this.doUpdate(event);
     }
@@ -174,54 +198,66 @@ public class AllPatientController {
     }
 
     /**
-     * Updates a patient by calling the method <code>update()</code> of {@link PatientDao}.
+     * Submits the changed patient to the {@link WriteBehindQueue} of the patients, which writes the edits of the next
+     * moments together in the background. Several edits of the same patient are written once.
      *
      * @param event Event including the changed object and the change.
      */
     private void doUpdate(TableColumn.CellEditEvent<Patient, String> event) {
-        try {
-            this.dao.update(event.getRowValue());
-        } catch (SQLException exception) {
-            exception.printStackTrace();
-        }
+        this.writeQueue.submit(event.getRowValue());
+    }
+
+    /**
+     * Shows that an edited date of birth is not a date in the format "yyyy-MM-dd". The edit is discarded.
+     *
+     * @param dateOfBirth The edited text.
+     */
+    private void showInvalidDate(String dateOfBirth) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Fehler");
+        alert.setHeaderText("Änderungen konnten nicht gespeichert werden");
+        alert.setContentText("\"" + dateOfBirth + "\" ist kein Datum im Format JJJJ-MM-TT.");
+        alert.showAndWait();
+    }
+
+    /**
+     * Shows that edits could not be saved. The edited rows are read again by the <code>TableChangeListener</code>, so
+     * the table shows the stored values afterwards.
+     *
+     * @param exception Failure of the write.
+     */
+    private void showWriteFailure(SQLException exception) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Fehler");
+        alert.setHeaderText("Änderungen konnten nicht gespeichert werden");
+        alert.setContentText(exception.getMessage());
+        alert.showAndWait();
     }
 
     /**
-     * Reloads all patients to the table by clearing the list of all patients and filling it again by all persisted
-     * patients, delivered by {@link PatientDao}.
+     * Reloads all patients to the table by replacing the list of all patients with all persisted patients, delivered
+     * by {@link PatientDao}. The patients are read in the background; a reload still running is cancelled.
      */
     private void readAllAndShowInTableView() {
-        this.patients.clear();
-        this.dao = DaoFactory.getDaoFactory().createPatientDAO();
-        try {
-            this.patients.addAll(this.dao.readAll());
-        } catch (SQLException exception) {
-            exception.printStackTrace();
-        }
+        this.loader.load(this.asyncDao.readAll(), this.patients::setAll);
     }
 
     /**
      * This method handles events fired by the button to delete patients. It calls {@link PatientDao} to delete the
-     * patient from the database and removes the object from the list, which is the data source of the
-     * <code>TableView</code>.
+     * patient from the database; the row is removed by the <code>TableChangeListener</code> once it is deleted.
      */
     @FXML
     public void handleDelete() {
         Patient selectedItem = this.tableView.getSelectionModel().getSelectedItem();
         if (selectedItem != null) {
-            try {
-                DaoFactory.getDaoFactory().createPatientDAO().deleteById(selectedItem.getPid());
-                this.tableView.getItems().remove(selectedItem);
-            } catch (SQLException exception) {
-                exception.printStackTrace();
-            }
+            BackgroundLoader.whenDone(this.asyncDao.deleteById(selectedItem.getPid()));
         }
     }
 
     /**
      * This method handles the events fired by the button to add a patient. It collects the data from the
      * <code>TextField</code>s, creates an object of class <code>Patient</code> of it and passes the object to
-     * {@link PatientDao} to persist the data.
+     * {@link PatientDao} to persist the data. The new row is appended by the <code>TableChangeListener</code>.
      */
     @FXML
     public void handleAdd() {
@@ -231,12 +267,7 @@ public class AllPatientController {
         LocalDate date = DateConverter.convertStringToLocalDate(birthday);
         String careLevel = this.textFieldCareLevel.getText();
         String roomNumber = this.textFieldRoomNumber.getText();
-        try {
-            this.dao.create(new Patient(firstName, surname, date, careLevel, roomNumber));
-        } catch (SQLException exception) {
-            exception.printStackTrace();
-        }
-        readAllAndShowInTableView();
+        BackgroundLoader.whenDone(this.asyncDao.create(new Patient(firstName, surname, date, careLevel, roomNumber)));
         clearTextfields();
     }
 
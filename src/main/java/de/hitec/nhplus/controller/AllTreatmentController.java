@@ -1,29 +1,50 @@
 package de.hitec.nhplus.controller;
 
 import de.hitec.nhplus.Main;
+import de.hitec.nhplus.dataexchange.TreatmentExporter;
+import de.hitec.nhplus.datastorage.AsyncDao;
 import de.hitec.nhplus.datastorage.CaregiverDao;
 import de.hitec.nhplus.datastorage.DaoFactory;
+import de.hitec.nhplus.datastorage.DataChange;
+import de.hitec.nhplus.datastorage.DataChangeNotifier;
 import de.hitec.nhplus.datastorage.PatientDao;
+import de.hitec.nhplus.datastorage.SearchDao;
+import de.hitec.nhplus.datastorage.SearchResult;
+import de.hitec.nhplus.datastorage.TreatmentConflict;
 import de.hitec.nhplus.datastorage.TreatmentDao;
+import de.hitec.nhplus.datastorage.TreatmentFilter;
 import de.hitec.nhplus.model.Caregiver;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
+import javafx.geometry.Side;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.AnchorPane;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import de.hitec.nhplus.model.Patient;
 import de.hitec.nhplus.model.Treatment;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.function.ToLongFunction;
 
 public class AllTreatmentController {
 
+    private static final int MAX_CONFLICTS_SHOWN = 20;
+
     @FXML
     private TableView<Treatment> tableView;
 
@@ -63,15 +84,37 @@ public class AllTreatmentController {
     @FXML
     private Button buttonDelete;
 
-    private final ObservableList<Treatment> treatments = FXCollections.observableArrayList();
+    @FXML
+    private Button buttonExport;
+
+    @FXML
+    private TextField textFieldSearch;
+
+    @FXML
+    private Button buttonConflicts;
+
+    private final BackgroundLoader<long[]> treatmentLoader = new BackgroundLoader<>();
+    private final BackgroundLoader<List<Patient>> patientLoader = new BackgroundLoader<>();
+    private final BackgroundLoader<List<Caregiver>> caregiverLoader = new BackgroundLoader<>();
+    private final BackgroundLoader<List<SearchResult>> searchLoader = new BackgroundLoader<>();
+    private final ContextMenu searchResults = new ContextMenu();
+    private SearchDao searchDao;
     private TreatmentDao dao;
+    private AsyncDao<Treatment> asyncDao;
+    private final DataChangeNotifier.Listener changeListener = this::applyChange;
+    private PagedObservableList<Treatment> treatments;
+    private TreatmentFilter treatmentFilter;
     private final ObservableList<String> patientSelection = FXCollections.observableArrayList();
     private final ObservableList<String> caregiverSelection = FXCollections.observableArrayList();
-    private ArrayList<Patient> patientList;
-    private ArrayList<Caregiver> caregiverList;
+    private ArrayList<Patient> patientList = new ArrayList<>();
+    private ArrayList<Caregiver> caregiverList = new ArrayList<>();
 
     public void initialize() {
+        this.dao = DaoFactory.getDaoFactory().createTreatmentDao();
+        this.asyncDao = new AsyncDao<>(this.dao);
+        this.treatmentLoader.showProgressIn(this.tableView);
         readAllAndShowInTableView();
+        DaoFactory.getDaoFactory().getTreatmentChangeNotifier().addListener(this.changeListener);
         comboBoxPatientSelection.setItems(patientSelection);
         comboBoxPatientSelection.getSelectionModel().select(0);
 
@@ -87,7 +130,6 @@ public class AllTreatmentController {
         this.columnCaregiverSurname.setCellValueFactory(new PropertyValueFactory<>("caregiverSurname"));
         this.columnCaregiverFirstname.setCellValueFactory(new PropertyValueFactory<>("caregiverFirstname"));
         this.columnCaregiverPhonenumber.setCellValueFactory(new PropertyValueFactory<>("caregiverPhonenumber"));
-        this.tableView.setItems(this.treatments);
 
         // Disabling the button to delete treatments as long, as no treatment was selected.
         this.buttonDelete.setDisable(true);
@@ -97,24 +139,97 @@ public class AllTreatmentController {
 
         this.createComboBoxPatientData();
         this.createComboBoxCaregiverData();
+
+        this.searchDao = DaoFactory.getDaoFactory().createSearchDao();
+        this.textFieldSearch.textProperty().addListener((observableValue, oldText, newText) -> search(newText));
+        BackgroundLoader.whenDone(AsyncDao.execute(() -> {
+            this.searchDao.loadDictionaries();
+            return null;
+        }));
+    }
+
+    /**
+     * Searches patients, caregivers and treatments for the text of the search field in the background and shows the
+     * hits in a menu below it. Every keystroke starts a new search, which cancels the one still running.
+     *
+     * @param text Text of the search field.
+     */
+    private void search(String text) {
+        if (text.isBlank()) {
+            this.searchLoader.cancel();
+            this.searchResults.hide();
+            return;
+        }
+        this.searchLoader.load(AsyncDao.execute(() -> this.searchDao.search(text)), results -> {
+            List<MenuItem> items = new ArrayList<>();
+            for (SearchResult result : results) {
+                MenuItem item = new MenuItem(result.toString());
+                item.setOnAction(event -> showSearchResult(result));
+                items.add(item);
+            }
+            if (items.isEmpty()) {
+                MenuItem item = new MenuItem("Keine Treffer");
+                item.setDisable(true);
+                items.add(item);
+            }
+            this.searchResults.getItems().setAll(items);
+            if (!this.searchResults.isShowing()) {
+                this.searchResults.show(this.textFieldSearch, Side.BOTTOM, 0, 0);
+            }
+        });
     }
 
+    /**
+     * Shows a hit of the search: the treatments of a found patient or caregiver, or the found treatment itself.
+     * Caregivers who are no longer active cannot be selected in the ComboBox, so their hits show nothing.
+     *
+     * @param result Selected hit.
+     */
+    private void showSearchResult(SearchResult result) {
+        switch (result.kind()) {
+            case PATIENT -> {
+                int index = indexOf(this.patientList, Patient::getPid, result.id());
+                if (index >= 0) {
+                    this.comboBoxCaregiverSelection.getSelectionModel().select(0);
+                    this.comboBoxPatientSelection.getSelectionModel().select(index + 1);
+                }
+            }
+            case CAREGIVER -> {
+                int index = indexOf(this.caregiverList, Caregiver::getCid, result.id());
+                if (index >= 0) {
+                    this.comboBoxPatientSelection.getSelectionModel().select(0);
+                    this.comboBoxCaregiverSelection.getSelectionModel().select(index + 1);
+                }
+            }
+            case TREATMENT -> BackgroundLoader.whenDone(this.asyncDao.read(result.id()), treatment -> {
+                if (treatment != null) {
+                    treatmentWindow(treatment);
+                }
+            });
+        }
+    }
+
+    private static <T> int indexOf(List<T> list, ToLongFunction<T> keyExtractor, long key) {
+        for (int i = 0; i < list.size(); i++) {
+            if (keyExtractor.applyAsLong(list.get(i)) == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Resets the filters and reloads all treatments in the background. A load still running is cancelled.
+     */
     public void readAllAndShowInTableView() {
         comboBoxPatientSelection.getSelectionModel().select(0);
         comboBoxCaregiverSelection.getSelectionModel().select(0);
-        this.dao = DaoFactory.getDaoFactory().createTreatmentDao();
-        try {
-            this.treatments.clear();
-            this.treatments.addAll(dao.readAll());
-        } catch (SQLException exception) {
-            exception.printStackTrace();
-        }
+        handleComboBox();
     }
 
     /**
      * Populates the caregiver selection ComboBox with active caregivers.
-     * Clears existing selections, adds a default "alle" option, and retrieves all caregivers from the database.
-     * Only active caregivers are added to the selection list.
+     * Clears existing selections, adds a default "alle" option, and retrieves the active caregivers from the database.
      *
      * Upon successful retrieval, the ComboBox is updated with the caregiver surnames and defaults to the first selection.
      *
@@ -126,22 +241,19 @@ public class AllTreatmentController {
         this.patientSelection.add("alle");
 
         PatientDao dao = DaoFactory.getDaoFactory().createPatientDAO();
-        try {
-            patientList = (ArrayList<Patient>) dao.readAll();
+        this.patientLoader.load(new AsyncDao<>(dao).readAll(), patients -> {
+            patientList = new ArrayList<>(patients);
             for (Patient patient: patientList) {
                 this.patientSelection.add(patient.getSurname());
             }
             comboBoxPatientSelection.setItems(patientSelection);
             comboBoxPatientSelection.getSelectionModel().selectFirst();
-        } catch (SQLException exception) {
-            exception.printStackTrace();
-        }
+        });
     }
 
     /**
      * Populates the caregiver selection ComboBox with active caregivers.
-     * Clears existing selections, adds a default "alle" option, and retrieves all caregivers from the database.
-     * Only active caregivers are added to the selection list.
+     * Clears existing selections, adds a default "alle" option, and retrieves the active caregivers from the database.
      *
      * Upon successful retrieval, the ComboBox is updated with the caregiver surnames and defaults to the first selection.
      *
@@ -153,93 +265,252 @@ public class AllTreatmentController {
         caregiverSelection.add("alle");
 
         CaregiverDao dao = DaoFactory.getDaoFactory().createCaregiverDAO();
-        try {
-            caregiverList = (ArrayList<Caregiver>) dao.readAll();
+        this.caregiverLoader.load(AsyncDao.execute(dao::readActive), caregivers -> {
+            caregiverList = new ArrayList<>(caregivers);
             for (Caregiver caregiver : caregiverList) {
-                if (caregiver.isActive()) {
-                    caregiverSelection.add(caregiver.getSurname());
-                }
+                caregiverSelection.add(caregiver.getSurname());
             }
             comboBoxCaregiverSelection.setItems(caregiverSelection);
             comboBoxCaregiverSelection.getSelectionModel().selectFirst();
-        } catch (SQLException exception) {
-            exception.printStackTrace();
-        }
+        });
     }
 
 
 
+    /**
+     * Shows the treatments matching the patient and caregiver selected in the ComboBoxes; "alle" does not restrict
+     * the treatments. The filter is evaluated by the database, which returns only the tids of the matching treatments.
+     * The table is backed by a {@link PagedObservableList}, which loads the treatments page by page while the user
+     * scrolls, so even long histories are never loaded completely. The tids are loaded in the background; switching
+     * the selection again cancels a load still running.
+     */
     @FXML
     public void handleComboBox() {
-        String selectedPatient = this.comboBoxPatientSelection.getSelectionModel().getSelectedItem();
-        this.treatments.clear();
-        this.dao = DaoFactory.getDaoFactory().createTreatmentDao();
+        showTreatments(0);
+    }
 
-        if (selectedPatient.equals("alle")) {
-            try {
-                this.treatments.addAll(this.dao.readAll());
-            } catch (SQLException exception) {
-                exception.printStackTrace();
+    /**
+     * Loads the tids of the treatments matching the selected patient and caregiver and shows them in the table.
+     *
+     * @param scrollIndex Index of the row to scroll to after the treatments are shown.
+     */
+    private void showTreatments(int scrollIndex) {
+        TreatmentFilter filter = getSelectedFilter();
+        this.treatmentLoader.load(AsyncDao.execute(() -> this.dao.readTids(filter)), tids -> {
+            PagedObservableList<Treatment> treatments = new PagedObservableList<>(tids,
+                    (afterTid, limit) -> AsyncDao.execute(() -> this.dao.readPage(filter, afterTid, limit)),
+                    Treatment::getTid);
+            this.treatments = treatments;
+            this.treatmentFilter = filter;
+            this.tableView.setItems(treatments);
+            if (scrollIndex > 0 && !treatments.isEmpty()) {
+                this.tableView.scrollTo(Math.min(scrollIndex, treatments.size() - 1));
             }
-        }
+        });
+    }
 
-        Patient patient = searchPatientInList(selectedPatient);
-        if (patient !=null) {
-            try {
-                this.treatments.addAll(this.dao.readTreatmentsByPid(patient.getPid()));
-            } catch (SQLException exception) {
-                exception.printStackTrace();
+    /**
+     * Applies a change of the treatments to the table, called by the <code>DataChangeNotifier</code> of the
+     * treatments. Deleted treatments are removed from the shown list. Inserted and updated treatments are read again
+     * with the filter of the table and inserted or replaced if they match it, otherwise removed, e.g. after their
+     * caregiver was changed. Only the changed rows are updated; the loaded pages stay in memory.
+     *
+     * @param change Change of the treatments.
+     */
+    private void applyChange(DataChange change) {
+        Platform.runLater(() -> {
+            PagedObservableList<Treatment> treatments = this.treatments;
+            if (treatments == null) {
+                return;
             }
-        }
+            switch (change.type()) {
+                case RELOADED -> showTreatments(Math.max(0, this.tableView.getSelectionModel().getSelectedIndex()));
+                case DELETED -> change.keys().forEach(treatments::removeKey);
+                default -> {
+                    TreatmentFilter filter = this.treatmentFilter;
+                    BackgroundLoader.whenDone(AsyncDao.execute(() -> readMatching(filter, change.keys())), rows -> {
+                        if (this.treatments == treatments) {
+                            rows.forEach((tid, treatment) -> {
+                                if (treatment == null) {
+                                    treatments.removeKey(tid);
+                                } else {
+                                    treatments.put(treatment);
+                                }
+                            });
+                        }
+                    });
+                }
+            }
+        });
     }
 
     /**
-     * Searches for a patient in the patient list by their surname.
-     * Iterates through the list and returns the matching patient if found.
-     * If no match is found, returns {@code null}.
+     * Reads the treatments with the given tids which match the filter. A page of one treatment after
+     * <code>tid - 1</code> is the treatment itself if it matches the filter.
      *
-     * @param surname The surname of the patient to search for.
-     * @return The matching {@code Patient} object if found, otherwise {@code null}.
+     * @return The treatments by tid; <code>null</code> for treatments not matching the filter or deleted meanwhile.
      */
+    private Map<Long, Treatment> readMatching(TreatmentFilter filter, List<Long> tids) throws SQLException {
+        Map<Long, Treatment> rows = new LinkedHashMap<>();
+        for (long tid : tids) {
+            List<Treatment> page = this.dao.readPage(filter, tid - 1, 1);
+            rows.put(tid, !page.isEmpty() && page.get(0).getTid() == tid ? page.get(0) : null);
+        }
+        return rows;
+    }
 
-    private Patient searchPatientInList(String surname) {
-        for (Patient patient : this.patientList) {
-            if (patient.getSurname().equals(surname)) {
+    /**
+     * Returns the filter of the patient and caregiver selected in the ComboBoxes.
+     *
+     * @return Filter of the shown treatments.
+     */
+    private TreatmentFilter getSelectedFilter() {
+        Patient patient = getSelectedPatient();
+        Caregiver caregiver = getSelectedCaregiver();
+        return TreatmentFilter.all()
+                .withPatient(patient == null ? null : patient.getPid())
+                .withCaregiver(caregiver == null ? null : caregiver.getCid());
+    }
 
-                return patient;
-            }
-        }
-        return null;
+    /**
+     * Returns the patient selected in the patient ComboBox. The entries of the ComboBox are "alle" followed by the
+     * patients in the order of <code>patientList</code>, so the patient is looked up by the selected index.
+     *
+     * @return The selected {@code Patient}, or {@code null} if "alle" or nothing is selected.
+     */
+    private Patient getSelectedPatient() {
+        int index = this.comboBoxPatientSelection.getSelectionModel().getSelectedIndex();
+        return index > 0 && index <= this.patientList.size() ? this.patientList.get(index - 1) : null;
     }
 
     /**
-     * Searches for a caregiver in the caregiver list by their surname.
-     * Iterates through the list and returns the matching caregiver if found.
-     * If no match is found, returns {@code null}.
+     * Returns the caregiver selected in the caregiver ComboBox. The entries of the ComboBox are "alle" followed by the
+     * active caregivers in the order of <code>caregiverList</code>, so the caregiver is looked up by the selected index.
      *
-     * @param surname The surname of the caregiver to search for.
-     * @return The matching {@code Caregiver} object if found, otherwise {@code null}.
+     * @return The selected {@code Caregiver}, or {@code null} if "alle" or nothing is selected.
      */
+    private Caregiver getSelectedCaregiver() {
+        int index = this.comboBoxCaregiverSelection.getSelectionModel().getSelectedIndex();
+        return index > 0 && index <= this.caregiverList.size() ? this.caregiverList.get(index - 1) : null;
+    }
 
-    private Caregiver searchCaregiverInList(String surname) {
-        for (Caregiver caregiver : this.caregiverList) {
-            if (caregiver.getSurname().equals(surname)) {
-                return caregiver;
-            }
+    @FXML
+    public void handleDelete() {
+        Treatment t = this.tableView.getSelectionModel().getSelectedItem();
+        if (t == null) {
+            return;
         }
-        return null;
+        BackgroundLoader.whenDone(this.asyncDao.deleteById(t.getTid()));
     }
 
+    /**
+     * Exports the treatments matching the selected patient and caregiver with their patient and caregiver data. The
+     * format is chosen by the extension of the file: CSV or JSON Lines, each optionally compressed with gzip. The
+     * export runs in the background and shows its progress on the export button, which is disabled meanwhile.
+     */
     @FXML
-    public void handleDelete() {
-        int index = this.tableView.getSelectionModel().getSelectedIndex();
-        Treatment t = this.treatments.remove(index);
-        TreatmentDao dao = DaoFactory.getDaoFactory().createTreatmentDao();
-        try {
-            dao.deleteById(t.getTid());
-        } catch (SQLException exception) {
+    public void handleExport() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Behandlungen exportieren");
+        fileChooser.setInitialFileName("behandlungen.csv");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV", "*.csv"),
+                new FileChooser.ExtensionFilter("CSV, gzip-komprimiert", "*.csv.gz"),
+                new FileChooser.ExtensionFilter("JSON Lines", "*.jsonl"),
+                new FileChooser.ExtensionFilter("JSON Lines, gzip-komprimiert", "*.jsonl.gz"));
+        File file = fileChooser.showSaveDialog(this.tableView.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        Path target = withExtension(file.toPath(), fileChooser.getSelectedExtensionFilter());
+        TreatmentFilter filter = getSelectedFilter();
+        TreatmentExporter exporter = new TreatmentExporter(this.dao);
+        this.buttonExport.setDisable(true);
+        AsyncDao.execute(() -> {
+            try {
+                return exporter.export(filter, target, (written, total) -> Platform.runLater(() ->
+                        this.buttonExport.setText("Export " + (total == 0 ? 100 : written * 100 / total) + " %")));
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }).whenComplete((count, exception) -> Platform.runLater(() -> {
+            this.buttonExport.setDisable(false);
+            this.buttonExport.setText("Exportieren");
+            Alert alert;
+            if (exception == null) {
+                alert = new Alert(Alert.AlertType.INFORMATION);
+                alert.setHeaderText("Export abgeschlossen");
+                alert.setContentText(count + " Behandlungen nach " + target + " exportiert.");
+            } else {
+                Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+                cause.printStackTrace();
+                alert = new Alert(Alert.AlertType.ERROR);
+                alert.setHeaderText("Export fehlgeschlagen");
+                alert.setContentText(cause instanceof UncheckedIOException ? cause.getCause().getMessage()
+                        : cause.getMessage());
+            }
+            alert.setTitle("Export");
+            alert.showAndWait();
+        }));
+    }
+
+    /**
+     * Checks the treatments matching the selected patient and caregiver for treatments of the same caregiver or the
+     * same patient overlapping in time, e.g. after an import, and shows the first conflicts found. The check runs in
+     * the background over the whole history; the button is disabled meanwhile.
+     */
+    @FXML
+    public void handleFindConflicts() {
+        TreatmentFilter filter = getSelectedFilter();
+        this.buttonConflicts.setDisable(true);
+        BackgroundLoader.whenDone(AsyncDao.execute(() -> {
+            List<TreatmentConflict> first = new ArrayList<>();
+            long count = this.dao.findConflicts(filter, conflict -> {
+                if (first.size() < MAX_CONFLICTS_SHOWN) {
+                    first.add(conflict);
+                }
+            });
+            return new ConflictSummary(count, first);
+        }), summary -> {
+            this.buttonConflicts.setDisable(false);
+            StringBuilder content = new StringBuilder(summary.count() + " Konflikte");
+            for (TreatmentConflict conflict : summary.first()) {
+                content.append(System.lineSeparator()).append(conflict);
+            }
+            if (summary.count() > summary.first().size()) {
+                content.append(System.lineSeparator()).append("...");
+            }
+            Alert alert = new Alert(summary.count() == 0 ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING);
+            alert.setTitle("Konflikte");
+            alert.setHeaderText(summary.count() == 0 ? "Keine überschneidenden Behandlungen gefunden"
+                    : "Überschneidende Behandlungen gefunden");
+            alert.setContentText(content.toString());
+            alert.setResizable(true);
+            alert.showAndWait();
+        }, exception -> {
+            this.buttonConflicts.setDisable(false);
             exception.printStackTrace();
+        });
+    }
+
+    /**
+     * Number of conflicts found by {@link #handleFindConflicts()} and the first of them.
+     */
+    private record ConflictSummary(long count, List<TreatmentConflict> first) {
+    }
+
+    /**
+     * Appends the extension of the selected filter to the file name, unless it already has a known extension.
+     */
+    private static Path withExtension(Path file, FileChooser.ExtensionFilter selectedFilter) {
+        String name = file.getFileName().toString().toLowerCase();
+        for (String extension : List.of(".csv", ".csv.gz", ".jsonl", ".jsonl.gz")) {
+            if (name.endsWith(extension)) {
+                return file;
+            }
         }
+        String extension = selectedFilter == null ? ".csv" : selectedFilter.getExtensions().get(0).substring(1);
+        return file.resolveSibling(file.getFileName() + extension);
     }
 
     /**
@@ -254,16 +525,14 @@ public class AllTreatmentController {
     @FXML
     public void handleNewTreatment() {
         try {
-            String selectedPatient = this.comboBoxPatientSelection.getSelectionModel().getSelectedItem();
-            Patient patient = searchPatientInList(selectedPatient);
-            String selectedCaregiver = this.comboBoxCaregiverSelection.getSelectionModel().getSelectedItem();
-            Caregiver caregiver = searchCaregiverInList(selectedCaregiver);
+            Patient patient = getSelectedPatient();
+            Caregiver caregiver = getSelectedCaregiver();
 
             if (patient == null) {
                 throw new NullPointerException("Kein Patient ausgewählt");
             }
 
-            if (selectedCaregiver.equals("alle")) {
+            if (caregiver == null) {
                 throw new NullPointerException("Kein Pfleger ausgewählt");
             }
 
@@ -287,8 +556,7 @@ public class AllTreatmentController {
     public void handleMouseClick() {
         tableView.setOnMouseClicked(event -> {
             if (event.getClickCount() == 2 && (tableView.getSelectionModel().getSelectedItem() != null)) {
-                int index = this.tableView.getSelectionModel().getSelectedIndex();
-                Treatment treatment = this.treatments.get(index);
+                Treatment treatment = this.tableView.getSelectionModel().getSelectedItem();
                 treatmentWindow(treatment);
             }
         });
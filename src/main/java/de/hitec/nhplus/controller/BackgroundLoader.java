@@ -0,0 +1,134 @@
+package de.hitec.nhplus.controller;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.scene.Node;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableView;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Hands the results of asynchronous database calls back to the JavaFX application thread. A loader belongs to one
+ * view element, e.g. a table: starting a new load cancels the previous one, and a result arriving after it was
+ * superseded is dropped, so the view always shows the result of the latest request.
+ * <p>
+ * All methods have to be called on the JavaFX application thread.
+ *
+ * @param <R> Type of the loaded result.
+ */
+public class BackgroundLoader<R> {
+
+    private final ReadOnlyBooleanWrapper loading = new ReadOnlyBooleanWrapper(false);
+    private CompletableFuture<R> current;
+
+    /**
+     * Starts a load. The previous load of this loader is cancelled. When the future completes, the result is passed
+     * to <code>onSuccess</code> on the JavaFX application thread.
+     *
+     * @param future    Future of the asynchronous call, e.g. from {@link de.hitec.nhplus.datastorage.AsyncDao}.
+     * @param onSuccess Consumer of the result, called on the JavaFX application thread.
+     */
+    public void load(CompletableFuture<R> future, Consumer<R> onSuccess) {
+        cancel();
+        this.current = future;
+        this.loading.set(true);
+        future.whenComplete((result, exception) -> Platform.runLater(() -> {
+            if (this.current != future) {
+                return;
+            }
+            this.current = null;
+            this.loading.set(false);
+            if (exception == null) {
+                onSuccess.accept(result);
+            } else {
+                report(exception);
+            }
+        }));
+    }
+
+    /**
+     * Cancels the running load, if there is one.
+     */
+    public void cancel() {
+        if (this.current != null) {
+            this.current.cancel(false);
+            this.current = null;
+            this.loading.set(false);
+        }
+    }
+
+    /**
+     * Returns a property which is <code>true</code> while a load is running. Views can bind a loading indicator to it.
+     *
+     * @return Loading state of this loader.
+     */
+    public ReadOnlyBooleanProperty loadingProperty() {
+        return this.loading.getReadOnlyProperty();
+    }
+
+    /**
+     * Shows a <code>ProgressIndicator</code> as placeholder of the given table while a load is running.
+     *
+     * @param tableView Table filled by this loader.
+     */
+    public void showProgressIn(TableView<?> tableView) {
+        Node placeholder = tableView.getPlaceholder();
+        ProgressIndicator progressIndicator = new ProgressIndicator();
+        this.loading.addListener((observable, wasLoading, isLoading) ->
+                tableView.setPlaceholder(isLoading ? progressIndicator : placeholder));
+    }
+
+    /**
+     * Passes the result of a single asynchronous call, e.g. a write, to <code>onSuccess</code> on the JavaFX
+     * application thread. Unlike {@link #load(CompletableFuture, Consumer)}, the call is not cancelled by later calls.
+     *
+     * @param future    Future of the asynchronous call.
+     * @param onSuccess Consumer of the result, called on the JavaFX application thread.
+     * @param <V>       Type of the result.
+     */
+    public static <V> void whenDone(CompletableFuture<V> future, Consumer<V> onSuccess) {
+        whenDone(future, onSuccess, BackgroundLoader::report);
+    }
+
+    /**
+     * Passes the result of a single asynchronous call to <code>onSuccess</code> or its failure to
+     * <code>onFailure</code> on the JavaFX application thread, e.g. to show why a write was rejected.
+     *
+     * @param future    Future of the asynchronous call.
+     * @param onSuccess Consumer of the result, called on the JavaFX application thread.
+     * @param onFailure Consumer of the exception thrown by the call, called on the JavaFX application thread.
+     * @param <V>       Type of the result.
+     */
+    public static <V> void whenDone(CompletableFuture<V> future, Consumer<V> onSuccess,
+                                    Consumer<Throwable> onFailure) {
+        future.whenComplete((result, exception) -> Platform.runLater(() -> {
+            if (exception == null) {
+                onSuccess.accept(result);
+            } else {
+                onFailure.accept(exception instanceof CompletionException ? exception.getCause() : exception);
+            }
+        }));
+    }
+
+    /**
+     * Reports a failure of a single asynchronous call whose result is not needed, e.g. an update.
+     *
+     * @param future Future of the asynchronous call.
+     */
+    public static void whenDone(CompletableFuture<?> future) {
+        whenDone(future, result -> {
+        });
+    }
+
+    private static void report(Throwable exception) {
+        Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+        if (!(cause instanceof CancellationException)) {
+            cause.printStackTrace();
+        }
+    }
+}
@@ -2,18 +2,21 @@ package de.hitec.nhplus.controller;
 
 import de.hitec.nhplus.datastorage.ConnectionBuilder;
 import de.hitec.nhplus.datastorage.UserDao;
-import de.hitec.nhplus.model.User;
+import de.hitec.nhplus.utils.LoginLockedException;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
 
 import java.io.IOException;
-import java.sql.Connection;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * The <code>LoginController</code> is responsible for handling the logic of the login view.
@@ -24,20 +27,20 @@ public class LoginController {
     private TextField usernameField;
     @FXML
     private PasswordField passwordField;
+    @FXML
+    private Button loginButton;
 
-    private Connection connection;
     private UserDao dao;
 
     /**
-     * When <code>initialize()</code> gets called, the database connection is established and the {@link UserDao}
-     * is initialized. This method is automatically invoked after the FXML file has been loaded and the FXML elements
-     * have been injected.
+     * When <code>initialize()</code> gets called, the {@link UserDao} is initialized with the connections of the
+     * <code>ConnectionManager</code>, so the rehash of a password after a login is written under its write lock. This
+     * method is automatically invoked after the FXML file has been loaded and the FXML elements have been injected.
      */
     @FXML
     public void initialize() {
         try {
-            connection = ConnectionBuilder.getConnection();
-            dao = new UserDao(connection);
+            dao = new UserDao(ConnectionBuilder.getConnectionManager());
         } catch (Exception exception) {
             exception.printStackTrace();
         }
@@ -45,19 +48,44 @@ public class LoginController {
 
     /**
      * This method handles the login button event. It fetches the username and password from the corresponding
-     * <code>TextField</code>s, validates the credentials using the {@link UserDao}, and loads the main scene
-     * if authentication succeeds. If authentication fails, an error dialog is shown.
+     * <code>TextField</code>s and validates the credentials using the {@link UserDao} in the background, so the window
+     * stays responsive while the password is verified. The login button is disabled until the result arrives. If
+     * authentication succeeds, the main scene is loaded; otherwise an error dialog is shown, which tells the user how
+     * long to wait if the username is locked after too many failed attempts.
      */
     @FXML
     private void handleLogin() {
         String username = usernameField.getText();
         String password = passwordField.getText();
 
-        User user = dao.getUserByCredentials(username, password);
-        if (user != null) {
-            loadMainScene();
+        loginButton.setDisable(true);
+        dao.authenticateAsync(username, password).whenComplete((user, exception) -> Platform.runLater(() -> {
+            loginButton.setDisable(false);
+            if (exception != null) {
+                handleLoginError(exception instanceof CompletionException ? exception.getCause() : exception);
+            } else if (user != null) {
+                loadMainScene();
+            } else {
+                passwordField.clear();
+                showError("Login fehlgeschlagen", "Benutzername oder Passwort ist falsch.");
+            }
+        }));
+    }
+
+    /**
+     * Shows an error dialog for a login which could not be checked.
+     *
+     * @param exception Cause of the failed login.
+     */
+    private void handleLoginError(Throwable exception) {
+        if (exception instanceof LoginLockedException locked) {
+            showError("Login gesperrt", "Zu viele fehlgeschlagene Anmeldeversuche. Bitte in "
+                    + locked.getRemainingSeconds() + " Sekunden erneut versuchen.");
+        } else if (exception instanceof RejectedExecutionException) {
+            showError("Login fehlgeschlagen", "Es werden gerade zu viele Anmeldungen geprüft. Bitte erneut versuchen.");
         } else {
-            showError("Login fehlgeschlagen", "Benutzername oder Passwort ist falsch.");
+            exception.printStackTrace();
+            showError("Login fehlgeschlagen", "Die Anmeldung konnte nicht geprüft werden.");
         }
     }
 
@@ -1,18 +1,39 @@
 package de.hitec.nhplus.controller;
 
 import de.hitec.nhplus.Main;
+import de.hitec.nhplus.dataexchange.CsvImporter;
+import de.hitec.nhplus.dataexchange.ImportReport;
+import de.hitec.nhplus.datastorage.AsyncDao;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceDialog;
 import javafx.scene.layout.BorderPane;
+import javafx.stage.FileChooser;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
 
 public class MainWindowController {
 
+    private static final String IMPORT_PATIENTS = "Patienten/innen";
+    private static final String IMPORT_CAREGIVERS = "Pfleger/innen";
+    private static final String IMPORT_TREATMENTS = "Behandlungen";
+    private static final int MAX_REJECTS_SHOWN = 20;
+
     @FXML
     private BorderPane mainBorderPane;
 
+    @FXML
+    private Button buttonImport;
+
     @FXML
     private void handleShowAllPatient(ActionEvent event) {
         FXMLLoader loader = new FXMLLoader(Main.class.getResource("/de/hitec/nhplus/AllPatientView.fxml"));
@@ -50,4 +71,75 @@ public class MainWindowController {
             exception.printStackTrace();
         }
     }
+
+    /**
+     * Handles the action event triggered when the user wants to import data. Asks for the kind of data and the CSV
+     * file, imports the file with the {@link CsvImporter} in the background and shows the {@link ImportReport}
+     * afterwards. The import button is disabled while an import is running.
+     *
+     * @param event The action event triggered by the user.
+     */
+    @FXML
+    private void handleImport(ActionEvent event) {
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(IMPORT_PATIENTS, IMPORT_PATIENTS, IMPORT_CAREGIVERS,
+                IMPORT_TREATMENTS);
+        dialog.setTitle("Importieren");
+        dialog.setHeaderText("Welche Daten sollen importiert werden?");
+        Optional<String> kind = dialog.showAndWait();
+        if (kind.isEmpty()) {
+            return;
+        }
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle(kind.get() + " importieren");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV-Dateien", "*.csv"));
+        File file = fileChooser.showOpenDialog(mainBorderPane.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        buttonImport.setDisable(true);
+        CsvImporter importer = new CsvImporter();
+        AsyncDao.execute(() -> {
+            try {
+                return switch (kind.get()) {
+                    case IMPORT_CAREGIVERS -> importer.importCaregivers(file.toPath());
+                    case IMPORT_TREATMENTS -> importer.importTreatments(file.toPath());
+                    default -> importer.importPatients(file.toPath());
+                };
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }).whenComplete((report, exception) -> Platform.runLater(() -> {
+            buttonImport.setDisable(false);
+            if (exception == null) {
+                showImportReport(report);
+            } else {
+                Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+                cause.printStackTrace();
+                Alert alert = new Alert(Alert.AlertType.ERROR);
+                alert.setTitle("Fehler");
+                alert.setHeaderText("Import fehlgeschlagen");
+                alert.setContentText(cause instanceof UncheckedIOException ? cause.getCause().getMessage()
+                        : cause.getMessage());
+                alert.showAndWait();
+            }
+        }));
+    }
+
+    private void showImportReport(ImportReport report) {
+        StringBuilder content = new StringBuilder(report.toString());
+        List<ImportReport.Reject> rejects = report.getRejects();
+        for (int i = 0; i < Math.min(rejects.size(), MAX_REJECTS_SHOWN); i++) {
+            content.append(System.lineSeparator()).append(rejects.get(i));
+        }
+        if (report.getRejectedCount() > MAX_REJECTS_SHOWN) {
+            content.append(System.lineSeparator()).append("...");
+        }
+        Alert alert = new Alert(report.getRejectedCount() == 0 ? Alert.AlertType.INFORMATION
+                : Alert.AlertType.WARNING);
+        alert.setTitle("Import");
+        alert.setHeaderText("Import abgeschlossen");
+        alert.setContentText(content.toString());
+        alert.setResizable(true);
+        alert.showAndWait();
+    }
 }
@@ -1,5 +1,6 @@
 package de.hitec.nhplus.controller;
 
+import de.hitec.nhplus.datastorage.AsyncDao;
 import de.hitec.nhplus.datastorage.DaoFactory;
 import de.hitec.nhplus.datastorage.TreatmentDao;
 import de.hitec.nhplus.model.Caregiver;
@@ -12,7 +13,6 @@ import de.hitec.nhplus.model.Treatment;
 import de.hitec.nhplus.utils.DateConverter;
 import javafx.util.StringConverter;
 
-import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalTime;
 
@@ -118,22 +118,23 @@ public class NewTreatmentController {
         String remarks = textAreaRemarks.getText();
         Treatment treatment = new Treatment(patient.getPid(), date, begin, end, description, remarks, caregiver.getCid());
         createTreatment(treatment);
-        controller.readAllAndShowInTableView();
-        stage.close();
     }
 
     /**
-     * Creates a treatment entry in the database.
+     * Creates a treatment entry in the database in the background and closes the window once it is stored. The table
+     * of the parent controller is notified of the new treatment by the DAO and inserts it without reloading. If the
+     * treatment overlaps another treatment of the caregiver or the patient, it is not stored and the window stays open
+     * to correct the times.
      *
      * @param treatment the treatment to create
      */
     private void createTreatment(Treatment treatment) {
         TreatmentDao dao = DaoFactory.getDaoFactory().createTreatmentDao();
-        try {
-            dao.create(treatment);
-        } catch (SQLException exception) {
-            exception.printStackTrace();
-        }
+        this.buttonAdd.setDisable(true);
+        BackgroundLoader.whenDone(new AsyncDao<>(dao).create(treatment), result -> stage.close(), exception -> {
+            this.buttonAdd.setDisable(areInputDataInvalid());
+            TreatmentConflictAlert.show(exception);
+        });
     }
 
     /**
@@ -0,0 +1,317 @@
+package de.hitec.nhplus.controller;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToLongFunction;
+
+/**
+ * Read-only <code>ObservableList</code> for a <code>TableView</code> which loads its elements page by page while the
+ * user scrolls. The list is built from the sorted keys of all elements, so its size and the keys of every page are
+ * known without loading any element. An element whose page is not loaded yet is returned as <code>null</code>, which
+ * the <code>TableView</code> shows as an empty row; the page is loaded in the background and the rows are replaced
+ * when it arrives.
+ * <p>
+ * Only a limited number of pages is kept. When the limit is exceeded, the pages farthest from the page accessed last
+ * are dropped and loaded again when they are scrolled into view.
+ * <p>
+ * Single elements can be inserted, replaced and removed with {@link #put(Object)} and {@link #removeKey(long)}, e.g.
+ * after an edit. Only the changed row is reported to the <code>TableView</code>; loaded pages keep their elements.
+ * <p>
+ * All methods have to be called on the JavaFX application thread.
+ *
+ * @param <T> Type of the elements.
+ */
+public class PagedObservableList<T> extends ObservableListBase<T> {
+
+    /**
+     * Loads the elements of one page.
+     *
+     * @param <T> Type of the elements.
+     */
+    @FunctionalInterface
+    public interface PageLoader<T> {
+
+        /**
+         * Loads at most <code>limit</code> elements with a key greater than <code>afterKey</code>, ordered by key.
+         *
+         * @param afterKey Key of the last element of the previous page.
+         * @param limit    Maximum number of elements.
+         * @return Future completed with the elements of the page.
+         */
+        CompletableFuture<List<T>> load(long afterKey, int limit);
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 200;
+    public static final int DEFAULT_MAX_PAGES = 16;
+
+    private long[] keys;
+    private final int pageSize;
+    private final int maxPages;
+    private final PageLoader<T> pageLoader;
+    private final ToLongFunction<T> keyExtractor;
+    private final Map<Integer, Object[]> pages = new HashMap<>();
+    private final Set<Integer> loadingPages = new HashSet<>();
+    private int currentPage;
+    private int generation;
+
+    /**
+     * Creates a list with the default page size and page limit.
+     *
+     * @param keys         Keys of all elements in ascending order.
+     * @param pageLoader   Loads the elements of a page, e.g. from a keyset paginated query.
+     * @param keyExtractor Returns the key of an element.
+     */
+    public PagedObservableList(long[] keys, PageLoader<T> pageLoader, ToLongFunction<T> keyExtractor) {
+        this(keys, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES, pageLoader, keyExtractor);
+    }
+
+    /**
+     * Creates a list.
+     *
+     * @param keys         Keys of all elements in ascending order.
+     * @param pageSize     Number of elements per page.
+     * @param maxPages     Maximum number of pages kept in memory, at least two.
+     * @param pageLoader   Loads the elements of a page, e.g. from a keyset paginated query.
+     * @param keyExtractor Returns the key of an element.
+     */
+    public PagedObservableList(long[] keys, int pageSize, int maxPages, PageLoader<T> pageLoader,
+                               ToLongFunction<T> keyExtractor) {
+        if (pageSize < 1 || maxPages < 2) {
+            throw new IllegalArgumentException("pageSize must be positive and maxPages at least 2");
+        }
+        this.keys = keys;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.pageLoader = pageLoader;
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * Returns the element at the given index, or <code>null</code> if its page is still loading. Accessing the last
+     * quarter of a page also starts loading the following page, so scrolling down rarely shows empty rows.
+     *
+     * @param index Index of the element.
+     * @return The element, or <code>null</code> while its page is loading.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= this.keys.length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int page = index / this.pageSize;
+        this.currentPage = page;
+        if (index % this.pageSize >= this.pageSize * 3 / 4) {
+            requestPage(page + 1);
+        }
+        Object[] elements = this.pages.get(page);
+        if (elements == null) {
+            requestPage(page);
+            return null;
+        }
+        return (T) elements[index % this.pageSize];
+    }
+
+    @Override
+    public int size() {
+        return this.keys.length;
+    }
+
+    /**
+     * Returns the index of the element with the given key without loading any page.
+     *
+     * @param key Key of the element.
+     * @return Index of the element, or -1 if the list contains no element with this key.
+     */
+    public int indexOfKey(long key) {
+        int index = Arrays.binarySearch(this.keys, key);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Inserts an element at the position of its key, or replaces the element with the same key.
+     *
+     * @param element Element to insert or replace.
+     */
+    public void put(T element) {
+        long key = this.keyExtractor.applyAsLong(element);
+        int index = Arrays.binarySearch(this.keys, key);
+        if (index >= 0) {
+            Object[] elements = this.pages.get(index / this.pageSize);
+            if (elements == null) {
+                return;
+            }
+            @SuppressWarnings("unchecked")
+            T old = (T) elements[index % this.pageSize];
+            elements[index % this.pageSize] = element;
+            beginChange();
+            nextSet(index, old);
+            endChange();
+            return;
+        }
+        index = -index - 1;
+        long[] keys = new long[this.keys.length + 1];
+        System.arraycopy(this.keys, 0, keys, 0, index);
+        keys[index] = key;
+        System.arraycopy(this.keys, index, keys, index + 1, this.keys.length - index);
+        repage(index, keys, element);
+        beginChange();
+        nextAdd(index, index + 1);
+        endChange();
+    }
+
+    /**
+     * Removes the element with the given key.
+     *
+     * @param key Key of the element to remove.
+     */
+    @SuppressWarnings("unchecked")
+    public void removeKey(long key) {
+        int index = Arrays.binarySearch(this.keys, key);
+        if (index < 0) {
+            return;
+        }
+        Object[] elements = this.pages.get(index / this.pageSize);
+        T removed = elements == null ? null : (T) elements[index % this.pageSize];
+        long[] keys = new long[this.keys.length - 1];
+        System.arraycopy(this.keys, 0, keys, 0, index);
+        System.arraycopy(this.keys, index + 1, keys, index, keys.length - index);
+        repage(index, keys, null);
+        beginChange();
+        nextRemove(index, removed);
+        endChange();
+    }
+
+    /**
+     * Returns the number of pages currently kept in memory.
+     *
+     * @return Number of loaded pages.
+     */
+    public int getLoadedPageCount() {
+        return this.pages.size();
+    }
+
+    private void requestPage(int page) {
+        int from = page * this.pageSize;
+        if (from >= this.keys.length || this.pages.containsKey(page) || !this.loadingPages.add(page)) {
+            return;
+        }
+        int to = Math.min(from + this.pageSize, this.keys.length);
+        long afterKey = this.keys[from] - 1;
+        int generation = this.generation;
+        CompletableFuture<List<T>> future = this.pageLoader.load(afterKey, to - from);
+        future.whenComplete((result, exception) -> {
+            if (exception != null) {
+                Platform.runLater(() -> {
+                    if (generation == this.generation) {
+                        this.loadingPages.remove(page);
+                    }
+                });
+            }
+        });
+        BackgroundLoader.whenDone(future, elements -> {
+            if (generation != this.generation) {
+                return;
+            }
+            this.loadingPages.remove(page);
+            storePage(page, elements);
+        });
+    }
+
+    /**
+     * Stores a loaded page and replaces its rows. The elements are matched to the rows by their keys, so elements
+     * inserted or deleted since the keys were read do not shift the rows; a deleted element stays <code>null</code>.
+     */
+    private void storePage(int page, List<T> loaded) {
+        int from = page * this.pageSize;
+        int to = Math.min(from + this.pageSize, this.keys.length);
+        Object[] elements = new Object[to - from];
+        for (T element : loaded) {
+            int index = Arrays.binarySearch(this.keys, from, to, this.keyExtractor.applyAsLong(element));
+            if (index >= 0) {
+                elements[index - from] = element;
+            }
+        }
+        this.pages.put(page, elements);
+        evictFarPages();
+
+        beginChange();
+        for (int index = from; index < to; index++) {
+            nextSet(index, null);
+        }
+        endChange();
+    }
+
+    /**
+     * Replaces the keys after an element was inserted or removed at the given index. The pages before the index are
+     * unchanged; the loaded pages from the index on are rebuilt from their elements, shifted by one. A page which
+     * would have to take over an element of a page that is not loaded is dropped and loaded again when it is
+     * accessed. Pages still loading are discarded when they arrive, as their keys are outdated.
+     */
+    private void repage(int index, long[] keys, T added) {
+        int firstPage = index / this.pageSize;
+        Map<Long, Object> shifted = new HashMap<>();
+        Set<Integer> shiftedPages = new HashSet<>();
+        for (Iterator<Map.Entry<Integer, Object[]>> iterator = this.pages.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Integer, Object[]> page = iterator.next();
+            if (page.getKey() < firstPage) {
+                continue;
+            }
+            for (Object element : page.getValue()) {
+                if (element != null) {
+                    shifted.put(this.keyExtractor.applyAsLong(cast(element)), element);
+                }
+            }
+            shiftedPages.add(page.getKey());
+            iterator.remove();
+        }
+        if (added != null) {
+            shifted.put(this.keyExtractor.applyAsLong(added), added);
+        }
+        this.keys = keys;
+        this.generation++;
+        this.loadingPages.clear();
+        for (int page : shiftedPages) {
+            int from = page * this.pageSize;
+            int to = Math.min(from + this.pageSize, keys.length);
+            if (from >= to) {
+                continue;
+            }
+            Object[] elements = new Object[to - from];
+            boolean complete = true;
+            for (int i = from; i < to && complete; i++) {
+                elements[i - from] = shifted.get(keys[i]);
+                complete = elements[i - from] != null;
+            }
+            if (complete) {
+                this.pages.put(page, elements);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T cast(Object element) {
+        return (T) element;
+    }
+
+    private void evictFarPages() {
+        while (this.pages.size() > this.maxPages) {
+            Integer farthest = null;
+            for (Integer page : this.pages.keySet()) {
+                if (farthest == null || Math.abs(page - this.currentPage) > Math.abs(farthest - this.currentPage)) {
+                    farthest = page;
+                }
+            }
+            this.pages.remove(farthest);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package de.hitec.nhplus.controller;
+
+import de.hitec.nhplus.datastorage.AsyncDao;
+import de.hitec.nhplus.datastorage.Dao;
+import de.hitec.nhplus.datastorage.DataChange;
+import de.hitec.nhplus.datastorage.DataChangeNotifier;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Applies the {@link DataChange}s of a table to the list shown by a <code>TableView</code>, so an edit changes a
+ * single row instead of reloading the whole table. Inserted and updated rows are read in the background and inserted
+ * at the end of the list or replace the row with the same id; deleted rows and rows which no longer match the filter
+ * of the view are removed. Reading the rows again, instead of trusting the change, keeps the list correct even if
+ * changes arrive out of order.
+ * <p>
+ * Rows are found by the positions of their ids, which are kept next to the list, so applying an insert or update
+ * costs O(1) however long the list is. The positions are computed again after a delete, which shifts the following
+ * rows anyway, and after the list was changed by others, e.g. reloaded by the view.
+ * <p>
+ * The listener is only held weakly by the notifier, so the view has to keep a reference to it.
+ *
+ * @param <T> Type of the rows.
+ */
+public class TableChangeListener<T> implements DataChangeNotifier.Listener {
+
+    private final ObservableList<T> items;
+    private final Dao<T> dao;
+    private final ToLongFunction<T> keyExtractor;
+    private final Predicate<T> filter;
+    private final Runnable reload;
+    private final Map<Long, Integer> indexByKey = new HashMap<>();
+    private boolean indexStale = true;
+    private boolean applying;
+
+    /**
+     * Creates a listener.
+     *
+     * @param items        List shown by the table.
+     * @param dao          DAO to read changed rows with.
+     * @param keyExtractor Returns the id of a row.
+     * @param filter       Tests whether a row belongs to the view, e.g. only active caregivers.
+     * @param reload       Reloads the whole table, called if too many rows were changed to apply them one by one.
+     */
+    public TableChangeListener(ObservableList<T> items, Dao<T> dao, ToLongFunction<T> keyExtractor,
+                               Predicate<T> filter, Runnable reload) {
+        this.items = items;
+        this.dao = dao;
+        this.keyExtractor = keyExtractor;
+        this.filter = filter;
+        this.reload = reload;
+        this.items.addListener((ListChangeListener<T>) listChange -> {
+            if (!this.applying) {
+                this.indexStale = true;
+            }
+        });
+    }
+
+    @Override
+    public void changed(DataChange change) {
+        switch (change.type()) {
+            case RELOADED -> Platform.runLater(this.reload);
+            case DELETED -> Platform.runLater(() -> change.keys().forEach(key -> put(key, null)));
+            default -> BackgroundLoader.whenDone(AsyncDao.execute(() -> {
+                Map<Long, T> rows = new LinkedHashMap<>();
+                for (long key : change.keys()) {
+                    rows.put(key, this.dao.read(key));
+                }
+                return rows;
+            }), rows -> rows.forEach(this::put));
+        }
+    }
+
+    /**
+     * Replaces, appends or removes the row with the given id.
+     *
+     * @param key Id of the row.
+     * @param row Current state of the row, or <code>null</code> if it does not exist anymore.
+     */
+    private void put(long key, T row) {
+        Integer index = indexOf(key);
+        boolean shown = row != null && this.filter.test(row);
+        this.applying = true;
+        try {
+            if (index != null && shown) {
+                this.items.set(index, row);
+            } else if (index != null) {
+                this.items.remove((int) index);
+                this.indexStale = true;
+            } else if (shown) {
+                this.items.add(row);
+                this.indexByKey.put(key, this.items.size() - 1);
+            }
+        } finally {
+            this.applying = false;
+        }
+    }
+
+    /**
+     * Returns the position of the row with the given id, computing the positions of all rows first if they are stale.
+     *
+     * @param key Id of the row.
+     * @return Position in the list, or <code>null</code> if the row is not shown.
+     */
+    private Integer indexOf(long key) {
+        if (this.indexStale) {
+            this.indexByKey.clear();
+            for (int i = 0; i < this.items.size(); i++) {
+                this.indexByKey.put(this.keyExtractor.applyAsLong(this.items.get(i)), i);
+            }
+            this.indexStale = false;
+        }
+        return this.indexByKey.get(key);
+    }
+}
@@ -0,0 +1,33 @@
+package de.hitec.nhplus.controller;
+
+import de.hitec.nhplus.datastorage.TreatmentConflictException;
+import javafx.scene.control.Alert;
+
+/**
+ * Shows why a treatment could not be stored by the windows creating and editing treatments.
+ */
+final class TreatmentConflictAlert {
+
+    private TreatmentConflictAlert() {
+    }
+
+    /**
+     * Shows the overlapping treatments if the treatment conflicts with others, or the error otherwise.
+     *
+     * @param exception Failure of the create or update.
+     */
+    static void show(Throwable exception) {
+        Alert alert;
+        if (exception instanceof TreatmentConflictException) {
+            alert = new Alert(Alert.AlertType.WARNING);
+            alert.setHeaderText("Terminkonflikt");
+        } else {
+            exception.printStackTrace();
+            alert = new Alert(Alert.AlertType.ERROR);
+            alert.setHeaderText("Behandlung konnte nicht gespeichert werden");
+        }
+        alert.setTitle("Behandlung");
+        alert.setContentText(exception.getMessage());
+        alert.showAndWait();
+    }
+}
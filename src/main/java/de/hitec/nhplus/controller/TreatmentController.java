@@ -1,10 +1,12 @@
 package de.hitec.nhplus.controller;
 
+import de.hitec.nhplus.datastorage.AsyncDao;
 import de.hitec.nhplus.datastorage.CaregiverDao;
 import de.hitec.nhplus.datastorage.DaoFactory;
 import de.hitec.nhplus.datastorage.PatientDao;
 import de.hitec.nhplus.datastorage.TreatmentDao;
 import de.hitec.nhplus.model.Caregiver;
+import javafx.beans.value.ChangeListener;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.stage.Stage;
@@ -12,8 +14,9 @@ import de.hitec.nhplus.model.Patient;
 import de.hitec.nhplus.model.Treatment;
 import de.hitec.nhplus.utils.DateConverter;
 
-import java.sql.SQLException;
 import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller class for the treatment editing window.
@@ -48,6 +51,9 @@ public class TreatmentController {
     @FXML
     private DatePicker datePicker;
 
+    @FXML
+    private Button btnChange;
+
     private AllTreatmentController controller;
     private Stage stage;
     private Patient patient;
@@ -56,7 +62,8 @@ public class TreatmentController {
 
     /**
      * Initializes the controller with the main treatment controller, the stage, and the selected treatment.
-     * Loads the related patient and displays all treatment details.
+     * Loads the related patient and caregiver in the background and displays all treatment details afterwards.
+     * The "Change" button is enabled only while the input is valid.
      *
      * @param controller the calling controller for updating the table view
      * @param stage      the current stage (window)
@@ -65,16 +72,26 @@ public class TreatmentController {
     public void initializeController(AllTreatmentController controller, Stage stage, Treatment treatment) {
         this.stage = stage;
         this.controller= controller;
+        this.treatment = treatment;
+
+        this.btnChange.setDisable(true);
+        ChangeListener<String> inputListener = (observableValue, oldText, newText) ->
+                this.btnChange.setDisable(areInputDataInvalid());
+        this.textFieldBegin.textProperty().addListener(inputListener);
+        this.textFieldEnd.textProperty().addListener(inputListener);
+        this.textFieldDescription.textProperty().addListener(inputListener);
+        this.datePicker.valueProperty().addListener((observableValue, oldDate, newDate) ->
+                this.btnChange.setDisable(areInputDataInvalid()));
+
         PatientDao pDao = DaoFactory.getDaoFactory().createPatientDAO();
         CaregiverDao cDao = DaoFactory.getDaoFactory().createCaregiverDAO();
-        try {
-            this.patient = pDao.read((int) treatment.getPid());
-            this.treatment = treatment;
-            this.caregiver = cDao.read((int)treatment.getCaregiverId());
+        CompletableFuture<Patient> patientFuture = new AsyncDao<>(pDao).read(treatment.getPid());
+        CompletableFuture<Caregiver> caregiverFuture = new AsyncDao<>(cDao).read(treatment.getCaregiverId());
+        BackgroundLoader.whenDone(CompletableFuture.allOf(patientFuture, caregiverFuture), result -> {
+            this.patient = patientFuture.join();
+            this.caregiver = caregiverFuture.join();
             showData();
-        } catch (SQLException exception) {
-            exception.printStackTrace();
-        }
+        });
     }
 
     /**
@@ -96,31 +113,35 @@ public class TreatmentController {
 
     /**
      * Called when the "Save" or "Apply" button is clicked.
-     * Updates the treatment object with the user input and saves it to the database.
-     * Refreshes the main table and closes the window.
+     * Updates the treatment object with the user input and saves it to the database in the background.
+     * Refreshes the main table once the treatment is saved and closes the window. Does nothing if the input is invalid.
      */
     @FXML
     public void handleChange(){
-        this.treatment.setDate(this.datePicker.getValue().toString());
-        this.treatment.setBegin(textFieldBegin.getText());
-        this.treatment.setEnd(textFieldEnd.getText());
-        this.treatment.setDescription(textFieldDescription.getText());
-        this.treatment.setRemarks(textAreaRemarks.getText());
-        doUpdate();
-        controller.readAllAndShowInTableView();
-        stage.close();
+        if (areInputDataInvalid()) {
+            return;
+        }
+        Treatment changed = new Treatment(this.treatment.getTid(), this.treatment.getPid(), this.datePicker.getValue(),
+                DateConverter.convertStringToLocalTime(textFieldBegin.getText()),
+                DateConverter.convertStringToLocalTime(textFieldEnd.getText()),
+                textFieldDescription.getText(), textAreaRemarks.getText(), this.treatment.getCid(),
+                this.treatment.getCaregiverSurname(), this.treatment.getCaregiverFirstname(),
+                this.treatment.getCaregiverPhonenumber());
+        doUpdate(changed);
     }
 
     /**
-     * Updates the treatment record in the database.
+     * Updates the treatment record in the database in the background and closes the window once it is stored. The
+     * changes are applied to a copy, so the row shown in the table keeps its values if the update is rejected, e.g.
+     * because the new times overlap another treatment; the window then stays open. The table of the calling
+     * controller is notified of the change by the DAO and replaces the row without reloading.
+     *
+     * @param changed the treatment with the changed values
      */
-    private void doUpdate(){
+    private void doUpdate(Treatment changed){
         TreatmentDao dao = DaoFactory.getDaoFactory().createTreatmentDao();
-        try {
-            dao.update(treatment);
-        } catch (SQLException exception) {
-            exception.printStackTrace();
-        }
+        BackgroundLoader.whenDone(new AsyncDao<>(dao).update(changed), result -> stage.close(),
+                TreatmentConflictAlert::show);
     }
 
     /**
@@ -131,4 +152,27 @@ public class TreatmentController {
     public void handleCancel(){
         stage.close();
     }
+
+    /**
+     * Checks if the input is invalid: begin and end must be times in the format "HH:mm", the end must be after the
+     * begin, and the description and the date must be given.
+     *
+     * @return <code>true</code> if the treatment cannot be changed with the input.
+     */
+    private boolean areInputDataInvalid() {
+        if (this.textFieldBegin.getText() == null || this.textFieldEnd.getText() == null) {
+            return true;
+        }
+        try {
+            LocalTime begin = DateConverter.convertStringToLocalTime(this.textFieldBegin.getText());
+            LocalTime end = DateConverter.convertStringToLocalTime(this.textFieldEnd.getText());
+            if (!end.isAfter(begin)) {
+                return true;
+            }
+        } catch (Exception exception) {
+            return true;
+        }
+        return this.textFieldDescription.getText() == null || this.textFieldDescription.getText().isBlank()
+                || this.datePicker.getValue() == null;
+    }
 }
\ No newline at end of file
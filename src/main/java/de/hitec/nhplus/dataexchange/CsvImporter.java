@@ -0,0 +1,427 @@
+package de.hitec.nhplus.dataexchange;
+
+import de.hitec.nhplus.datastorage.ConnectionBuilder;
+import de.hitec.nhplus.datastorage.ConnectionManager;
+import de.hitec.nhplus.datastorage.DaoFactory;
+import de.hitec.nhplus.datastorage.DaoImp;
+import de.hitec.nhplus.datastorage.SchemaMigrator;
+import de.hitec.nhplus.model.Caregiver;
+import de.hitec.nhplus.model.Patient;
+import de.hitec.nhplus.model.Treatment;
+import de.hitec.nhplus.utils.DateConverter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Imports patients, caregivers and treatments from CSV files. The first record of a file is the header; its column
+ * names are the names of the table columns, in any order and case:
+ * <ul>
+ *     <li>patients: <code>firstname, surname, dateOfBirth, carelevel, roomnumber</code></li>
+ *     <li>caregivers: <code>firstname, surname, phonenumber</code> and optionally <code>inactiveSince</code></li>
+ *     <li>treatments: <code>pid, cid, treatment_date, begin, end, description</code> and optionally
+ *     <code>remark</code></li>
+ * </ul>
+ * Dates are given as "yyyy-MM-dd" and times as "HH:mm", like everywhere in NHPlus.
+ * <p>
+ * The file is read as a stream in chunks of {@link #DEFAULT_CHUNK_SIZE} rows. The chunks are parsed and validated in
+ * parallel on a pool of worker threads, while the calling thread reads the next chunks and writes the valid rows of
+ * the finished chunks in file order with JDBC batches. Only a few chunks are in flight at a time, so files of any size
+ * are imported in bounded memory. Invalid rows are skipped and listed in the {@link ImportReport}.
+ * <p>
+ * The whole file is written in one transaction: an error of the database rolls back the import completely, and the
+ * views keep reading the previous state until the import is committed. Other writes wait until the import is
+ * finished.
+ * <p>
+ * The import blocks until the file is written completely, so it must not be run on the JavaFX application thread.
+ */
+public class CsvImporter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 5000;
+
+    /**
+     * Size of a file from which on the indexes of the table are rebuilt after the import instead of being updated for
+     * every row, about 100000 treatments.
+     */
+    private static final long INDEX_REBUILD_THRESHOLD_BYTES = 8L << 20;
+
+    private static final Pattern ROOM_NUMBER = Pattern.compile("[0-9A-Za-z]{1,10}");
+    private static final Pattern PHONE_NUMBER = Pattern.compile("[0-9+ /()-]{3,30}");
+
+    private final Charset charset;
+    private final char delimiter;
+    private final int chunkSize;
+    private final int threads;
+
+    /**
+     * Creates an importer for UTF-8 files with the delimiter detected from the header.
+     */
+    public CsvImporter() {
+        this(StandardCharsets.UTF_8, CsvReader.DETECT_DELIMITER, DEFAULT_CHUNK_SIZE,
+                Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Creates an importer with the given settings.
+     *
+     * @param charset   Encoding of the files.
+     * @param delimiter Delimiter of the fields, or {@link CsvReader#DETECT_DELIMITER}.
+     * @param chunkSize Number of rows parsed and written together.
+     * @param threads   Number of threads parsing the rows.
+     */
+    public CsvImporter(Charset charset, char delimiter, int chunkSize, int threads) {
+        if (chunkSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("Chunk size and threads must be at least 1");
+        }
+        this.charset = charset;
+        this.delimiter = delimiter;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Imports the patients of the given file.
+     *
+     * @param file CSV file with one patient per row.
+     * @return Report of the import.
+     * @throws IOException  If the file cannot be read or a required column is missing.
+     * @throws SQLException If the patients cannot be written.
+     */
+    public ImportReport importPatients(Path file) throws IOException, SQLException {
+        LocalDate today = LocalDate.now();
+        return importFile(file, "patient", DaoFactory.getDaoFactory().createPatientDAO(), header -> {
+            int firstName = header.require("firstname");
+            int surname = header.require("surname");
+            int dateOfBirth = header.require("dateofbirth");
+            int careLevel = header.require("carelevel");
+            int roomNumber = header.require("roomnumber");
+            return fields -> {
+                LocalDate date = parseDate(fields, dateOfBirth, "Geburtsdatum");
+                if (date.isAfter(today)) {
+                    throw new IllegalArgumentException("Geburtsdatum liegt in der Zukunft: " + date);
+                }
+                String level = require(fields, careLevel, "Pflegegrad");
+                if (level.length() != 1 || level.charAt(0) < '1' || level.charAt(0) > '5') {
+                    throw new IllegalArgumentException("Pflegegrad muss zwischen 1 und 5 liegen: " + level);
+                }
+                String room = require(fields, roomNumber, "Raum");
+                if (!ROOM_NUMBER.matcher(room).matches()) {
+                    throw new IllegalArgumentException("Ungültige Raumnummer: " + room);
+                }
+                return new Patient(require(fields, firstName, "Vorname"), require(fields, surname, "Nachname"), date,
+                        level, room);
+            };
+        });
+    }
+
+    /**
+     * Imports the caregivers of the given file.
+     *
+     * @param file CSV file with one caregiver per row.
+     * @return Report of the import.
+     * @throws IOException  If the file cannot be read or a required column is missing.
+     * @throws SQLException If the caregivers cannot be written.
+     */
+    public ImportReport importCaregivers(Path file) throws IOException, SQLException {
+        return importFile(file, "caregiver", DaoFactory.getDaoFactory().createCaregiverDAO(), header -> {
+            int firstName = header.require("firstname");
+            int surname = header.require("surname");
+            int phoneNumber = header.require("phonenumber");
+            int inactiveSince = header.optional("inactivesince");
+            return fields -> {
+                String phone = require(fields, phoneNumber, "Telefonnummer");
+                if (!PHONE_NUMBER.matcher(phone).matches()) {
+                    throw new IllegalArgumentException("Ungültige Telefonnummer: " + phone);
+                }
+                LocalDate inactive = value(fields, inactiveSince).isEmpty() ? null
+                        : parseDate(fields, inactiveSince, "Inaktiv seit");
+                return new Caregiver(require(fields, firstName, "Vorname"), require(fields, surname, "Nachname"),
+                        phone, inactive);
+            };
+        });
+    }
+
+    /**
+     * Imports the treatments of the given file. The patients and caregivers referenced have to exist; a treatment on
+     * or after the day its caregiver became inactive is rejected.
+     *
+     * @param file CSV file with one treatment per row.
+     * @return Report of the import.
+     * @throws IOException  If the file cannot be read or a required column is missing.
+     * @throws SQLException If the patients and caregivers cannot be read or the treatments cannot be written.
+     */
+    public ImportReport importTreatments(Path file) throws IOException, SQLException {
+        DaoFactory factory = DaoFactory.getDaoFactory();
+        Set<Long> patients = new HashSet<>();
+        for (Patient patient : factory.createPatientDAO().readAll()) {
+            patients.add(patient.getPid());
+        }
+        Map<Long, LocalDate> caregivers = new HashMap<>();
+        for (Caregiver caregiver : factory.createCaregiverDAO().readAll()) {
+            caregivers.put(caregiver.getCid(), caregiver.getInactiveSince());
+        }
+        return importFile(file, "treatment", factory.createTreatmentDao(), header -> {
+            int pid = header.require("pid");
+            int cid = header.require("cid");
+            int treatmentDate = header.require("treatment_date");
+            int begin = header.require("begin");
+            int end = header.require("end");
+            int description = header.require("description");
+            int remark = header.optional("remark");
+            return fields -> {
+                long patient = parseId(fields, pid, "Patient");
+                if (!patients.contains(patient)) {
+                    throw new IllegalArgumentException("Patient " + patient + " existiert nicht");
+                }
+                long caregiver = parseId(fields, cid, "Pfleger/in");
+                if (!caregivers.containsKey(caregiver)) {
+                    throw new IllegalArgumentException("Pfleger/in " + caregiver + " existiert nicht");
+                }
+                LocalDate date = parseDate(fields, treatmentDate, "Datum");
+                LocalDate inactiveSince = caregivers.get(caregiver);
+                if (inactiveSince != null && !date.isBefore(inactiveSince)) {
+                    throw new IllegalArgumentException("Pfleger/in " + caregiver + " ist seit "
+                            + DateConverter.convertLocalDateToString(inactiveSince) + " inaktiv");
+                }
+                LocalTime beginTime = parseTime(fields, begin, "Beginn");
+                LocalTime endTime = parseTime(fields, end, "Ende");
+                if (!beginTime.isBefore(endTime)) {
+                    throw new IllegalArgumentException("Beginn muss vor dem Ende liegen");
+                }
+                return new Treatment(patient, date, beginTime, endTime, require(fields, description, "Beschreibung"),
+                        value(fields, remark), caregiver);
+            };
+        });
+    }
+
+    /**
+     * Imports a file in one transaction. For large files, the indexes of the table are dropped before and created
+     * again after the rows are written, which is several times faster than updating them row by row.
+     */
+    private <T> ImportReport importFile(Path file, String table, DaoImp<T> dao, RowParserFactory<T> parserFactory)
+            throws IOException, SQLException {
+        ImportReport report = new ImportReport(file.getFileName().toString());
+        long start = System.nanoTime();
+        boolean rebuildIndexes = Files.size(file) >= INDEX_REBUILD_THRESHOLD_BYTES;
+        ConnectionManager manager = ConnectionBuilder.getConnectionManager();
+        if (manager == null) {
+            throw new SQLException("Keine Verbindung zur Datenbank");
+        }
+        try {
+            manager.inTransaction(() -> {
+                List<String> indexes = rebuildIndexes ? SchemaMigrator.dropIndexes(manager.getWriter(), table)
+                        : List.of();
+                try {
+                    readAndWrite(file, dao, parserFactory, report);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+                SchemaMigrator.createIndexes(manager.getWriter(), indexes);
+                return null;
+            });
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        } finally {
+            report.setElapsedNanos(System.nanoTime() - start);
+        }
+        return report;
+    }
+
+    /**
+     * Reads the file in chunks, parses them on the worker pool and writes them in file order. At most two chunks per
+     * worker are in flight, so reading stops while the workers and the database are behind.
+     */
+    private <T> void readAndWrite(Path file, DaoImp<T> dao, RowParserFactory<T> parserFactory, ImportReport report)
+            throws IOException, SQLException {
+        dao.setBatchSize(this.chunkSize);
+        ExecutorService executor = createExecutor();
+        ArrayDeque<Future<ParsedChunk<T>>> pending = new ArrayDeque<>();
+        try (CsvReader reader = new CsvReader(Files.newBufferedReader(file, this.charset), this.delimiter)) {
+            String[] headerRecord = reader.readRecord();
+            if (headerRecord == null) {
+                throw new IOException("Die Datei " + file.getFileName() + " ist leer");
+            }
+            RowParser<T> parser = parserFactory.create(new Header(headerRecord));
+            int columnCount = headerRecord.length;
+            Chunk chunk;
+            while ((chunk = readChunk(reader)) != null) {
+                Chunk rows = chunk;
+                pending.add(executor.submit(() -> parse(rows, parser, columnCount)));
+                if (pending.size() >= this.threads * 2) {
+                    write(pending.poll(), dao, report);
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(pending.poll(), dao, report);
+            }
+        } finally {
+            for (Future<ParsedChunk<T>> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private Chunk readChunk(CsvReader reader) throws IOException {
+        List<String[]> rows = new ArrayList<>(this.chunkSize);
+        long[] lines = new long[this.chunkSize];
+        String[] record;
+        while (rows.size() < this.chunkSize && (record = reader.readRecord()) != null) {
+            lines[rows.size()] = reader.getRecordLine();
+            rows.add(record);
+        }
+        return rows.isEmpty() ? null : new Chunk(rows, lines);
+    }
+
+    private static <T> ParsedChunk<T> parse(Chunk chunk, RowParser<T> parser, int columnCount) {
+        List<T> objects = new ArrayList<>(chunk.rows().size());
+        List<ImportReport.Reject> rejects = new ArrayList<>();
+        for (int i = 0; i < chunk.rows().size(); i++) {
+            String[] fields = chunk.rows().get(i);
+            try {
+                if (fields.length != columnCount) {
+                    throw new IllegalArgumentException("Erwartet " + columnCount + " Spalten, gefunden "
+                            + fields.length);
+                }
+                objects.add(parser.parse(fields));
+            } catch (IllegalArgumentException | DateTimeException exception) {
+                rejects.add(new ImportReport.Reject(chunk.lines()[i], exception.getMessage()));
+            }
+        }
+        return new ParsedChunk<>(objects, rejects);
+    }
+
+    private static <T> void write(Future<ParsedChunk<T>> future, DaoImp<T> dao, ImportReport report)
+            throws SQLException, IOException {
+        ParsedChunk<T> chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import unterbrochen", exception);
+        } catch (ExecutionException exception) {
+            throw new IOException("Import fehlgeschlagen", exception.getCause());
+        }
+        dao.createAll(chunk.objects());
+        report.addImported(chunk.objects().size());
+        report.addRejects(chunk.rejects());
+    }
+
+    private ExecutorService createExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "csv-import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static String value(String[] fields, int index) {
+        return index < 0 ? "" : fields[index].trim();
+    }
+
+    private static String require(String[] fields, int index, String name) {
+        String value = value(fields, index);
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException(name + " fehlt");
+        }
+        return value;
+    }
+
+    private static LocalDate parseDate(String[] fields, int index, String name) {
+        String value = require(fields, index, name);
+        try {
+            return DateConverter.convertStringToLocalDate(value);
+        } catch (DateTimeException exception) {
+            throw new IllegalArgumentException(name + " ist kein Datum im Format yyyy-MM-dd: " + value);
+        }
+    }
+
+    private static LocalTime parseTime(String[] fields, int index, String name) {
+        String value = require(fields, index, name);
+        try {
+            return DateConverter.convertStringToLocalTime(value);
+        } catch (DateTimeException exception) {
+            throw new IllegalArgumentException(name + " ist keine Uhrzeit im Format HH:mm: " + value);
+        }
+    }
+
+    private static long parseId(String[] fields, int index, String name) {
+        String value = require(fields, index, name);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException(name + " ist keine gültige Nummer: " + value);
+        }
+    }
+
+    /**
+     * Parses and validates the fields of one row. Throws an <code>IllegalArgumentException</code> with the reason
+     * of the reject if the row is invalid. Must be thread-safe, as the chunks are parsed in parallel.
+     */
+    @FunctionalInterface
+    private interface RowParser<T> {
+        T parse(String[] fields);
+    }
+
+    /**
+     * Creates the parser of a file after resolving the columns it needs in the header.
+     */
+    @FunctionalInterface
+    private interface RowParserFactory<T> {
+        RowParser<T> create(Header header) throws IOException;
+    }
+
+    private record Chunk(List<String[]> rows, long[] lines) {
+    }
+
+    private record ParsedChunk<T>(List<T> objects, List<ImportReport.Reject> rejects) {
+    }
+
+    /**
+     * Column indexes of a file by lower case column name.
+     */
+    private static final class Header {
+        private final Map<String, Integer> columns = new HashMap<>();
+
+        private Header(String[] names) {
+            for (int i = 0; i < names.length; i++) {
+                this.columns.putIfAbsent(names[i].trim().toLowerCase(Locale.ROOT), i);
+            }
+        }
+
+        private int require(String name) throws IOException {
+            Integer index = this.columns.get(name);
+            if (index == null) {
+                throw new IOException("Spalte " + name + " fehlt in der Kopfzeile");
+            }
+            return index;
+        }
+
+        private int optional(String name) {
+            return this.columns.getOrDefault(name, -1);
+        }
+    }
+}
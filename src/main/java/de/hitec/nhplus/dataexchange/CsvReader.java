@@ -0,0 +1,201 @@
+package de.hitec.nhplus.dataexchange;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads records from CSV text as described in RFC 4180: fields are separated by a delimiter, records by line breaks,
+ * and fields enclosed in double quotes may contain delimiters, line breaks and doubled quotes. The text is read
+ * through an own buffer, so files of any size are read in constant memory.
+ * <p>
+ * If no delimiter is given, it is detected from the first line: the one of semicolon and comma occurring more often
+ * outside of quotes is used, so files exported by German spreadsheets are read as well.
+ */
+public class CsvReader implements Closeable {
+
+    /**
+     * Delimiter to pass to detect the delimiter from the first line.
+     */
+    public static final char DETECT_DELIMITER = 0;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> fields = new ArrayList<>();
+    private char delimiter;
+    private int position;
+    private int limit;
+    private long line = 1;
+    private long recordLine;
+
+    /**
+     * Creates a reader with the delimiter detected from the first line.
+     *
+     * @param reader Source of the CSV text. It is closed with this reader.
+     */
+    public CsvReader(Reader reader) {
+        this(reader, DETECT_DELIMITER);
+    }
+
+    /**
+     * Creates a reader with the given delimiter.
+     *
+     * @param reader    Source of the CSV text. It is closed with this reader.
+     * @param delimiter Delimiter of the fields, or {@link #DETECT_DELIMITER}.
+     */
+    public CsvReader(Reader reader, char delimiter) {
+        this.reader = reader;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Reads the next record. Empty lines are skipped.
+     *
+     * @return Fields of the record, or <code>null</code> at the end of the text.
+     * @throws IOException If the text cannot be read or a quoted field is not closed.
+     */
+    public String[] readRecord() throws IOException {
+        if (this.delimiter == DETECT_DELIMITER) {
+            this.delimiter = detectDelimiter();
+        }
+        int c;
+        do {
+            c = read();
+            if (c == '\n') {
+                this.line++;
+            }
+        } while (c == '\n' || c == '\r');
+        if (c < 0) {
+            return null;
+        }
+        this.recordLine = this.line;
+        this.fields.clear();
+        this.field.setLength(0);
+        boolean quoted = false;
+        boolean fieldStart = true;
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    throw new IOException("Nicht geschlossenes Anführungszeichen in Zeile " + this.recordLine);
+                }
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        this.field.append('"');
+                    } else {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        this.line++;
+                    }
+                    this.field.append((char) c);
+                }
+            } else if (c < 0 || c == '\n' || c == '\r') {
+                this.fields.add(this.field.toString());
+                if (c == '\r') {
+                    c = read();
+                    if (c != '\n' && c >= 0) {
+                        this.position--;
+                    }
+                }
+                if (c == '\n') {
+                    this.line++;
+                }
+                return this.fields.toArray(new String[0]);
+            } else if (c == this.delimiter) {
+                this.fields.add(this.field.toString());
+                this.field.setLength(0);
+                fieldStart = true;
+                c = read();
+                continue;
+            } else if (c == '"' && fieldStart) {
+                quoted = true;
+            } else {
+                this.field.append((char) c);
+            }
+            fieldStart = false;
+            c = read();
+        }
+    }
+
+    /**
+     * Returns the line the last record read started in, e.g. to report errors.
+     *
+     * @return Line number, starting with 1.
+     */
+    public long getRecordLine() {
+        return this.recordLine;
+    }
+
+    /**
+     * Returns the delimiter of the fields.
+     *
+     * @return Delimiter, or {@link #DETECT_DELIMITER} if it is not detected yet.
+     */
+    public char getDelimiter() {
+        return this.delimiter;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    private int read() throws IOException {
+        if (this.position == this.limit && !fill()) {
+            return -1;
+        }
+        return this.buffer[this.position++];
+    }
+
+    private boolean fill() throws IOException {
+        int count;
+        do {
+            count = this.reader.read(this.buffer, 0, this.buffer.length);
+        } while (count == 0);
+        if (count < 0) {
+            this.position = this.limit = 0;
+            return false;
+        }
+        this.position = 0;
+        this.limit = count;
+        return true;
+    }
+
+    /**
+     * Counts semicolons and commas outside of quotes in the first line of the buffer, which is filled for this. A byte
+     * order mark at the start of the text is skipped.
+     */
+    private char detectDelimiter() throws IOException {
+        if (this.position == this.limit && !fill()) {
+            return ',';
+        }
+        if (this.buffer[this.position] == '\uFEFF') {
+            this.position++;
+        }
+        int semicolons = 0;
+        int commas = 0;
+        boolean quoted = false;
+        for (int i = this.position; i < this.limit; i++) {
+            char c = this.buffer[i];
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && (c == '\n' || c == '\r')) {
+                break;
+            } else if (!quoted && c == ';') {
+                semicolons++;
+            } else if (!quoted && c == ',') {
+                commas++;
+            }
+        }
+        return semicolons > commas ? ';' : ',';
+    }
+}
@@ -0,0 +1,115 @@
+package de.hitec.nhplus.dataexchange;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of an import by {@link CsvImporter}: the number of rows read, imported and rejected, the reasons of the
+ * rejects and the duration. Only the first {@link #MAX_REJECTS} rejects are kept, so a file full of errors does not
+ * exhaust the memory; the count includes all rejects.
+ */
+public class ImportReport {
+
+    public static final int MAX_REJECTS = 1000;
+
+    /**
+     * Reject of a single row.
+     *
+     * @param line    Line of the file the row starts in.
+     * @param message Reason of the reject.
+     */
+    public record Reject(long line, String message) {
+
+        @Override
+        public String toString() {
+            return "Zeile " + this.line + ": " + this.message;
+        }
+    }
+
+    private final String source;
+    private final List<Reject> rejects = new ArrayList<>();
+    private long rowCount;
+    private long importedCount;
+    private long rejectedCount;
+    private long elapsedNanos;
+
+    ImportReport(String source) {
+        this.source = source;
+    }
+
+    void addRejects(List<Reject> rejects) {
+        this.rejectedCount += rejects.size();
+        this.rowCount += rejects.size();
+        for (Reject reject : rejects) {
+            if (this.rejects.size() == MAX_REJECTS) {
+                break;
+            }
+            this.rejects.add(reject);
+        }
+    }
+
+    void addImported(long count) {
+        this.importedCount += count;
+        this.rowCount += count;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the name of the imported file.
+     *
+     * @return File name.
+     */
+    public String getSource() {
+        return this.source;
+    }
+
+    /**
+     * Returns the number of data rows read, i.e. without the header.
+     *
+     * @return Number of rows.
+     */
+    public long getRowCount() {
+        return this.rowCount;
+    }
+
+    public long getImportedCount() {
+        return this.importedCount;
+    }
+
+    public long getRejectedCount() {
+        return this.rejectedCount;
+    }
+
+    /**
+     * Returns the first {@link #MAX_REJECTS} rejected rows in the order of the file.
+     *
+     * @return Unmodifiable list of rejects.
+     */
+    public List<Reject> getRejects() {
+        return Collections.unmodifiableList(this.rejects);
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.elapsedNanos);
+    }
+
+    /**
+     * Returns the throughput of the import.
+     *
+     * @return Rows read per second.
+     */
+    public double getRowsPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.rowCount * 1e9 / this.elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d von %d Zeilen importiert, %d abgelehnt, %.1f s (%.0f Zeilen/s)", this.source,
+                this.importedCount, this.rowCount, this.rejectedCount, this.elapsedNanos / 1e9, getRowsPerSecond());
+    }
+}
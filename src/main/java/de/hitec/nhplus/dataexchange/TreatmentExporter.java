@@ -0,0 +1,347 @@
+package de.hitec.nhplus.dataexchange;
+
+import de.hitec.nhplus.datastorage.DaoFactory;
+import de.hitec.nhplus.datastorage.TreatmentDao;
+import de.hitec.nhplus.datastorage.TreatmentFilter;
+import de.hitec.nhplus.datastorage.UncheckedSQLException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the treatment history, i.e. the treatments together with their patient and caregiver, as CSV or as JSON
+ * Lines (one JSON object per line). The rows are read from an open database cursor with
+ * {@link TreatmentDao#streamHistory(TreatmentFilter)} and encoded one at a time into a buffer, which is written to a
+ * file channel whenever it is full, optionally compressed with gzip. The heap needed is therefore independent of the
+ * number of exported treatments.
+ * <p>
+ * The export is written to a temporary file next to the target, which replaces the target only after the export is
+ * complete, so a failed or cancelled export never leaves a truncated file. Exports of the running thread are cancelled
+ * by interrupting it.
+ */
+public class TreatmentExporter {
+
+    /**
+     * Format of an export.
+     */
+    public enum Format {
+        /**
+         * Semicolon separated values with a header line, as read by {@link CsvImporter}.
+         */
+        CSV(".csv"),
+        /**
+         * One JSON object per line, with the columns as keys.
+         */
+        JSON_LINES(".jsonl");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return this.extension;
+        }
+
+        /**
+         * Returns the format of the given file name by its extension, ignoring a trailing <code>.gz</code>.
+         *
+         * @param fileName Name of the export file.
+         * @return Format of the file; CSV if the extension is unknown.
+         */
+        public static Format forFileName(String fileName) {
+            String name = stripGzipExtension(fileName.toLowerCase());
+            return name.endsWith(JSON_LINES.extension) || name.endsWith(".json") ? JSON_LINES : CSV;
+        }
+    }
+
+    /**
+     * Receives the progress of an export. Called on the exporting thread.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * Reports the progress of an export.
+         *
+         * @param written Number of treatments written so far.
+         * @param total   Number of treatments to export, counted before the export started.
+         */
+        void progress(long written, long total);
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int PROGRESS_INTERVAL = 10_000;
+    private static final char CSV_DELIMITER = ';';
+    private static final Set<String> NUMERIC_COLUMNS = Set.of("tid", "pid", "cid");
+
+    private final TreatmentDao dao;
+
+    public TreatmentExporter() {
+        this(DaoFactory.getDaoFactory().createTreatmentDao());
+    }
+
+    public TreatmentExporter(TreatmentDao dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * Returns whether a file name denotes a gzip compressed export.
+     *
+     * @param fileName Name of the export file.
+     * @return <code>true</code> if the name ends with <code>.gz</code>.
+     */
+    public static boolean isGzip(String fileName) {
+        return fileName.toLowerCase().endsWith(".gz");
+    }
+
+    /**
+     * Exports the treatments matching the given filter, ordered by date, with format and compression derived from
+     * the file name, e.g. <code>export.jsonl.gz</code>.
+     *
+     * @param filter   Criteria the exported treatments have to match.
+     * @param target   File to write; an existing file is replaced.
+     * @param listener Receives the progress, or <code>null</code>.
+     * @return Number of exported treatments.
+     * @throws IOException  If the file cannot be written or the export was interrupted.
+     * @throws SQLException If the treatments cannot be read.
+     */
+    public long export(TreatmentFilter filter, Path target, ProgressListener listener)
+            throws IOException, SQLException {
+        String fileName = target.getFileName().toString();
+        return export(filter, target, Format.forFileName(fileName), isGzip(fileName), listener);
+    }
+
+    /**
+     * Exports the treatments matching the given filter, ordered by date.
+     *
+     * @param filter   Criteria the exported treatments have to match.
+     * @param target   File to write; an existing file is replaced.
+     * @param format   Format of the file.
+     * @param gzip     Whether the file is compressed with gzip.
+     * @param listener Receives the progress, or <code>null</code>.
+     * @return Number of exported treatments.
+     * @throws IOException  If the file cannot be written or the export was interrupted.
+     * @throws SQLException If the treatments cannot be read.
+     */
+    public long export(TreatmentFilter filter, Path target, Format format, boolean gzip, ProgressListener listener)
+            throws IOException, SQLException {
+        long total = listener == null ? 0 : this.dao.countByFilter(filter);
+        Path directory = target.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            long written;
+            try (ChannelWriter writer = new ChannelWriter(temporary, gzip);
+                 Stream<String[]> rows = this.dao.streamHistory(filter)) {
+                written = writeRows(rows.iterator(), format, writer, total, listener);
+            } catch (UncheckedSQLException exception) {
+                throw exception.getCause();
+            }
+            move(temporary, target);
+            return written;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static long writeRows(Iterator<String[]> rows, Format format, ChannelWriter writer, long total,
+                                  ProgressListener listener) throws IOException {
+        List<String> columns = TreatmentDao.HISTORY_COLUMNS;
+        StringBuilder line = new StringBuilder(256);
+        if (format == Format.CSV) {
+            line.append('\uFEFF');
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    line.append(CSV_DELIMITER);
+                }
+                appendCsv(line, columns.get(i));
+            }
+            line.append("\r\n");
+            writer.write(line);
+        }
+        long written = 0;
+        while (rows.hasNext()) {
+            String[] row = rows.next();
+            line.setLength(0);
+            if (format == Format.CSV) {
+                appendCsvRow(line, row);
+            } else {
+                appendJsonRow(line, columns, row);
+            }
+            writer.write(line);
+            if (++written % PROGRESS_INTERVAL == 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Export abgebrochen nach " + written + " Behandlungen");
+                }
+                if (listener != null) {
+                    listener.progress(written, Math.max(total, written));
+                }
+            }
+        }
+        if (listener != null) {
+            listener.progress(written, Math.max(total, written));
+        }
+        return written;
+    }
+
+    private static void appendCsvRow(StringBuilder line, String[] row) {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                line.append(CSV_DELIMITER);
+            }
+            if (row[i] != null) {
+                appendCsv(line, row[i]);
+            }
+        }
+        line.append("\r\n");
+    }
+
+    /**
+     * Appends a CSV field, enclosed in quotes if it contains the delimiter, a quote or a line break.
+     */
+    private static void appendCsv(StringBuilder line, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == CSV_DELIMITER || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private static void appendJsonRow(StringBuilder line, List<String> columns, String[] row) {
+        line.append('{');
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            String column = columns.get(i);
+            appendJsonString(line, column);
+            line.append(':');
+            if (row[i] == null) {
+                line.append("null");
+            } else if (NUMERIC_COLUMNS.contains(column)) {
+                line.append(row[i]);
+            } else {
+                appendJsonString(line, row[i]);
+            }
+        }
+        line.append("}\n");
+    }
+
+    private static void appendJsonString(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String stripGzipExtension(String fileName) {
+        return isGzip(fileName) ? fileName.substring(0, fileName.length() - 3) : fileName;
+    }
+
+    /**
+     * Encodes text as UTF-8 into a buffer and writes the buffer to a file channel, optionally through gzip, whenever
+     * it is full.
+     */
+    private static final class ChannelWriter implements Closeable {
+
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private ChannelWriter(Path file, boolean gzip) throws IOException {
+            FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.channel = gzip
+                    ? Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(fileChannel), BUFFER_SIZE))
+                    : fileChannel;
+        }
+
+        private void write(CharSequence text) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (true) {
+                CoderResult result = this.encoder.encode(chars, this.buffer, false);
+                if (result.isUnderflow()) {
+                    return;
+                }
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                this.channel.close();
+            }
+        }
+    }
+}
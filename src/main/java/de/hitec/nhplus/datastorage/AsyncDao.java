@@ -0,0 +1,145 @@
+package de.hitec.nhplus.datastorage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous facade over a {@link Dao}. Every call is executed on a dedicated executor and returns a
+ * <code>CompletableFuture</code>, so callers on the JavaFX application thread never block on the database. The
+ * executor uses virtual threads where the runtime offers them and a small pool of daemon threads otherwise.
+ * <p>
+ * Cancelling a returned future before its work has started removes the work from the executor; work already running
+ * is finished, but its result is discarded.
+ *
+ * @param <T> Type of the objects handled by the wrapped DAO.
+ */
+public class AsyncDao<T> {
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private final Dao<T> dao;
+
+    /**
+     * Creates an asynchronous facade over the given DAO.
+     *
+     * @param dao DAO executing the calls.
+     */
+    public AsyncDao(Dao<T> dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * Returns the wrapped DAO, e.g. to pass its specific queries to {@link #execute(SqlOperation)}.
+     *
+     * @return Wrapped DAO.
+     */
+    public Dao<T> getDao() {
+        return this.dao;
+    }
+
+    public CompletableFuture<Void> create(T t) {
+        return execute(() -> {
+            this.dao.create(t);
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<Long>> createAll(Collection<T> objects) {
+        return execute(() -> this.dao.createAll(objects));
+    }
+
+    public CompletableFuture<T> read(long key) {
+        return execute(() -> this.dao.read(key));
+    }
+
+    public CompletableFuture<List<T>> readAll() {
+        return execute(this.dao::readAll);
+    }
+
+    public CompletableFuture<Void> update(T t) {
+        return execute(() -> {
+            this.dao.update(t);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> updateAll(Collection<T> objects) {
+        return execute(() -> {
+            this.dao.updateAll(objects);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteById(long key) {
+        return execute(() -> {
+            this.dao.deleteById(key);
+            return null;
+        });
+    }
+
+    /**
+     * Executes any database operation on the executor of the data access layer, e.g. a specific query of a DAO.
+     *
+     * @param operation Operation to execute.
+     * @param <R>       Type of the result.
+     * @return Future completed with the result of the operation or with its exception.
+     */
+    public static <R> CompletableFuture<R> execute(SqlOperation<R> operation) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        Future<?> task = EXECUTOR.submit(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(operation.execute());
+            } catch (Throwable exception) {
+                future.completeExceptionally(exception);
+            }
+        });
+        future.whenComplete((result, exception) -> {
+            if (future.isCancelled()) {
+                task.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Stops accepting new operations and waits a short time for running operations to finish. Has to be called
+     * before the database connections are closed.
+     */
+    public static void shutdown() {
+        EXECUTOR.shutdown();
+        try {
+            if (!EXECUTOR.awaitTermination(5, TimeUnit.SECONDS)) {
+                EXECUTOR.shutdownNow();
+            }
+        } catch (InterruptedException exception) {
+            EXECUTOR.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates a virtual thread per task executor if the runtime supports it (Java 21, or Java 20 with preview
+     * features enabled), else a fixed pool of daemon threads sized to the number of reader connections plus the writer.
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException exception) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newFixedThreadPool(ConnectionManager.DEFAULT_READER_COUNT + 1, runnable -> {
+                Thread thread = new Thread(runnable, "dao-worker-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package de.hitec.nhplus.datastorage;
+
+import java.time.LocalDate;
+
+/**
+ * Treatments of a patient, a caregiver or of all of them in one day, week or month, read by
+ * {@link CareStatisticsDao}.
+ *
+ * @param key         Pid of the patient or cid of the caregiver; 0 for the totals of all treatments.
+ * @param periodStart First day of the period: the day itself, the Monday of the week or the first day of the month.
+ * @param treatments  Number of treatments in the period.
+ * @param minutes     Sum of the durations of the treatments in minutes.
+ */
+public record CareMinutes(long key, LocalDate periodStart, long treatments, long minutes) {
+}
@@ -0,0 +1,161 @@
+package de.hitec.nhplus.datastorage;
+
+import de.hitec.nhplus.utils.DateConverter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the number and minutes of the treatments per patient, per caregiver and in total, summed up by day, week or
+ * month. The statistics are read from the daily sums of the tables <code>patient_care_minutes</code> and
+ * <code>caregiver_care_minutes</code>, which are kept up to date by triggers on every write of a treatment, see
+ * {@link SchemaMigrator}. So a statistic reads one row per patient or caregiver and day, however many treatments
+ * there are, and no treatment is loaded.
+ */
+public class CareStatisticsDao {
+
+    /**
+     * Period the daily sums are summed up by.
+     */
+    public enum Period {
+        DAY("treatment_date"),
+        WEEK("date(treatment_date, 'weekday 0', '-6 days')"),
+        MONTH("date(treatment_date, 'start of month')");
+
+        private final String startExpression;
+
+        /**
+         * @param startExpression SQL expression of the first day of the period of a <code>treatment_date</code>.
+         */
+        Period(String startExpression) {
+            this.startExpression = startExpression;
+        }
+    }
+
+    /**
+     * Statements computing the daily sums from all treatments, also used by
+     * {@link SchemaMigrator#createTriggers(Connection, String, List)}.
+     */
+    static final String[] REBUILD_STATEMENTS = {
+            "DELETE FROM patient_care_minutes",
+            "DELETE FROM caregiver_care_minutes",
+            "INSERT INTO patient_care_minutes (pid, treatment_date, treatments, minutes) " +
+                    "SELECT pid, treatment_date, COUNT(*), SUM((strftime('%s', end) - strftime('%s', begin)) / 60) " +
+                    "FROM treatment GROUP BY pid, treatment_date",
+            "INSERT INTO caregiver_care_minutes (cid, treatment_date, treatments, minutes) " +
+                    "SELECT cid, treatment_date, COUNT(*), SUM((strftime('%s', end) - strftime('%s', begin)) / 60) " +
+                    "FROM treatment GROUP BY cid, treatment_date"
+    };
+
+    private final ConnectionManager connectionManager;
+
+    /**
+     * Creates a DAO reading with the connections of the given manager.
+     *
+     * @param connectionManager Manager of the database connections.
+     */
+    public CareStatisticsDao(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    /**
+     * Reads the treatments per patient.
+     *
+     * @param period Period to sum up by.
+     * @param from   First day of the statistic.
+     * @param to     Last day of the statistic, inclusive.
+     * @return Sums ordered by pid and period; patients without treatments in a period are left out.
+     */
+    public List<CareMinutes> readByPatient(Period period, LocalDate from, LocalDate to) throws SQLException {
+        return read("readByPatient", "patient_care_minutes", "pid", period, from, to);
+    }
+
+    /**
+     * Reads the treatments per caregiver.
+     *
+     * @param period Period to sum up by.
+     * @param from   First day of the statistic.
+     * @param to     Last day of the statistic, inclusive.
+     * @return Sums ordered by cid and period; caregivers without treatments in a period are left out.
+     */
+    public List<CareMinutes> readByCaregiver(Period period, LocalDate from, LocalDate to) throws SQLException {
+        return read("readByCaregiver", "caregiver_care_minutes", "cid", period, from, to);
+    }
+
+    /**
+     * Reads the treatments of all patients. They are summed up from the sums per caregiver, as there are fewer
+     * caregivers than patients.
+     *
+     * @param period Period to sum up by.
+     * @param from   First day of the statistic.
+     * @param to     Last day of the statistic, inclusive.
+     * @return Sums with key 0 ordered by period; periods without treatments are left out.
+     */
+    public List<CareMinutes> readTotal(Period period, LocalDate from, LocalDate to) throws SQLException {
+        return read("readTotal", "caregiver_care_minutes", null, period, from, to);
+    }
+
+    /**
+     * Computes the daily sums again from all treatments, e.g. after the treatments were changed with the triggers
+     * dropped. Runs in one transaction, so readers see either the old or the new sums.
+     *
+     * @return Number of treatments summed up.
+     */
+    public long rebuild() throws SQLException {
+        return DaoMetrics.getInstance().measure(getClass().getSimpleName(), "rebuild", () ->
+                this.connectionManager.inTransaction(() -> {
+                    try (Statement statement = this.connectionManager.getWriter().createStatement()) {
+                        for (String sql : REBUILD_STATEMENTS) {
+                            DaoMetrics.recordStatement(sql);
+                            statement.executeUpdate(sql);
+                        }
+                        try (ResultSet result = statement.executeQuery(
+                                "SELECT IFNULL(SUM(treatments), 0) FROM patient_care_minutes")) {
+                            return result.next() ? result.getLong(1) : 0L;
+                        }
+                    }
+                }));
+    }
+
+    /**
+     * Sums up the daily sums of a table by key and period.
+     *
+     * @param operation Name of the operation for {@link DaoMetrics}.
+     * @param table     Table of the daily sums.
+     * @param keyColumn Column of the pid or cid, or <code>null</code> to sum up all keys.
+     */
+    private List<CareMinutes> read(String operation, String table, String keyColumn, Period period, LocalDate from,
+                                   LocalDate to) throws SQLException {
+        String key = keyColumn != null ? keyColumn : "0";
+        String groups = keyColumn != null ? keyColumn + ", period_start" : "period_start";
+        String sql = "SELECT " + key + ", " + period.startExpression + " AS period_start, " +
+                "SUM(treatments), SUM(minutes) FROM " + table + " " +
+                "WHERE treatment_date BETWEEN ? AND ? GROUP BY " + groups + " ORDER BY " + groups;
+        return DaoMetrics.getInstance().measure(getClass().getSimpleName(), operation, () -> {
+            Connection reader = this.connectionManager.leaseReader();
+            try {
+                DaoMetrics.recordStatement(sql);
+                PreparedStatement statement = StatementCache.forConnection(reader).prepare(sql);
+                statement.setString(1, DateConverter.convertLocalDateToString(from));
+                statement.setString(2, DateConverter.convertLocalDateToString(to));
+                List<CareMinutes> sums = new ArrayList<>();
+                try (ResultSet result = statement.executeQuery()) {
+                    while (result.next()) {
+                        sums.add(new CareMinutes(result.getLong(1),
+                                DateConverter.convertStringToLocalDate(result.getString(2)), result.getLong(3),
+                                result.getLong(4)));
+                    }
+                }
+                return sums;
+            } finally {
+                this.connectionManager.release(reader);
+            }
+        });
+    }
+}
@@ -3,10 +3,9 @@ package de.hitec.nhplus.datastorage;
 import de.hitec.nhplus.model.Caregiver;
 
 import java.sql.*;
-import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Implements the Interface <code>DaoImp</code>. Overrides methods to generate specific <code>PreparedStatements</code>,
@@ -23,6 +22,28 @@ public class CaregiverDao extends DaoImp<Caregiver> {
         super(connection);
     }
 
+    /**
+     * The constructor initializes an object of <code>CaregiverDao</code> and passes the connection manager to its super class.
+     *
+     * @param connectionManager Object of <code>ConnectionManager</code> providing the connections to execute the
+     *                          SQL-statements.
+     */
+    public CaregiverDao(ConnectionManager connectionManager) {
+        super(connectionManager);
+    }
+
+    /**
+     * The constructor initiates an object of <code>CaregiverDao</code> which serves reads from the given cache and passes
+     * the connection manager and the cache to its super class.
+     *
+     * @param connectionManager Object of <code>ConnectionManager</code> providing the connections to execute the
+     *                          SQL-statements.
+     * @param entityCache       Cache of all objects of class <code>Caregiver</code>, shared by all DAOs of this table.
+     */
+    public CaregiverDao(ConnectionManager connectionManager, EntityCache<Caregiver> entityCache) {
+        super(connectionManager, entityCache);
+    }
+
     /**
      * Generates a <code>PreparedStatement</code> to query a caregiver by a given caregiver id (cid).
      *
@@ -33,7 +54,7 @@ public class CaregiverDao extends DaoImp<Caregiver> {
     protected PreparedStatement getReadByIDStatement(long cid) {
         try {
             final String SQL = "SELECT * FROM caregiver WHERE cid = ?";
-            PreparedStatement preparedStatement = this.connection.prepareStatement(SQL);
+            PreparedStatement preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setLong(1, cid);
             return preparedStatement;
         } catch (SQLException exception) {
@@ -43,7 +64,48 @@ public class CaregiverDao extends DaoImp<Caregiver> {
     }
 
     /**
-     * Maps a <code>ResultSet</code> of one caregiver to an object of <code>Caregiver</code>.
+     * Queries all active caregivers, i.e. caregivers without <code>inactiveSince</code>, ordered by cid. The query is
+     * served by the partial index <code>caregiver_active</code>, which contains only the active caregivers.
+     *
+     * @return <code>ArrayList</code> with the active caregivers.
+     */
+    public List<Caregiver> readActive() throws SQLException {
+        return measure("readActive", () -> withReadConnection(() -> {
+            try (ResultSet result = getReadActiveStatement(true).executeQuery()) {
+                return getListFromResultSet(result);
+            }
+        }));
+    }
+
+    /**
+     * Queries all inactive caregivers ordered by cid, served by the partial index <code>caregiver_inactive</code>.
+     *
+     * @return <code>ArrayList</code> with the inactive caregivers.
+     */
+    public List<Caregiver> readInactive() throws SQLException {
+        return measure("readInactive", () -> withReadConnection(() -> {
+            try (ResultSet result = getReadActiveStatement(false).executeQuery()) {
+                return getListFromResultSet(result);
+            }
+        }));
+    }
+
+    /**
+     * Generates a <code>PreparedStatement</code> to query the active or the inactive caregivers.
+     *
+     * @param active <code>true</code> to query the active, <code>false</code> to query the inactive caregivers.
+     * @return <code>PreparedStatement</code> to query the caregivers.
+     */
+    private PreparedStatement getReadActiveStatement(boolean active) throws SQLException {
+        final String SQL = active
+                ? "SELECT * FROM caregiver WHERE inactiveSince IS NULL ORDER BY cid"
+                : "SELECT * FROM caregiver WHERE inactiveSince IS NOT NULL ORDER BY cid";
+        return this.prepareStatement(SQL);
+    }
+
+    /**
+     * Maps a <code>ResultSet</code> of one caregiver to an object of <code>Caregiver</code>. The column
+     * <code>inactiveSince</code> holds the day as number of days since 1970-01-01.
      *
      * @param result ResultSet with a single row. Columns will be mapped to an object of class <code>Caregiver</code>.
      * @return Object of class <code>Caregiver</code> with the data from the resultSet.
@@ -55,10 +117,8 @@ public class CaregiverDao extends DaoImp<Caregiver> {
         String surname = result.getString("surname");
         String phoneNumber = result.getString("phonenumber");
 
-        long millis = result.getLong("inactiveSince");
-        LocalDate inactiveSince = (millis > 0)
-                ? Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toLocalDate()
-                : null;
+        long epochDay = result.getLong("inactiveSince");
+        LocalDate inactiveSince = result.wasNull() ? null : LocalDate.ofEpochDay(epochDay);
 
         return new Caregiver(cid, firstName, surname, phoneNumber, inactiveSince);
     }
@@ -88,15 +148,11 @@ public class CaregiverDao extends DaoImp<Caregiver> {
     protected PreparedStatement getCreateStatement(Caregiver caregiver) {
         try {
             final String SQL = "INSERT INTO caregiver(firstname, surname, phonenumber, inactiveSince) VALUES (?, ?, ?, ?)";
-            PreparedStatement preparedStatement = this.connection.prepareStatement(SQL);
+            PreparedStatement preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setString(1, caregiver.getFirstName());
             preparedStatement.setString(2, caregiver.getSurname());
             preparedStatement.setString(3, caregiver.getPhoneNumber());
-            if (caregiver.getInactiveSince() != null) {
-                preparedStatement.setDate(4, Date.valueOf(caregiver.getInactiveSince()));
-            } else {
-                preparedStatement.setNull(4, Types.DATE);
-            }
+            setInactiveSince(preparedStatement, 4, caregiver.getInactiveSince());
             return preparedStatement;
         } catch (SQLException exception) {
             exception.printStackTrace();
@@ -113,7 +169,7 @@ public class CaregiverDao extends DaoImp<Caregiver> {
     protected PreparedStatement getReadAllStatement() {
         try {
             final String SQL = "SELECT * FROM caregiver";
-            return this.connection.prepareStatement(SQL);
+            return this.prepareStatement(SQL);
         } catch (SQLException exception) {
             exception.printStackTrace();
             return null;
@@ -138,15 +194,11 @@ public class CaregiverDao extends DaoImp<Caregiver> {
                             "inactiveSince = ? " +
                             "WHERE cid = ?";
 
-            PreparedStatement preparedStatement = this.connection.prepareStatement(SQL);
+            PreparedStatement preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setString(1, caregiver.getFirstName());
             preparedStatement.setString(2, caregiver.getSurname());
             preparedStatement.setString(3, caregiver.getPhoneNumber());
-            if (caregiver.getInactiveSince() != null) {
-                preparedStatement.setDate(4, Date.valueOf(caregiver.getInactiveSince()));
-            } else {
-                preparedStatement.setNull(4, Types.DATE);
-            }
+            setInactiveSince(preparedStatement, 4, caregiver.getInactiveSince());
             preparedStatement.setLong(5, caregiver.getCid());
 
             return preparedStatement;
@@ -156,6 +208,19 @@ public class CaregiverDao extends DaoImp<Caregiver> {
         }
     }
 
+    /**
+     * Sets the day a caregiver became inactive as number of days since 1970-01-01, or <code>NULL</code> if the
+     * caregiver is active.
+     */
+    private static void setInactiveSince(PreparedStatement preparedStatement, int index, LocalDate inactiveSince)
+            throws SQLException {
+        if (inactiveSince != null) {
+            preparedStatement.setLong(index, inactiveSince.toEpochDay());
+        } else {
+            preparedStatement.setNull(index, Types.INTEGER);
+        }
+    }
+
     /**
      * Generates a <code>PreparedStatement</code> to delete a caregiver with the given id.
      *
@@ -166,7 +231,7 @@ public class CaregiverDao extends DaoImp<Caregiver> {
     protected PreparedStatement getDeleteStatement(long cid) {
         try {
             final String SQL = "DELETE FROM caregiver WHERE cid = ?";
-            PreparedStatement preparedStatement = this.connection.prepareStatement(SQL);
+            PreparedStatement preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setLong(1, cid);
             return preparedStatement;
         } catch (SQLException exception) {
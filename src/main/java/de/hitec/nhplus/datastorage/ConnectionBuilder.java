@@ -1,40 +1,61 @@
 package de.hitec.nhplus.datastorage;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
-import org.sqlite.SQLiteConfig;
-
 public class ConnectionBuilder {
 
     private static final String DB_NAME = "nursingHome.db";
     private static final String URL = "jdbc:sqlite:db/" + DB_NAME;
 
-    private static Connection connection;
+    private static ConnectionManager connectionManager;
 
-    synchronized public static Connection getConnection() {
-        try {
-            if (ConnectionBuilder.connection == null) {
-                SQLiteConfig configuration = new SQLiteConfig();
-                configuration.enforceForeignKeys(true);
-                ConnectionBuilder.connection = DriverManager.getConnection(URL, configuration.toProperties());
+    /**
+     * Returns the manager of all connections to the nursing home database. The manager is created on first use, and
+     * the schema of the database is brought up to date by the {@link SchemaMigrator} before it is returned.
+     *
+     * @return <code>ConnectionManager</code> of the database, or <code>null</code> if the database could not be opened
+     * or migrated.
+     */
+    synchronized public static ConnectionManager getConnectionManager() {
+        if (ConnectionBuilder.connectionManager == null) {
+            ConnectionManager manager = null;
+            try {
+                manager = new ConnectionManager(URL, ConnectionManager.DEFAULT_READER_COUNT);
+                Connection writer = manager.getWriter();
+                if (SchemaMigrator.migrate(writer) > 0) {
+                    System.out.println("Datenbank migriert auf Version " + SchemaMigrator.getVersion(writer));
+                }
+                ConnectionBuilder.connectionManager = manager;
+            } catch (SQLException exception) {
+                System.out.println("Verbindung zur Datenbank konnte nicht aufgebaut werden!");
+                exception.printStackTrace();
+                if (manager != null) {
+                    manager.close();
+                }
             }
-        } catch (SQLException exception) {
-            System.out.println("Verbindung zur Datenbank konnte nicht aufgebaut werden!");
-            exception.printStackTrace();
         }
-        return ConnectionBuilder.connection;
+        return ConnectionBuilder.connectionManager;
+    }
+
+    /**
+     * Returns the writer connection of the {@link ConnectionManager}. The connection is returned without taking the
+     * write lock, so a write through it can interleave with the writes of the DAOs.
+     *
+     * @return Connection used for all writes, or <code>null</code> if the database could not be opened.
+     * @deprecated Use {@link #getConnectionManager()} and write inside {@link ConnectionManager#inTransaction} or
+     * while holding {@link ConnectionManager#getWriteLock()}.
+     */
+    @Deprecated
+    synchronized public static Connection getConnection() {
+        ConnectionManager manager = getConnectionManager();
+        return manager == null ? null : manager.getWriter();
     }
 
     synchronized public static void closeConnection() {
-        try {
-            if (ConnectionBuilder.connection != null) {
-                ConnectionBuilder.connection.close();
-                ConnectionBuilder.connection = null;
-            }
-        } catch (SQLException exception) {
-            exception.printStackTrace();
+        if (ConnectionBuilder.connectionManager != null) {
+            ConnectionBuilder.connectionManager.close();
+            ConnectionBuilder.connectionManager = null;
         }
     }
 }
@@ -0,0 +1,333 @@
+package de.hitec.nhplus.datastorage;
+
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Manages the connections to one SQLite database file. The database is opened in WAL mode with a single writer
+ * connection and a small pool of read-only connections. In WAL mode readers see the last committed state and are
+ * not blocked by the writer, so long queries of one view no longer serialize the others.
+ * <p>
+ * Reader connections are leased with {@link #leaseReader()} and have to be handed back with
+ * {@link #release(Connection)}. Every write has to hold the {@link #getWriteLock() write lock}, because all writes
+ * share the writer connection and its cached statements.
+ */
+public class ConnectionManager implements AutoCloseable {
+
+    /**
+     * Number of read-only connections opened at most, unless another number is configured.
+     */
+    public static final int DEFAULT_READER_COUNT = 4;
+
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+    private static final long LEASE_TIMEOUT_MILLIS = 30_000;
+
+    private final String url;
+    private final int readerCount;
+    private final Connection writer;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final BlockingQueue<Connection> idleReaders = new LinkedBlockingQueue<>();
+    private final List<Connection> readers = new ArrayList<>();
+    private final AtomicInteger leasedReaders = new AtomicInteger();
+    /**
+     * Actions deferred until the transaction of {@link #inTransaction(SqlOperation)} is committed; <code>null</code>
+     * outside of it. Guarded by the write lock, so while a thread holding the lock sees a list, it is in the
+     * transaction itself.
+     */
+    private List<Runnable> afterCommitActions;
+    private final LongAdder leases = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder replacedReaders = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Opens the writer connection to the given database and switches the database to WAL mode. Reader connections are
+     * opened on demand.
+     *
+     * @param url         JDBC url of the SQLite database.
+     * @param readerCount Maximum number of read-only connections, at least 1.
+     * @throws SQLException If the writer connection could not be opened.
+     */
+    public ConnectionManager(String url, int readerCount) throws SQLException {
+        if (readerCount < 1) {
+            throw new IllegalArgumentException("Reader count must be at least 1, was " + readerCount);
+        }
+        this.url = url;
+        this.readerCount = readerCount;
+        this.writer = open(false);
+    }
+
+    /**
+     * Returns the writer connection. Callers have to hold the {@link #getWriteLock() write lock} while using it.
+     *
+     * @return Connection used for all writes.
+     */
+    public Connection getWriter() {
+        return this.writer;
+    }
+
+    /**
+     * Returns the lock serializing all users of the writer connection.
+     *
+     * @return Write lock of the database.
+     */
+    public ReentrantLock getWriteLock() {
+        return this.writeLock;
+    }
+
+    /**
+     * Runs the given operation in one transaction on the writer connection while holding the write lock. Writes of the
+     * DAOs of this manager on the same thread join the transaction; writes of other threads wait until it is
+     * finished. The transaction is committed if the operation returns and rolled back if it throws.
+     *
+     * @param operation Operation to run, e.g. several writes which have to succeed together.
+     * @param <R>       Type of the result.
+     * @return Result of the operation.
+     * @throws SQLException If the operation or the commit fails.
+     */
+    public <R> R inTransaction(SqlOperation<R> operation) throws SQLException {
+        List<Runnable> actions = List.of();
+        this.writeLock.lock();
+        try {
+            if (!this.writer.getAutoCommit()) {
+                return operation.execute();
+            }
+            this.writer.setAutoCommit(false);
+            this.afterCommitActions = new ArrayList<>();
+            try {
+                R result = operation.execute();
+                this.writer.commit();
+                actions = this.afterCommitActions;
+                return result;
+            } catch (SQLException | RuntimeException exception) {
+                this.writer.rollback();
+                throw exception;
+            } finally {
+                this.afterCommitActions = null;
+                this.writer.setAutoCommit(true);
+            }
+        } finally {
+            this.writeLock.unlock();
+            for (Runnable action : actions) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * Runs the given action once the current write is committed. Inside
+     * {@link #inTransaction(SqlOperation)}, the action is deferred until the transaction is committed and dropped if
+     * it is rolled back; otherwise, the write is already committed and the action runs immediately.
+     *
+     * @param action Action to run, e.g. to publish the written rows.
+     */
+    public void afterCommit(Runnable action) {
+        this.writeLock.lock();
+        try {
+            if (this.afterCommitActions != null) {
+                this.afterCommitActions.add(action);
+                return;
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+        action.run();
+    }
+
+    /**
+     * Leases a read-only connection. An idle connection is reused after a health check, a new one is opened while
+     * fewer than the configured number of readers exist, otherwise the call waits until a reader is released.
+     *
+     * @return Read-only connection, which has to be handed back with {@link #release(Connection)}.
+     * @throws SQLException If no reader became available in time or a reader could not be opened.
+     */
+    public Connection leaseReader() throws SQLException {
+        checkOpen();
+        Connection reader = this.idleReaders.poll();
+        if (reader == null) {
+            reader = openReaderIfAllowed();
+        }
+        if (reader == null) {
+            this.waits.increment();
+            long start = System.nanoTime();
+            try {
+                reader = this.idleReaders.poll(LEASE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a reader connection", exception);
+            } finally {
+                this.waitNanos.add(System.nanoTime() - start);
+            }
+            if (reader == null) {
+                throw new SQLException("No reader connection available after " + LEASE_TIMEOUT_MILLIS + " ms");
+            }
+        }
+        reader = ensureHealthy(reader);
+        this.leases.increment();
+        this.leasedReaders.incrementAndGet();
+        return reader;
+    }
+
+    /**
+     * Hands a leased reader back to the pool.
+     *
+     * @param reader Connection returned by {@link #leaseReader()}.
+     */
+    public void release(Connection reader) {
+        this.leasedReaders.decrementAndGet();
+        if (this.closed) {
+            closeQuietly(reader);
+        } else {
+            this.idleReaders.offer(reader);
+        }
+    }
+
+    /**
+     * Returns the number of reader leases handed out so far.
+     *
+     * @return Number of leases.
+     */
+    public long getLeaseCount() {
+        return this.leases.sum();
+    }
+
+    /**
+     * Returns the number of leases that had to wait for a reader to be released.
+     *
+     * @return Number of waiting leases.
+     */
+    public long getWaitCount() {
+        return this.waits.sum();
+    }
+
+    /**
+     * Returns the total time leases spent waiting for a reader.
+     *
+     * @return Waiting time in milliseconds.
+     */
+    public long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.waitNanos.sum());
+    }
+
+    /**
+     * Returns the number of readers that failed their health check and were replaced.
+     *
+     * @return Number of replaced readers.
+     */
+    public long getReplacedReaderCount() {
+        return this.replacedReaders.sum();
+    }
+
+    /**
+     * Returns the number of readers currently leased.
+     *
+     * @return Number of leased readers.
+     */
+    public int getLeasedReaderCount() {
+        return this.leasedReaders.get();
+    }
+
+    /**
+     * Returns the number of readers currently idle in the pool.
+     *
+     * @return Number of idle readers.
+     */
+    public int getIdleReaderCount() {
+        return this.idleReaders.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionManager[url=" + this.url + ", leased=" + getLeasedReaderCount() + ", idle=" +
+                getIdleReaderCount() + ", leases=" + getLeaseCount() + ", waits=" + getWaitCount() + ", waitMillis=" +
+                getWaitMillis() + ", replaced=" + getReplacedReaderCount() + "]";
+    }
+
+    /**
+     * Closes the writer and all idle readers together with their cached statements. Readers still leased are closed
+     * when they are released.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        synchronized (this.readers) {
+            Connection reader;
+            while ((reader = this.idleReaders.poll()) != null) {
+                closeQuietly(reader);
+            }
+            this.readers.clear();
+        }
+        this.writeLock.lock();
+        try {
+            closeQuietly(this.writer);
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    private Connection openReaderIfAllowed() throws SQLException {
+        synchronized (this.readers) {
+            if (this.readers.size() >= this.readerCount) {
+                return null;
+            }
+            Connection reader = open(true);
+            this.readers.add(reader);
+            return reader;
+        }
+    }
+
+    private Connection ensureHealthy(Connection reader) throws SQLException {
+        if (reader.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+            return reader;
+        }
+        this.replacedReaders.increment();
+        synchronized (this.readers) {
+            this.readers.remove(reader);
+            closeQuietly(reader);
+            Connection replacement = open(true);
+            this.readers.add(replacement);
+            return replacement;
+        }
+    }
+
+    private Connection open(boolean readOnly) throws SQLException {
+        SQLiteConfig configuration = new SQLiteConfig();
+        configuration.enforceForeignKeys(true);
+        configuration.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+        if (readOnly) {
+            configuration.setReadOnly(true);
+        } else {
+            configuration.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            configuration.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        }
+        return DriverManager.getConnection(this.url, configuration.toProperties());
+    }
+
+    private void checkOpen() throws SQLException {
+        if (this.closed) {
+            throw new SQLException("Connection manager is closed");
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            StatementCache.close(connection);
+            connection.close();
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+    }
+}
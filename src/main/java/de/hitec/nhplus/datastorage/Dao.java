@@ -1,16 +1,32 @@
 package de.hitec.nhplus.datastorage;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface Dao<T> {
     void create(T t) throws SQLException;
 
+    List<Long> createAll(Collection<T> objects) throws SQLException;
+
     T read(long key) throws SQLException;
 
     List<T> readAll() throws SQLException;
 
+    /**
+     * Returns all objects like {@link #readAll()}, but maps the rows lazily while the stream is consumed, so the whole
+     * table is never held in memory. The stream holds a database cursor and has to be closed, e.g. with
+     * try-with-resources; it is closed automatically when it has been consumed completely.
+     *
+     * @return Lazy stream of all objects.
+     * @throws SQLException If the query could not be started.
+     */
+    Stream<T> stream() throws SQLException;
+
     void update(T t) throws SQLException;
 
+    void updateAll(Collection<T> objects) throws SQLException;
+
     void deleteById(long key) throws SQLException;
 }
@@ -1,10 +1,60 @@
 package de.hitec.nhplus.datastorage;
 
+import de.hitec.nhplus.model.Caregiver;
+import de.hitec.nhplus.model.Patient;
+import de.hitec.nhplus.model.Treatment;
+
 public class DaoFactory {
 
     private static DaoFactory instance;
 
+    /**
+     * Caches of the patients and caregivers, shared by all DAOs created by this factory. Both change rarely but are
+     * read by every view.
+     */
+    private final EntityCache<Patient> patientCache = new EntityCache<>(Patient::getPid);
+    private final EntityCache<Caregiver> caregiverCache = new EntityCache<>(Caregiver::getCid);
+
+    /**
+     * Catalogue of the descriptions and remarks, shared by all treatment DAOs created by this factory, so all
+     * treatments read share the same instance of a text.
+     */
+    private final TextCatalogue textCatalogue = new TextCatalogue();
+
+    /**
+     * Notifiers of the changes of the tables, shared by all DAOs created by this factory, so every view showing a
+     * table learns about the writes of every DAO.
+     */
+    private final DataChangeNotifier<Patient> patientChangeNotifier = new DataChangeNotifier<>(Patient::getPid);
+    private final DataChangeNotifier<Caregiver> caregiverChangeNotifier = new DataChangeNotifier<>(Caregiver::getCid);
+    private final DataChangeNotifier<Treatment> treatmentChangeNotifier = new DataChangeNotifier<>(Treatment::getTid);
+
+    /**
+     * Dictionaries of the full text indexes, shared by all {@link SearchDao}s and kept up to date by the notifiers.
+     */
+    private final TermDictionary patientTerms = new TermDictionary("patient_search_terms",
+            "SELECT firstname, surname, roomnumber FROM patient WHERE pid = ?");
+    private final TermDictionary caregiverTerms = new TermDictionary("caregiver_search_terms",
+            "SELECT firstname, surname FROM caregiver WHERE cid = ?");
+    private final TermDictionary treatmentTerms = new TermDictionary("treatment_search_terms",
+            "SELECT description, remark FROM treatment_with_text WHERE tid = ?");
+
+    /**
+     * Queues of the inline edits of the tables, created with the first DAO and written by
+     * {@link WriteBehindQueue#shutdown()}.
+     */
+    private WriteBehindQueue<Patient> patientWriteQueue;
+    private WriteBehindQueue<Caregiver> caregiverWriteQueue;
+
+    /**
+     * Columnar copy of the treatments for reports, created by the first report and kept up to date by the notifiers.
+     */
+    private TreatmentSnapshot treatmentSnapshot;
+
     private DaoFactory() {
+        this.patientChangeNotifier.addListener(this.patientTerms);
+        this.caregiverChangeNotifier.addListener(this.caregiverTerms);
+        this.treatmentChangeNotifier.addListener(this.treatmentTerms);
     }
 
     public static DaoFactory getDaoFactory() {
@@ -15,13 +65,86 @@ public class DaoFactory {
     }
 
     public TreatmentDao createTreatmentDao() {
-        return new TreatmentDao(ConnectionBuilder.getConnection());
+        TreatmentDao dao = new TreatmentDao(ConnectionBuilder.getConnectionManager(), this.textCatalogue);
+        dao.setChangeNotifier(this.treatmentChangeNotifier);
+        return dao;
     }
 
     public PatientDao createPatientDAO() {
-        return new PatientDao(ConnectionBuilder.getConnection());
+        PatientDao dao = new PatientDao(ConnectionBuilder.getConnectionManager(), this.patientCache);
+        dao.setChangeNotifier(this.patientChangeNotifier);
+        return dao;
     }
     public CaregiverDao createCaregiverDAO(){
-        return  new CaregiverDao(ConnectionBuilder.getConnection());
+        CaregiverDao dao = new CaregiverDao(ConnectionBuilder.getConnectionManager(), this.caregiverCache);
+        dao.setChangeNotifier(this.caregiverChangeNotifier);
+        return dao;
+    }
+
+    public SearchDao createSearchDao() {
+        return new SearchDao(ConnectionBuilder.getConnectionManager(), this.patientTerms, this.caregiverTerms,
+                this.treatmentTerms);
+    }
+
+    public CareStatisticsDao createCareStatisticsDao() {
+        return new CareStatisticsDao(ConnectionBuilder.getConnectionManager());
+    }
+
+    public synchronized WriteBehindQueue<Patient> getPatientWriteQueue() {
+        if (this.patientWriteQueue == null) {
+            this.patientWriteQueue = WriteBehindQueue.create(createPatientDAO(), Patient::getPid, Patient::new);
+        }
+        return this.patientWriteQueue;
+    }
+
+    public synchronized WriteBehindQueue<Caregiver> getCaregiverWriteQueue() {
+        if (this.caregiverWriteQueue == null) {
+            this.caregiverWriteQueue = WriteBehindQueue.create(createCaregiverDAO(), Caregiver::getCid,
+                    caregiver -> new Caregiver(caregiver.getCid(), caregiver.getFirstName(), caregiver.getSurname(),
+                            caregiver.getPhoneNumber(), caregiver.getInactiveSince()));
+        }
+        return this.caregiverWriteQueue;
+    }
+
+    public synchronized TreatmentSnapshot getTreatmentSnapshot() {
+        if (this.treatmentSnapshot == null) {
+            this.treatmentSnapshot = new TreatmentSnapshot(ConnectionBuilder.getConnectionManager());
+            this.treatmentChangeNotifier.addListener(this.treatmentSnapshot);
+            this.patientChangeNotifier.addListener(this.treatmentSnapshot.getPatientListener());
+        }
+        return this.treatmentSnapshot;
+    }
+
+    public EntityCache<Patient> getPatientCache() {
+        return this.patientCache;
+    }
+
+    public EntityCache<Caregiver> getCaregiverCache() {
+        return this.caregiverCache;
+    }
+
+    public DataChangeNotifier<Patient> getPatientChangeNotifier() {
+        return this.patientChangeNotifier;
+    }
+
+    public DataChangeNotifier<Caregiver> getCaregiverChangeNotifier() {
+        return this.caregiverChangeNotifier;
+    }
+
+    public DataChangeNotifier<Treatment> getTreatmentChangeNotifier() {
+        return this.treatmentChangeNotifier;
+    }
+
+    /**
+     * Empties the caches of all DAOs created by this factory and tells the views to reload all tables. Has to be
+     * called after tables were changed without the DAOs, e.g. by {@link de.hitec.nhplus.utils.SetUpDB}.
+     */
+    public void clearCaches() {
+        this.patientCache.clear();
+        this.caregiverCache.clear();
+        this.textCatalogue.clear();
+        this.patientChangeNotifier.fireReloaded();
+        this.caregiverChangeNotifier.fireReloaded();
+        this.treatmentChangeNotifier.fireReloaded();
     }
 }
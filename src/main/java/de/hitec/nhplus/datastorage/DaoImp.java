@@ -2,43 +2,551 @@ package de.hitec.nhplus.datastorage;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class DaoImp<T> implements Dao<T> {
+
+    /**
+     * Number of rows written per batch and transaction by {@link #createAll(Collection)} and
+     * {@link #updateAll(Collection)}, unless another size is configured.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * Number of rows the driver is asked to fetch at once by {@link #stream()}, unless another size is configured.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    private static final String SQL_LAST_INSERT_ROWID = "SELECT last_insert_rowid()";
+
+    /**
+     * Connection the DAO currently works on, per thread. Set while a read or write scope of a DAO with a
+     * <code>ConnectionManager</code> is open, so the statements of that scope are prepared on the leased connection.
+     */
+    private static final ThreadLocal<ActiveConnection> ACTIVE_CONNECTION = new ThreadLocal<>();
+
     protected Connection connection;
+    protected final ConnectionManager connectionManager;
+    private final EntityCache<T> entityCache;
+    private DataChangeNotifier<T> changeNotifier;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
 
     public DaoImp(Connection connection) {
         this.connection = connection;
+        this.connectionManager = null;
+        this.entityCache = null;
+    }
+
+    /**
+     * Creates a DAO which writes through the writer connection of the given manager and runs its queries on leased
+     * read-only connections.
+     *
+     * @param connectionManager Manager of the database connections.
+     */
+    public DaoImp(ConnectionManager connectionManager) {
+        this(connectionManager, null);
+    }
+
+    /**
+     * Creates a DAO like {@link #DaoImp(ConnectionManager)} which serves <code>read</code> and <code>readAll</code>
+     * from the given cache where possible. Every write through this DAO invalidates the affected entries of the cache.
+     * The cache has to be shared by all DAOs of the same table, and the table must not be written by other means.
+     *
+     * @param connectionManager Manager of the database connections.
+     * @param entityCache       Cache of the objects of the table, or <code>null</code> to read every time.
+     */
+    public DaoImp(ConnectionManager connectionManager, EntityCache<T> entityCache) {
+        this.connection = connectionManager.getWriter();
+        this.connectionManager = connectionManager;
+        this.entityCache = entityCache;
     }
 
     @Override
     public void create(T t) throws SQLException {
-        getCreateStatement(t).executeUpdate();
+        long key = measure("create", () -> {
+            try {
+                return withWriteConnection(() -> {
+                    getCreateStatement(t).executeUpdate();
+                    return this.changeNotifier != null ? readLastInsertRowId() : 0L;
+                });
+            } finally {
+                invalidateCachedList();
+            }
+        });
+        publish(notifier -> notifier.fireInserted(List.of(key)));
+    }
+
+    /**
+     * Persists all given objects with JDBC batches. The objects are written in chunks of {@link #getBatchSize()} rows,
+     * each chunk in its own transaction, so SQLite syncs the file once per chunk instead of once per row. If a chunk
+     * fails, it is rolled back and the exception is rethrown; chunks committed before stay persisted. If the
+     * connection is already inside a transaction, the rows join it and neither commit nor rollback is issued.
+     *
+     * @param objects Objects to persist.
+     * @return Generated keys of the inserted rows, in the iteration order of <code>objects</code>.
+     * @throws SQLException If a statement could not be prepared or executed.
+     */
+    @Override
+    public List<Long> createAll(Collection<T> objects) throws SQLException {
+        return measure("createAll", () -> {
+            List<Long> generatedKeys = new ArrayList<>(objects.size());
+            try {
+                withWriteConnection(() -> {
+                    executeInChunks(objects, this::getCreateStatement, generatedKeys);
+                    return null;
+                });
+            } finally {
+                invalidateCachedList();
+                publish(notifier -> notifier.fireInserted(generatedKeys));
+            }
+            return generatedKeys;
+        });
     }
 
     @Override
     public T read(long key) throws SQLException {
-        T object = null;
-        ResultSet result = getReadByIDStatement(key).executeQuery();
-        if (result.next()) {
-            object = getInstanceFromResultSet(result);
-        }
-        return object;
+        return measure("read", () -> {
+            if (this.entityCache != null) {
+                T cached = this.entityCache.get(key);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            long version = this.entityCache != null ? this.entityCache.getVersion() : 0;
+            T t = withReadConnection(() -> {
+                try (ResultSet result = getReadByIDStatement(key).executeQuery()) {
+                    return result.next() ? getInstanceFromResultSet(result) : null;
+                }
+            });
+            if (this.entityCache != null) {
+                this.entityCache.put(t, version);
+            }
+            return t;
+        });
     }
 
     @Override
     public List<T> readAll() throws SQLException {
-        return getListFromResultSet(getReadAllStatement().executeQuery());
+        return measure("readAll", () -> {
+            if (this.entityCache != null) {
+                List<T> cached = this.entityCache.getAll();
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            long version = this.entityCache != null ? this.entityCache.getVersion() : 0;
+            List<T> list = withReadConnection(() -> {
+                try (ResultSet result = getReadAllStatement().executeQuery()) {
+                    return getListFromResultSet(result);
+                }
+            });
+            if (this.entityCache != null) {
+                this.entityCache.putAll(list, version);
+            }
+            return list;
+        });
+    }
+
+    @Override
+    public Stream<T> stream() throws SQLException {
+        return measure("stream", () -> stream(this::getReadAllStatement));
     }
 
     @Override
     public void update(T t) throws SQLException {
-        getUpdateStatement(t).executeUpdate();
+        measure("update", () -> {
+            try {
+                return withWriteConnection(() -> getUpdateStatement(t).executeUpdate());
+            } finally {
+                invalidateCached(t);
+            }
+        });
+        publish(notifier -> notifier.fireUpdated(List.of(t)));
+    }
+
+    /**
+     * Updates all given objects with JDBC batches, chunked into transactions like {@link #createAll(Collection)}.
+     *
+     * @param objects Objects to update.
+     * @throws SQLException If a statement could not be prepared or executed.
+     */
+    @Override
+    public void updateAll(Collection<T> objects) throws SQLException {
+        measure("updateAll", () -> {
+            try {
+                withWriteConnection(() -> {
+                    executeInChunks(objects, this::getUpdateStatement, null);
+                    return null;
+                });
+            } finally {
+                for (T t : objects) {
+                    invalidateCached(t);
+                }
+                publish(notifier -> notifier.fireUpdated(objects));
+            }
+            return objects.size();
+        });
     }
 
     @Override
     public void deleteById(long key) throws SQLException {
-        getDeleteStatement(key).executeUpdate();
+        measure("deleteById", () -> {
+            try {
+                return withWriteConnection(() -> getDeleteStatement(key).executeUpdate());
+            } finally {
+                invalidate(cache -> cache.invalidate(key));
+            }
+        });
+        publish(notifier -> notifier.fireDeleted(key));
+    }
+
+    /**
+     * Returns the cache of this DAO.
+     *
+     * @return Cache of the objects of the table, or <code>null</code> if the DAO reads every time.
+     */
+    public EntityCache<T> getEntityCache() {
+        return this.entityCache;
+    }
+
+    /**
+     * Returns the notifier this DAO publishes its writes to.
+     *
+     * @return Notifier of the table, or <code>null</code> if writes are not published.
+     */
+    public DataChangeNotifier<T> getChangeNotifier() {
+        return this.changeNotifier;
+    }
+
+    /**
+     * Sets the notifier this DAO publishes its writes to: the ids of inserted, updated and deleted rows, once the
+     * write is committed. The notifier has to be shared by all DAOs of the same table.
+     *
+     * @param changeNotifier Notifier of the table, or <code>null</code> to not publish writes.
+     */
+    public void setChangeNotifier(DataChangeNotifier<T> changeNotifier) {
+        this.changeNotifier = changeNotifier;
+    }
+
+    /**
+     * Returns the number of rows written per batch and transaction by the bulk operations.
+     *
+     * @return Number of rows per chunk.
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Sets the number of rows written per batch and transaction by the bulk operations.
+     *
+     * @param batchSize Number of rows per chunk, at least 1.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, was " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the number of rows the driver is asked to fetch at once by the streaming queries.
+     *
+     * @return Fetch size.
+     */
+    public int getFetchSize() {
+        return this.fetchSize;
+    }
+
+    /**
+     * Sets the number of rows the driver is asked to fetch at once by the streaming queries.
+     *
+     * @param fetchSize Number of rows, at least 1.
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be at least 1, was " + fetchSize);
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Executes a query and returns its rows as a lazy stream of objects, mapped by
+     * {@link #getInstanceFromResultSet(ResultSet)} one at a time. The query runs on a reader leased for the lifetime of
+     * the stream, so the cursor cannot be disturbed by other queries, including queries of the consuming thread. The
+     * reader is released when the stream is closed or consumed completely. Without a connection manager, the query
+     * runs on the connection of the DAO, which must not execute the same statement until the stream is closed.
+     *
+     * @param statementFactory Prepares the query on the leased connection.
+     * @return Lazy stream of the mapped rows.
+     * @throws SQLException If no reader could be leased or the query could not be started.
+     */
+    protected Stream<T> stream(SqlOperation<PreparedStatement> statementFactory) throws SQLException {
+        return stream(statementFactory, this::getInstanceFromResultSet);
+    }
+
+    /**
+     * Executes a query like {@link #stream(SqlOperation)}, but maps its rows with the given mapper, e.g. for queries
+     * joining other tables whose rows are no entities of this DAO.
+     *
+     * @param statementFactory Prepares the query on the leased connection.
+     * @param mapper           Maps one row at a time.
+     * @param <R>              Type of the mapped rows.
+     * @return Lazy stream of the mapped rows.
+     * @throws SQLException If no reader could be leased or the query could not be started.
+     */
+    protected <R> Stream<R> stream(SqlOperation<PreparedStatement> statementFactory, RowMapper<R> mapper)
+            throws SQLException {
+        Connection reader = this.connectionManager != null ? this.connectionManager.leaseReader() : null;
+        ActiveConnection previous = ACTIVE_CONNECTION.get();
+        PreparedStatement statement = null;
+        ResultSet result;
+        try {
+            if (reader != null) {
+                ACTIVE_CONNECTION.set(new ActiveConnection(this.connectionManager, reader));
+            }
+            statement = statementFactory.execute();
+            if (statement == null) {
+                throw new SQLException("Statement could not be prepared for " + getClass().getSimpleName());
+            }
+            statement.setFetchSize(this.fetchSize);
+            result = statement.executeQuery();
+        } catch (SQLException | RuntimeException exception) {
+            if (reader != null) {
+                this.connectionManager.release(reader);
+            }
+            throw exception;
+        } finally {
+            if (reader != null) {
+                restoreActiveConnection(previous);
+            }
+        }
+        ResultSetSpliterator<R> spliterator = new ResultSetSpliterator<>(statement, result, reader, mapper);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * Adds one statement per object to a batch and executes the batch every {@link #getBatchSize()} rows. Outside of
+     * an existing transaction, every executed batch is committed on its own.
+     *
+     * @param objects          Objects to write.
+     * @param statementFactory Binds one object to its (cached) statement.
+     * @param generatedKeys    Receives the keys of inserted rows, or <code>null</code> if no keys are needed.
+     */
+    private void executeInChunks(Collection<T> objects, Function<T, PreparedStatement> statementFactory,
+                                 List<Long> generatedKeys) throws SQLException {
+        if (objects.isEmpty()) {
+            return;
+        }
+        boolean ownTransaction = this.connection.getAutoCommit();
+        if (ownTransaction) {
+            this.connection.setAutoCommit(false);
+        }
+        PreparedStatement batch = null;
+        try {
+            int pending = 0;
+            for (T t : objects) {
+                PreparedStatement statement = statementFactory.apply(t);
+                if (statement == null) {
+                    throw new SQLException("Statement could not be prepared for " + t);
+                }
+                if (batch != null && batch != statement) {
+                    executeBatch(batch, pending, generatedKeys, ownTransaction);
+                    pending = 0;
+                }
+                batch = statement;
+                batch.addBatch();
+                if (++pending == this.batchSize) {
+                    executeBatch(batch, pending, generatedKeys, ownTransaction);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                executeBatch(batch, pending, generatedKeys, ownTransaction);
+            }
+        } catch (SQLException | RuntimeException exception) {
+            if (batch != null) {
+                batch.clearBatch();
+            }
+            if (ownTransaction) {
+                this.connection.rollback();
+            }
+            throw exception;
+        } finally {
+            if (ownTransaction) {
+                this.connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Executes a batch of <code>rows</code> statements. The keys of inserted rows are derived from
+     * <code>last_insert_rowid()</code>: SQLite assigns consecutive row ids to rows inserted one after another by the
+     * same connection inside one transaction.
+     */
+    private void executeBatch(PreparedStatement batch, int rows, List<Long> generatedKeys, boolean commit)
+            throws SQLException {
+        batch.executeBatch();
+        if (generatedKeys != null) {
+            long lastKey = readLastInsertRowId();
+            for (long key = lastKey - rows + 1; key <= lastKey; key++) {
+                generatedKeys.add(key);
+            }
+        }
+        if (commit) {
+            this.connection.commit();
+        }
+    }
+
+    private long readLastInsertRowId() throws SQLException {
+        try (ResultSet result = prepareStatement(SQL_LAST_INSERT_ROWID).executeQuery()) {
+            return result.next() ? result.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Returns a <code>PreparedStatement</code> for the given SQL from the {@link StatementCache} of the connection.
+     * The statement is compiled only on first use and reused with cleared parameters afterwards, so it must not be
+     * closed by the caller.
+     *
+     * @param sql SQL text of the statement.
+     * @return Cached <code>PreparedStatement</code> for the SQL.
+     * @throws SQLException If the SQL could not be compiled.
+     */
+    protected PreparedStatement prepareStatement(String sql) throws SQLException {
+        DaoMetrics.recordStatement(sql);
+        Connection active = activeConnection();
+        return StatementCache.forConnection(active != null ? active : this.connection).prepare(sql);
+    }
+
+    /**
+     * Executes an operation of this DAO and records its latency, row count and errors in {@link DaoMetrics}, under
+     * the simple class name of the DAO and the given operation name.
+     *
+     * @param operation    Name of the operation, e.g. <code>readByFilter</code>.
+     * @param sqlOperation Operation to execute.
+     * @param <R>          Type of the result.
+     * @return Result of the operation.
+     * @throws SQLException If the operation fails.
+     */
+    protected <R> R measure(String operation, SqlOperation<R> sqlOperation) throws SQLException {
+        return DaoMetrics.getInstance().measure(getClass().getSimpleName(), operation, sqlOperation);
+    }
+
+    /**
+     * Runs a query on a read-only connection leased from the <code>ConnectionManager</code>. Statements prepared
+     * inside the operation are prepared on that connection. Nested scopes reuse the connection of the outer scope, so
+     * queries inside a write scope see the uncommitted changes of that scope. Without a manager, the operation simply
+     * runs on the connection of the DAO.
+     *
+     * @param operation Query to run.
+     * @param <R>       Type of the result.
+     * @return Result of the operation.
+     * @throws SQLException If no reader could be leased or the operation fails.
+     */
+    protected <R> R withReadConnection(SqlOperation<R> operation) throws SQLException {
+        if (this.connectionManager == null || activeConnection() != null) {
+            return operation.execute();
+        }
+        Connection reader = this.connectionManager.leaseReader();
+        ActiveConnection previous = ACTIVE_CONNECTION.get();
+        ACTIVE_CONNECTION.set(new ActiveConnection(this.connectionManager, reader));
+        try {
+            return operation.execute();
+        } finally {
+            restoreActiveConnection(previous);
+            this.connectionManager.release(reader);
+        }
+    }
+
+    /**
+     * Runs a write on the writer connection while holding the write lock of the <code>ConnectionManager</code>, so
+     * concurrent writers cannot interleave on the shared connection and its cached statements. Without a manager, the
+     * operation simply runs on the connection of the DAO.
+     *
+     * @param operation Write to run.
+     * @param <R>       Type of the result.
+     * @return Result of the operation.
+     * @throws SQLException If the operation fails.
+     */
+    protected <R> R withWriteConnection(SqlOperation<R> operation) throws SQLException {
+        if (this.connectionManager == null) {
+            return operation.execute();
+        }
+        ReentrantLock writeLock = this.connectionManager.getWriteLock();
+        writeLock.lock();
+        ActiveConnection previous = ACTIVE_CONNECTION.get();
+        ACTIVE_CONNECTION.set(new ActiveConnection(this.connectionManager, this.connection));
+        try {
+            return operation.execute();
+        } finally {
+            restoreActiveConnection(previous);
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Hands a write to the notifier once it is committed, see {@link ConnectionManager#afterCommit(Runnable)}.
+     */
+    private void publish(Consumer<DataChangeNotifier<T>> event) {
+        DataChangeNotifier<T> notifier = this.changeNotifier;
+        if (notifier == null) {
+            return;
+        }
+        if (this.connectionManager != null) {
+            this.connectionManager.afterCommit(() -> event.accept(notifier));
+        } else {
+            event.accept(notifier);
+        }
+    }
+
+    private void invalidateCached(T t) {
+        invalidate(cache -> cache.invalidate(t));
+    }
+
+    private void invalidateCachedList() {
+        invalidate(EntityCache::invalidateAll);
+    }
+
+    /**
+     * Invalidates entries of the cache now and again once the write is committed. Inside
+     * {@link ConnectionManager#inTransaction(SqlOperation)}, readers still see the rows of before the write until the
+     * commit, so a read in between could cache them again; invalidating after the commit discards them.
+     */
+    private void invalidate(Consumer<EntityCache<T>> invalidation) {
+        EntityCache<T> cache = this.entityCache;
+        if (cache == null) {
+            return;
+        }
+        invalidation.accept(cache);
+        if (this.connectionManager != null) {
+            this.connectionManager.afterCommit(() -> invalidation.accept(cache));
+        }
+    }
+
+    private Connection activeConnection() {
+        ActiveConnection active = ACTIVE_CONNECTION.get();
+        if (active == null || this.connectionManager == null || active.manager() != this.connectionManager) {
+            return null;
+        }
+        return active.connection();
+    }
+
+    private static void restoreActiveConnection(ActiveConnection previous) {
+        if (previous == null) {
+            ACTIVE_CONNECTION.remove();
+        } else {
+            ACTIVE_CONNECTION.set(previous);
+        }
     }
 
     protected abstract T getInstanceFromResultSet(ResultSet set) throws SQLException;
@@ -54,4 +562,64 @@ public abstract class DaoImp<T> implements Dao<T> {
     protected abstract PreparedStatement getUpdateStatement(T t);
 
     protected abstract PreparedStatement getDeleteStatement(long key);
+
+    private record ActiveConnection(ConnectionManager manager, Connection connection) {
+    }
+
+    /**
+     * Maps the rows of an open <code>ResultSet</code> one at a time and releases the cursor and the leased reader when
+     * it is closed or the last row has been read.
+     */
+    private final class ResultSetSpliterator<R> extends Spliterators.AbstractSpliterator<R> {
+
+        private final PreparedStatement statement;
+        private final ResultSet result;
+        private final Connection reader;
+        private final RowMapper<R> mapper;
+        private boolean closed;
+
+        private ResultSetSpliterator(PreparedStatement statement, ResultSet result, Connection reader,
+                                     RowMapper<R> mapper) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.statement = statement;
+            this.result = result;
+            this.reader = reader;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super R> action) {
+            if (this.closed) {
+                return false;
+            }
+            try {
+                if (!this.result.next()) {
+                    close();
+                    return false;
+                }
+                action.accept(this.mapper.map(this.result));
+                return true;
+            } catch (SQLException exception) {
+                close();
+                throw new UncheckedSQLException(exception);
+            }
+        }
+
+        private void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            try {
+                this.result.close();
+                this.statement.setFetchSize(0);
+            } catch (SQLException exception) {
+                exception.printStackTrace();
+            } finally {
+                if (this.reader != null) {
+                    DaoImp.this.connectionManager.release(this.reader);
+                }
+            }
+        }
+    }
 }
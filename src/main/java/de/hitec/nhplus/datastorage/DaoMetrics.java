@@ -0,0 +1,298 @@
+package de.hitec.nhplus.datastorage;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latency, row count and errors of every DAO operation. {@link DaoImp} measures its CRUD operations, and the
+ * DAOs measure their specific queries with {@link DaoImp#measure(String, SqlOperation)}. The statistics are kept per
+ * DAO and operation, together with the SQL statement the operation prepared.
+ * <p>
+ * The statistics are published via JMX (see {@link DaoMetricsMXBean}) and written to the log periodically once
+ * {@link #startReporting()} was called. Operations taking longer than the slow query threshold are logged
+ * immediately. The threshold and the interval of the log are configured with the system properties
+ * <code>nhplus.metrics.slowQueryMillis</code> (default 250) and <code>nhplus.metrics.dumpIntervalSeconds</code>
+ * (default 300, 0 disables the periodic log).
+ */
+public class DaoMetrics implements DaoMetricsMXBean {
+
+    public static final String OBJECT_NAME = "de.hitec.nhplus:type=DaoMetrics";
+
+    private static final System.Logger LOGGER = System.getLogger(DaoMetrics.class.getName());
+    private static final DaoMetrics INSTANCE = new DaoMetrics();
+
+    /**
+     * The operation currently measured on this thread, which receives the SQL of the statements it prepares.
+     */
+    private static final ThreadLocal<Measurement> CURRENT = new ThreadLocal<>();
+
+    private final ConcurrentHashMap<String, Statistics> statistics = new ConcurrentHashMap<>();
+    private volatile long slowQueryThresholdNanos =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("nhplus.metrics.slowQueryMillis", 250));
+    private ScheduledExecutorService reporter;
+
+    private DaoMetrics() {
+    }
+
+    public static DaoMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Executes a DAO operation and records its latency, the number of rows of its result and whether it failed.
+     * Exceptions are rethrown unchanged.
+     *
+     * @param dao          Name of the DAO, e.g. <code>TreatmentDao</code>.
+     * @param operation    Name of the operation, e.g. <code>readAll</code>.
+     * @param sqlOperation Operation to execute.
+     * @param <R>          Type of the result.
+     * @return Result of the operation.
+     */
+    public <R> R measure(String dao, String operation, SqlOperation<R> sqlOperation) throws SQLException {
+        Measurement previous = CURRENT.get();
+        Measurement measurement = new Measurement(previous);
+        CURRENT.set(measurement);
+        long start = System.nanoTime();
+        try {
+            R result = sqlOperation.execute();
+            record(dao, operation, measurement, System.nanoTime() - start, rowsOf(result), null);
+            return result;
+        } catch (SQLException | RuntimeException exception) {
+            record(dao, operation, measurement, System.nanoTime() - start, 0, exception);
+            throw exception;
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Assigns a prepared SQL statement to the operations measured on the current thread, i.e. the innermost operation
+     * and all operations it is nested in. Every statement is counted; only the SQL of the first statement of an
+     * operation is kept.
+     *
+     * @param sql SQL text of the statement.
+     */
+    static void recordStatement(String sql) {
+        for (Measurement measurement = CURRENT.get(); measurement != null; measurement = measurement.parent) {
+            measurement.statements++;
+            if (measurement.sql == null) {
+                measurement.sql = sql;
+            }
+        }
+    }
+
+    /**
+     * Registers the JMX bean and starts writing the statistics to the log periodically.
+     */
+    public synchronized void startReporting() {
+        if (this.reporter != null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException exception) {
+            LOGGER.log(System.Logger.Level.WARNING, "DAO-Metriken konnten nicht per JMX veröffentlicht werden",
+                    exception);
+        }
+        this.reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dao-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Long.getLong("nhplus.metrics.dumpIntervalSeconds", 300);
+        if (interval > 0) {
+            this.reporter.scheduleAtFixedRate(this::log, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops the periodic log, writes the statistics a last time and unregisters the JMX bean.
+     */
+    public synchronized void stopReporting() {
+        if (this.reporter == null) {
+            return;
+        }
+        this.reporter.shutdownNow();
+        this.reporter = null;
+        log();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException exception) {
+            LOGGER.log(System.Logger.Level.WARNING, "DAO-Metriken konnten nicht abgemeldet werden", exception);
+        }
+    }
+
+    @Override
+    public List<OperationStatistics> getOperations() {
+        List<OperationStatistics> operations = new ArrayList<>();
+        for (Statistics entry : this.statistics.values()) {
+            operations.add(entry.snapshot());
+        }
+        operations.sort(Comparator.comparingDouble(OperationStatistics::getTotalMillis).reversed());
+        return operations;
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.slowQueryThresholdNanos);
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long millis) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder builder = new StringBuilder("DAO-Metriken:");
+        for (OperationStatistics operation : getOperations()) {
+            builder.append(System.lineSeparator()).append("  ").append(operation);
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void reset() {
+        this.statistics.clear();
+    }
+
+    private void log() {
+        if (!this.statistics.isEmpty()) {
+            LOGGER.log(System.Logger.Level.INFO, dump());
+        }
+    }
+
+    private void record(String dao, String operation, Measurement measurement, long nanos, long rows,
+                        Exception exception) {
+        String sql = measurement.sql;
+        Statistics entry = this.statistics.computeIfAbsent(dao + "." + operation,
+                key -> new Statistics(dao, operation));
+        entry.record(sql, measurement.statements, nanos, rows, exception);
+        if (nanos >= this.slowQueryThresholdNanos) {
+            LOGGER.log(System.Logger.Level.WARNING, String.format(
+                    "Langsame Datenbankoperation %s.%s: %.1f ms, %d Zeilen, SQL: %s", dao, operation, nanos / 1e6, rows,
+                    sql));
+        }
+    }
+
+    private static long rowsOf(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof long[] array) {
+            return array.length;
+        }
+        if (result instanceof Integer updateCount) {
+            return Math.max(updateCount, 0);
+        }
+        return 1;
+    }
+
+    private static final class Measurement {
+        private final Measurement parent;
+        private String sql;
+        private long statements;
+
+        private Measurement(Measurement parent) {
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * Statistics of one operation. The latencies are counted in a histogram with one bucket per power of two
+     * nanoseconds, so recording never allocates and the percentiles can be estimated without keeping every sample.
+     */
+    private static final class Statistics {
+
+        private final String dao;
+        private final String operation;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private volatile String sql;
+        private volatile String lastError;
+
+        private Statistics(String dao, String operation) {
+            this.dao = dao;
+            this.operation = operation;
+        }
+
+        private void record(String sql, long statements, long nanos, long rows, Exception exception) {
+            this.count.increment();
+            this.rows.add(rows);
+            this.statements.add(statements);
+            this.totalNanos.add(nanos);
+            this.maxNanos.accumulate(nanos);
+            this.buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+            if (sql != null) {
+                this.sql = sql;
+            }
+            if (exception != null) {
+                this.errors.increment();
+                this.lastError = exception.toString();
+            }
+        }
+
+        private OperationStatistics snapshot() {
+            long[] counts = new long[this.buckets.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = this.buckets.get(i);
+                total += counts[i];
+            }
+            long max = this.maxNanos.get();
+            return new OperationStatistics(this.dao, this.operation, this.sql, this.count.sum(), this.errors.sum(),
+                    this.rows.sum(), this.statements.sum(), this.totalNanos.sum() / 1e6, max / 1e6, percentile(counts, total, 0.50, max),
+                    percentile(counts, total, 0.95, max), percentile(counts, total, 0.99, max), this.lastError);
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing the given percentile, but at most the maximum, in
+         * milliseconds.
+         */
+        private static double percentile(long[] counts, long total, double percentile, long max) {
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(Math.pow(2, i + 1), max) / 1e6;
+                }
+            }
+            return 0;
+        }
+    }
+}
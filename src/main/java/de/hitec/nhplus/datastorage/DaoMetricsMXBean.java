@@ -0,0 +1,43 @@
+package de.hitec.nhplus.datastorage;
+
+import java.util.List;
+
+/**
+ * Management interface of {@link DaoMetrics}, published via JMX as <code>de.hitec.nhplus:type=DaoMetrics</code>, e.g.
+ * to watch the DAO operations of the running application in JConsole or VisualVM.
+ */
+public interface DaoMetricsMXBean {
+
+    /**
+     * Returns the statistics of all DAO operations executed so far, the slowest in total first.
+     *
+     * @return Statistics per DAO and operation.
+     */
+    List<OperationStatistics> getOperations();
+
+    /**
+     * Returns the duration above which an operation is logged as slow.
+     *
+     * @return Threshold in milliseconds.
+     */
+    long getSlowQueryThresholdMillis();
+
+    /**
+     * Sets the duration above which an operation is logged as slow.
+     *
+     * @param millis Threshold in milliseconds; 0 logs every operation.
+     */
+    void setSlowQueryThresholdMillis(long millis);
+
+    /**
+     * Returns the statistics of all operations as text, one line per operation.
+     *
+     * @return Text table of the statistics.
+     */
+    String dump();
+
+    /**
+     * Discards all recorded statistics.
+     */
+    void reset();
+}
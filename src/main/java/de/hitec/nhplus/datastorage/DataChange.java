@@ -0,0 +1,40 @@
+package de.hitec.nhplus.datastorage;
+
+import java.util.List;
+
+/**
+ * Change of rows of one table, published by the DAOs through a {@link DataChangeNotifier} after the write is
+ * committed.
+ *
+ * @param type Kind of the change.
+ * @param keys Ids of the changed rows in the order they were written; empty for {@link Type#RELOADED}.
+ */
+public record DataChange(Type type, List<Long> keys) {
+
+    /**
+     * Kind of a change.
+     */
+    public enum Type {
+        /**
+         * The rows with the given ids were inserted.
+         */
+        INSERTED,
+        /**
+         * The rows with the given ids were updated.
+         */
+        UPDATED,
+        /**
+         * The rows with the given ids were deleted.
+         */
+        DELETED,
+        /**
+         * Too many rows to list were changed, or the table was changed without the DAOs. Views of the table have to
+         * be reloaded.
+         */
+        RELOADED
+    }
+
+    public DataChange {
+        keys = List.copyOf(keys);
+    }
+}
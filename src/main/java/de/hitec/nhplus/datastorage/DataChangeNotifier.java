@@ -0,0 +1,131 @@
+package de.hitec.nhplus.datastorage;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToLongFunction;
+
+/**
+ * Publishes the {@link DataChange}s of one table to the views showing it, so they can insert, replace or remove the
+ * changed rows instead of reloading the whole table after every edit. The notifier is shared by all DAOs of the table,
+ * which publish every successful write with the ids of the written rows. Writes inside
+ * {@link ConnectionManager#inTransaction(SqlOperation)} are published after the commit and dropped on a rollback.
+ * <p>
+ * Listeners are held by weak references, so a view which is no longer shown does not have to remove its listener; in
+ * turn the view has to keep a strong reference to the listener as long as it wants to be notified. Listeners are
+ * called on the thread which wrote the rows and have to hand the change over to their own thread, e.g. with
+ * <code>Platform.runLater</code>.
+ *
+ * @param <T> Type of the objects of the table.
+ */
+public class DataChangeNotifier<T> {
+
+    /**
+     * Receives the changes of a table.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called after rows of the table were changed.
+         *
+         * @param change Kind of the change and ids of the changed rows.
+         */
+        void changed(DataChange change);
+    }
+
+    /**
+     * Maximum number of ids published with one change. Larger writes, e.g. imports, are published as
+     * {@link DataChange.Type#RELOADED}, since reloading the view is cheaper than applying them row by row.
+     */
+    public static final int MAX_KEYS = 1000;
+
+    private final ToLongFunction<T> keyExtractor;
+    private final List<WeakReference<Listener>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a notifier.
+     *
+     * @param keyExtractor Returns the id of an object.
+     */
+    public DataChangeNotifier(ToLongFunction<T> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * Registers a listener. It is only held weakly, see the class description.
+     *
+     * @param listener Listener to call on every change.
+     */
+    public void addListener(Listener listener) {
+        this.listeners.add(new WeakReference<>(listener));
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener Listener registered before.
+     */
+    public void removeListener(Listener listener) {
+        this.listeners.removeIf(reference -> {
+            Listener registered = reference.get();
+            return registered == null || registered == listener;
+        });
+    }
+
+    /**
+     * Publishes a change to all listeners. A listener which throws does not keep the others from being notified.
+     *
+     * @param change Change to publish.
+     */
+    public void fire(DataChange change) {
+        for (WeakReference<Listener> reference : this.listeners) {
+            Listener listener = reference.get();
+            if (listener == null) {
+                this.listeners.remove(reference);
+                continue;
+            }
+            try {
+                listener.changed(change);
+            } catch (RuntimeException exception) {
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Publishes that the table has to be reloaded, e.g. after it was changed without the DAOs.
+     */
+    public void fireReloaded() {
+        fire(new DataChange(DataChange.Type.RELOADED, List.of()));
+    }
+
+    void fireInserted(List<Long> keys) {
+        fire(DataChange.Type.INSERTED, keys);
+    }
+
+    void fireUpdated(Collection<T> objects) {
+        List<Long> keys = new ArrayList<>(objects.size());
+        for (T t : objects) {
+            keys.add(this.keyExtractor.applyAsLong(t));
+        }
+        fire(DataChange.Type.UPDATED, keys);
+    }
+
+    void fireDeleted(long key) {
+        fire(DataChange.Type.DELETED, List.of(key));
+    }
+
+    private void fire(DataChange.Type type, List<Long> keys) {
+        if (keys.isEmpty() || this.listeners.isEmpty()) {
+            return;
+        }
+        if (keys.size() > MAX_KEYS) {
+            fireReloaded();
+        } else {
+            fire(new DataChange(type, keys));
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package de.hitec.nhplus.datastorage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Caches the objects read by a DAO, keyed by their id, so rarely changing entities like patients and caregivers are
+ * not read from the database on every request. The cache is an identity map: every read of an id returns the same
+ * object until the entry is invalidated. It is bounded; when it is full, the least recently used object is removed.
+ * Besides the single objects, the cache keeps the result of the last <code>readAll</code> as long as no object was
+ * created, changed or removed since.
+ * <p>
+ * The DAO invalidates the affected entries after every write. To keep a read that overlaps with a write from caching
+ * the old state, a reader takes the {@link #getVersion() version} before its query and passes it to
+ * {@link #put(Object, long)}; the object is only cached if no invalidation happened in between.
+ *
+ * @param <T> Type of the cached objects.
+ */
+public class EntityCache<T> {
+
+    /**
+     * Maximum number of objects kept, unless another capacity is configured.
+     */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final LinkedHashMap<Long, T> entries;
+    private final ToLongFunction<T> keyExtractor;
+    private final int capacity;
+    private List<T> all;
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache with the default capacity.
+     *
+     * @param keyExtractor Returns the id of an object.
+     */
+    public EntityCache(ToLongFunction<T> keyExtractor) {
+        this(DEFAULT_CAPACITY, keyExtractor);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity     Maximum number of cached objects, at least 1.
+     * @param keyExtractor Returns the id of an object.
+     */
+    public EntityCache(int capacity, ToLongFunction<T> keyExtractor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+        }
+        this.capacity = capacity;
+        this.keyExtractor = keyExtractor;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, T> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                EntityCache.this.evictions++;
+                EntityCache.this.all = null;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached object with the given id.
+     *
+     * @param key Id of the object.
+     * @return The cached object, or <code>null</code> if it is not cached.
+     */
+    public synchronized T get(long key) {
+        T t = this.entries.get(key);
+        if (t != null) {
+            this.hits++;
+        } else {
+            this.misses++;
+        }
+        return t;
+    }
+
+    /**
+     * Returns all objects of the table, if the last complete read is still valid.
+     *
+     * @return New list with all objects in the order they were read, or <code>null</code> if they are not cached.
+     */
+    public synchronized List<T> getAll() {
+        if (this.all == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return new ArrayList<>(this.all);
+    }
+
+    /**
+     * Returns the version of the cache, which changes with every invalidation.
+     *
+     * @return Current version.
+     */
+    public synchronized long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Caches an object read from the database, unless the cache was invalidated after the read started.
+     *
+     * @param t       Object read from the database.
+     * @param version Version of the cache taken before the read.
+     */
+    public synchronized void put(T t, long version) {
+        if (t != null && version == this.version) {
+            this.entries.put(this.keyExtractor.applyAsLong(t), t);
+        }
+    }
+
+    /**
+     * Caches the complete content of a table read from the database, unless the cache was invalidated after the read
+     * started. If the table has more rows than the capacity, only the single objects are cached.
+     *
+     * @param objects All objects of the table.
+     * @param version Version of the cache taken before the read.
+     */
+    public synchronized void putAll(List<T> objects, long version) {
+        if (version != this.version) {
+            return;
+        }
+        for (T t : objects) {
+            this.entries.put(this.keyExtractor.applyAsLong(t), t);
+        }
+        this.all = objects.size() <= this.capacity ? new ArrayList<>(objects) : null;
+    }
+
+    /**
+     * Removes the object with the given id, e.g. after it was updated or deleted.
+     *
+     * @param key Id of the object.
+     */
+    public synchronized void invalidate(long key) {
+        this.version++;
+        this.entries.remove(key);
+        this.all = null;
+    }
+
+    /**
+     * Removes the given object, e.g. after it was updated.
+     *
+     * @param t Object whose entry is removed.
+     */
+    public synchronized void invalidate(T t) {
+        invalidate(this.keyExtractor.applyAsLong(t));
+    }
+
+    /**
+     * Discards the cached result of <code>readAll</code>, e.g. after objects were created. The single objects stay
+     * cached.
+     */
+    public synchronized void invalidateAll() {
+        this.version++;
+        this.all = null;
+    }
+
+    /**
+     * Removes all cached objects, e.g. after the table was changed without the DAO.
+     */
+    public synchronized void clear() {
+        this.version++;
+        this.entries.clear();
+        this.all = null;
+    }
+
+    /**
+     * Returns the number of reads served by the cache.
+     *
+     * @return Number of cache hits.
+     */
+    public synchronized long getHitCount() {
+        return this.hits;
+    }
+
+    /**
+     * Returns the number of reads that had to query the database.
+     *
+     * @return Number of cache misses.
+     */
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    /**
+     * Returns the share of reads served by the cache.
+     *
+     * @return Hit rate between 0 and 1, or 0 if nothing was read yet.
+     */
+    public synchronized double getHitRate() {
+        long requests = this.hits + this.misses;
+        return requests == 0 ? 0 : (double) this.hits / requests;
+    }
+
+    /**
+     * Returns the number of objects removed because the cache was full.
+     *
+     * @return Number of evictions.
+     */
+    public synchronized long getEvictionCount() {
+        return this.evictions;
+    }
+
+    /**
+     * Returns the number of objects currently cached.
+     *
+     * @return Number of cached objects.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("EntityCache[size=%d, hits=%d, misses=%d, hitRate=%.2f, evictions=%d]",
+                this.entries.size(), this.hits, this.misses, getHitRate(), this.evictions);
+    }
+}
@@ -0,0 +1,126 @@
+package de.hitec.nhplus.datastorage;
+
+/**
+ * Snapshot of the statistics of one DAO operation, as recorded by {@link DaoMetrics}. Latencies are given in
+ * milliseconds; the percentiles are estimated from a histogram with power-of-two buckets and are therefore accurate to
+ * a factor of two.
+ */
+public final class OperationStatistics {
+
+    private final String dao;
+    private final String operation;
+    private final String sql;
+    private final long count;
+    private final long errorCount;
+    private final long rowCount;
+    private final long statementCount;
+    private final double totalMillis;
+    private final double maxMillis;
+    private final double p50Millis;
+    private final double p95Millis;
+    private final double p99Millis;
+    private final String lastError;
+
+    OperationStatistics(String dao, String operation, String sql, long count, long errorCount, long rowCount,
+                        long statementCount, double totalMillis, double maxMillis, double p50Millis, double p95Millis,
+                        double p99Millis, String lastError) {
+        this.dao = dao;
+        this.operation = operation;
+        this.sql = sql;
+        this.count = count;
+        this.errorCount = errorCount;
+        this.rowCount = rowCount;
+        this.statementCount = statementCount;
+        this.totalMillis = totalMillis;
+        this.maxMillis = maxMillis;
+        this.p50Millis = p50Millis;
+        this.p95Millis = p95Millis;
+        this.p99Millis = p99Millis;
+        this.lastError = lastError;
+    }
+
+    public String getDao() {
+        return this.dao;
+    }
+
+    public String getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * Returns the first SQL statement prepared by the last execution of the operation.
+     *
+     * @return SQL text, or <code>null</code> if the operation was served without a statement, e.g. from a cache.
+     */
+    public String getSql() {
+        return this.sql;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getErrorCount() {
+        return this.errorCount;
+    }
+
+    /**
+     * Returns the number of rows read or written by all executions of the operation.
+     *
+     * @return Number of rows.
+     */
+    public long getRowCount() {
+        return this.rowCount;
+    }
+
+    /**
+     * Returns the number of SQL statements prepared by all executions of the operation, i.e. its round trips to the
+     * database; statements of nested operations are included.
+     *
+     * @return Number of statements.
+     */
+    public long getStatementCount() {
+        return this.statementCount;
+    }
+
+    public double getTotalMillis() {
+        return this.totalMillis;
+    }
+
+    public double getMeanMillis() {
+        return this.count == 0 ? 0 : this.totalMillis / this.count;
+    }
+
+    public double getMaxMillis() {
+        return this.maxMillis;
+    }
+
+    public double getP50Millis() {
+        return this.p50Millis;
+    }
+
+    public double getP95Millis() {
+        return this.p95Millis;
+    }
+
+    public double getP99Millis() {
+        return this.p99Millis;
+    }
+
+    /**
+     * Returns the message of the last exception thrown by the operation.
+     *
+     * @return Exception message, or <code>null</code> if the operation never failed.
+     */
+    public String getLastError() {
+        return this.lastError;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s.%s: count=%d, errors=%d, rows=%d, statements=%d, total=%.1f ms, mean=%.3f ms, p50=%.3f ms, " +
+                        "p95=%.3f ms, p99=%.3f ms, max=%.3f ms", this.dao, this.operation, this.count, this.errorCount,
+                this.rowCount, this.statementCount, this.totalMillis, getMeanMillis(), this.p50Millis, this.p95Millis, this.p99Millis,
+                this.maxMillis);
+    }
+}
@@ -22,6 +22,28 @@ public class PatientDao extends DaoImp<Patient> {
         super(connection);
     }
 
+    /**
+     * The constructor initiates an object of <code>PatientDao</code> and passes the connection manager to its super class.
+     *
+     * @param connectionManager Object of <code>ConnectionManager</code> providing the connections to execute the
+     *                          SQL-statements.
+     */
+    public PatientDao(ConnectionManager connectionManager) {
+        super(connectionManager);
+    }
+
+    /**
+     * The constructor initiates an object of <code>PatientDao</code> which serves reads from the given cache and passes
+     * the connection manager and the cache to its super class.
+     *
+     * @param connectionManager Object of <code>ConnectionManager</code> providing the connections to execute the
+     *                          SQL-statements.
+     * @param entityCache       Cache of all objects of class <code>Patient</code>, shared by all DAOs of this table.
+     */
+    public PatientDao(ConnectionManager connectionManager, EntityCache<Patient> entityCache) {
+        super(connectionManager, entityCache);
+    }
+
     /**
      * Generates a <code>PreparedStatement</code> to persist the given object of <code>Patient</code>.
      *
@@ -34,7 +56,7 @@ public class PatientDao extends DaoImp<Patient> {
         try {
             final String SQL = "INSERT INTO patient (firstname, surname, dateOfBirth, carelevel, roomnumber) " +
                     "VALUES (?, ?, ?, ?, ?)";
-            preparedStatement = this.connection.prepareStatement(SQL);
+            preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setString(1, patient.getFirstName());
             preparedStatement.setString(2, patient.getSurname());
             preparedStatement.setString(3, patient.getDateOfBirth());
@@ -57,7 +79,7 @@ public class PatientDao extends DaoImp<Patient> {
         PreparedStatement preparedStatement = null;
         try {
             final String SQL = "SELECT * FROM patient WHERE pid = ?";
-            preparedStatement = this.connection.prepareStatement(SQL);
+            preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setLong(1, pid);
         } catch (SQLException exception) {
             exception.printStackTrace();
@@ -92,7 +114,7 @@ public class PatientDao extends DaoImp<Patient> {
         PreparedStatement statement = null;
         try {
             final String SQL = "SELECT * FROM patient";
-            statement = this.connection.prepareStatement(SQL);
+            statement = this.prepareStatement(SQL);
         } catch (SQLException exception) {
             exception.printStackTrace();
         }
@@ -138,7 +160,7 @@ public class PatientDao extends DaoImp<Patient> {
                             "carelevel = ?, " +
                             "roomnumber = ? " +
                             "WHERE pid = ?";
-            preparedStatement = this.connection.prepareStatement(SQL);
+            preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setString(1, patient.getFirstName());
             preparedStatement.setString(2, patient.getSurname());
             preparedStatement.setString(3, patient.getDateOfBirth());
@@ -162,7 +184,7 @@ public class PatientDao extends DaoImp<Patient> {
         PreparedStatement preparedStatement = null;
         try {
             final String SQL = "DELETE FROM patient WHERE pid = ?";
-            preparedStatement = this.connection.prepareStatement(SQL);
+            preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setLong(1, pid);
         } catch (SQLException exception) {
             exception.printStackTrace();
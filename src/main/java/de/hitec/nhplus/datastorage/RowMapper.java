@@ -0,0 +1,23 @@
+package de.hitec.nhplus.datastorage;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a <code>ResultSet</code> to an object, e.g. for a stream of rows which are not entities of
+ * the DAO.
+ *
+ * @param <R> Type of the mapped object.
+ */
+@FunctionalInterface
+public interface RowMapper<R> {
+
+    /**
+     * Maps the row the <code>ResultSet</code> is positioned on.
+     *
+     * @param result ResultSet positioned on a row; it must not be moved.
+     * @return Object with the data of the row.
+     * @throws SQLException If a column cannot be read.
+     */
+    R map(ResultSet result) throws SQLException;
+}
@@ -0,0 +1,568 @@
+package de.hitec.nhplus.datastorage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Creates and evolves the schema of the database in place. The schema version of a database is stored in
+ * <code>PRAGMA user_version</code>; every migration with a higher version than the stored one is applied in its own
+ * transaction, together with raising the stored version. A database created before the migrations were introduced has
+ * version 0 and is brought up to date without losing data, since the first migration only creates missing tables.
+ * <p>
+ * New schema changes are added as a new migration at the end of {@link #MIGRATIONS}; existing migrations must never
+ * be changed, as they have already been applied to existing databases.
+ */
+public class SchemaMigrator {
+
+    private static final System.Logger LOGGER = System.getLogger(SchemaMigrator.class.getName());
+
+    /**
+     * A schema change, applied as a whole or not at all.
+     *
+     * @param version     Schema version reached by this migration.
+     * @param description Short description, logged when the migration is applied.
+     * @param statements  SQL statements of the migration.
+     */
+    private record Migration(int version, String description, String... statements) {
+    }
+
+    /**
+     * Statements computing the tables maintained by the triggers of a table from all its rows, by table name.
+     */
+    private static final Map<String, List<String>> TRIGGER_TABLE_REBUILDS = Map.of(
+            "patient", List.of("INSERT INTO patient_search (patient_search) VALUES ('rebuild')"),
+            "caregiver", List.of("INSERT INTO caregiver_search (caregiver_search) VALUES ('rebuild')"),
+            "treatment", Stream.concat(Stream.of("INSERT INTO treatment_search (treatment_search) VALUES ('rebuild')"),
+                    Arrays.stream(CareStatisticsDao.REBUILD_STATEMENTS)).toList());
+
+    /**
+     * Triggers keeping the daily sums of the {@link CareStatisticsDao} up to date, created by migration 5 and again by
+     * migration 6 after rebuilding the table of the treatments.
+     */
+    private static final String CARE_MINUTES_INSERT_TRIGGER =
+            "CREATE TRIGGER care_minutes_insert AFTER INSERT ON treatment BEGIN " +
+                    "INSERT INTO patient_care_minutes (pid, treatment_date, treatments, minutes) " +
+                    "VALUES (new.pid, new.treatment_date, 1, " +
+                    "(strftime('%s', new.end) - strftime('%s', new.begin)) / 60) " +
+                    "ON CONFLICT (pid, treatment_date) DO UPDATE " +
+                    "SET treatments = treatments + 1, minutes = minutes + excluded.minutes; " +
+                    "INSERT INTO caregiver_care_minutes (cid, treatment_date, treatments, minutes) " +
+                    "VALUES (new.cid, new.treatment_date, 1, " +
+                    "(strftime('%s', new.end) - strftime('%s', new.begin)) / 60) " +
+                    "ON CONFLICT (cid, treatment_date) DO UPDATE " +
+                    "SET treatments = treatments + 1, minutes = minutes + excluded.minutes; " +
+                    "END";
+
+    private static final String CARE_MINUTES_DELETE_TRIGGER =
+            "CREATE TRIGGER care_minutes_delete AFTER DELETE ON treatment BEGIN " +
+                    "UPDATE patient_care_minutes SET treatments = treatments - 1, " +
+                    "minutes = minutes - (strftime('%s', old.end) - strftime('%s', old.begin)) / 60 " +
+                    "WHERE pid = old.pid AND treatment_date = old.treatment_date; " +
+                    "DELETE FROM patient_care_minutes " +
+                    "WHERE pid = old.pid AND treatment_date = old.treatment_date AND treatments = 0; " +
+                    "UPDATE caregiver_care_minutes SET treatments = treatments - 1, " +
+                    "minutes = minutes - (strftime('%s', old.end) - strftime('%s', old.begin)) / 60 " +
+                    "WHERE cid = old.cid AND treatment_date = old.treatment_date; " +
+                    "DELETE FROM caregiver_care_minutes " +
+                    "WHERE cid = old.cid AND treatment_date = old.treatment_date AND treatments = 0; " +
+                    "END";
+
+    private static final String CARE_MINUTES_UPDATE_TRIGGER =
+            "CREATE TRIGGER care_minutes_update AFTER UPDATE OF pid, cid, treatment_date, begin, end " +
+                    "ON treatment BEGIN " +
+                    "UPDATE patient_care_minutes SET treatments = treatments - 1, " +
+                    "minutes = minutes - (strftime('%s', old.end) - strftime('%s', old.begin)) / 60 " +
+                    "WHERE pid = old.pid AND treatment_date = old.treatment_date; " +
+                    "DELETE FROM patient_care_minutes " +
+                    "WHERE pid = old.pid AND treatment_date = old.treatment_date AND treatments = 0; " +
+                    "UPDATE caregiver_care_minutes SET treatments = treatments - 1, " +
+                    "minutes = minutes - (strftime('%s', old.end) - strftime('%s', old.begin)) / 60 " +
+                    "WHERE cid = old.cid AND treatment_date = old.treatment_date; " +
+                    "DELETE FROM caregiver_care_minutes " +
+                    "WHERE cid = old.cid AND treatment_date = old.treatment_date AND treatments = 0; " +
+                    "INSERT INTO patient_care_minutes (pid, treatment_date, treatments, minutes) " +
+                    "VALUES (new.pid, new.treatment_date, 1, " +
+                    "(strftime('%s', new.end) - strftime('%s', new.begin)) / 60) " +
+                    "ON CONFLICT (pid, treatment_date) DO UPDATE " +
+                    "SET treatments = treatments + 1, minutes = minutes + excluded.minutes; " +
+                    "INSERT INTO caregiver_care_minutes (cid, treatment_date, treatments, minutes) " +
+                    "VALUES (new.cid, new.treatment_date, 1, " +
+                    "(strftime('%s', new.end) - strftime('%s', new.begin)) / 60) " +
+                    "ON CONFLICT (cid, treatment_date) DO UPDATE " +
+                    "SET treatments = treatments + 1, minutes = minutes + excluded.minutes; " +
+                    "END";
+
+    private static final Migration[] MIGRATIONS = {
+            new Migration(1, "Tabellen anlegen",
+                    "CREATE TABLE IF NOT EXISTS caregiver (" +
+                            "   cid INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            "   firstname TEXT NOT NULL, " +
+                            "   surname TEXT NOT NULL, " +
+                            "   phonenumber TEXT NOT NULL," +
+                            "inactiveSince TEXT" +
+                            ");",
+                    "CREATE TABLE IF NOT EXISTS patient (" +
+                            "   pid INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            "   firstname TEXT NOT NULL, " +
+                            "   surname TEXT NOT NULL, " +
+                            "   dateOfBirth TEXT NOT NULL, " +
+                            "   carelevel TEXT NOT NULL, " +
+                            "   roomnumber TEXT NOT NULL " +
+                            ");",
+                    "CREATE TABLE IF NOT EXISTS treatment (" +
+                            "   tid INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            "   pid INTEGER NOT NULL, " +
+                            "   treatment_date TEXT NOT NULL, " +
+                            "   begin TEXT NOT NULL, " +
+                            "   end TEXT NOT NULL, " +
+                            "   description TEXT NOT NULL, " +
+                            "   remark TEXT NOT NULL," +
+                            "   cid INTEGER NOT NULL," +
+                            "   FOREIGN KEY (pid) REFERENCES patient (pid) ON DELETE CASCADE " +
+                            ");",
+                    "CREATE TABLE IF NOT EXISTS user (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            "username TEXT NOT NULL UNIQUE, " +
+                            "password TEXT NOT NULL" +
+                            ");"),
+            // Filters of the treatment view by patient, caregiver and date range use the *_date indexes. The tid
+            // snapshot and the keyset paginated pages of a patient or caregiver are ordered by tid and use the *_tid
+            // indexes, which return the rows in tid order without sorting.
+            new Migration(2, "Indizes für Behandlungen anlegen",
+                    "CREATE INDEX IF NOT EXISTS treatment_pid_date ON treatment (pid, treatment_date)",
+                    "CREATE INDEX IF NOT EXISTS treatment_cid_date ON treatment (cid, treatment_date)",
+                    "CREATE INDEX IF NOT EXISTS treatment_date ON treatment (treatment_date)",
+                    "CREATE INDEX IF NOT EXISTS treatment_pid_tid ON treatment (pid, tid)",
+                    "CREATE INDEX IF NOT EXISTS treatment_cid_tid ON treatment (cid, tid)"),
+            // inactiveSince was declared TEXT but written as epoch milliseconds of the local midnight. It is stored as
+            // number of days since 1970-01-01 from now on; SQLite cannot change the type of a column, so the table is
+            // rebuilt. Milliseconds are rounded to the nearest day, which gives the local date for time zones less
+            // than 12 hours behind UTC and at most 12 hours ahead of it, i.e. UTC-11 to UTC+12, and for dates from 1970
+            // on. Dates written as text are converted as well. The partial indexes contain only the active
+            // respectively inactive caregivers.
+            new Migration(3, "inactiveSince der Pfleger als Tag speichern",
+                    "CREATE TABLE caregiver_new (" +
+                            "   cid INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            "   firstname TEXT NOT NULL, " +
+                            "   surname TEXT NOT NULL, " +
+                            "   phonenumber TEXT NOT NULL, " +
+                            "   inactiveSince INTEGER" +
+                            ")",
+                    "INSERT INTO caregiver_new (cid, firstname, surname, phonenumber, inactiveSince) " +
+                            "SELECT cid, firstname, surname, phonenumber, CASE " +
+                            "WHEN inactiveSince IS NULL OR trim(inactiveSince) IN ('', '0') THEN NULL " +
+                            "WHEN inactiveSince GLOB '[0-9][0-9][0-9][0-9]-[0-9][0-9]-[0-9][0-9]*' " +
+                            "THEN CAST(julianday(substr(inactiveSince, 1, 10)) - 2440587.5 AS INTEGER) " +
+                            "ELSE (CAST(inactiveSince AS INTEGER) + 43200000) / 86400000 END " +
+                            "FROM caregiver",
+                    "UPDATE sqlite_sequence SET seq = max(seq, " +
+                            "IFNULL((SELECT seq FROM sqlite_sequence WHERE name = 'caregiver'), 0)) " +
+                            "WHERE name = 'caregiver_new'",
+                    "DROP TABLE caregiver",
+                    "ALTER TABLE caregiver_new RENAME TO caregiver",
+                    "CREATE INDEX caregiver_active ON caregiver (cid) WHERE inactiveSince IS NULL",
+                    "CREATE INDEX caregiver_inactive ON caregiver (cid) WHERE inactiveSince IS NOT NULL"),
+            // Full text indexes of the names, room numbers, descriptions and remarks for the SearchDao. They are
+            // external content tables, i.e. they store only the index and read the text from the tables, and are kept
+            // in sync by the triggers. Diacritics are removed, so "muller" finds "Müller"; the prefix indexes make
+            // queries of the first two or three letters of a term fast. The *_terms tables list the indexed terms
+            // for the fuzzy search.
+            new Migration(4, "Volltextsuche anlegen",
+                    "CREATE VIRTUAL TABLE patient_search USING fts5(firstname, surname, roomnumber, " +
+                            "content = 'patient', content_rowid = 'pid', " +
+                            "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')",
+                    "CREATE TRIGGER patient_search_insert AFTER INSERT ON patient BEGIN " +
+                            "INSERT INTO patient_search (rowid, firstname, surname, roomnumber) " +
+                            "VALUES (new.pid, new.firstname, new.surname, new.roomnumber); END",
+                    "CREATE TRIGGER patient_search_delete AFTER DELETE ON patient BEGIN " +
+                            "INSERT INTO patient_search (patient_search, rowid, firstname, surname, roomnumber) " +
+                            "VALUES ('delete', old.pid, old.firstname, old.surname, old.roomnumber); END",
+                    "CREATE TRIGGER patient_search_update AFTER UPDATE OF firstname, surname, roomnumber ON patient " +
+                            "BEGIN " +
+                            "INSERT INTO patient_search (patient_search, rowid, firstname, surname, roomnumber) " +
+                            "VALUES ('delete', old.pid, old.firstname, old.surname, old.roomnumber); " +
+                            "INSERT INTO patient_search (rowid, firstname, surname, roomnumber) " +
+                            "VALUES (new.pid, new.firstname, new.surname, new.roomnumber); END",
+                    "INSERT INTO patient_search (patient_search) VALUES ('rebuild')",
+                    "CREATE VIRTUAL TABLE patient_search_terms USING fts5vocab(patient_search, 'row')",
+                    "CREATE VIRTUAL TABLE caregiver_search USING fts5(firstname, surname, " +
+                            "content = 'caregiver', content_rowid = 'cid', " +
+                            "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')",
+                    "CREATE TRIGGER caregiver_search_insert AFTER INSERT ON caregiver BEGIN " +
+                            "INSERT INTO caregiver_search (rowid, firstname, surname) " +
+                            "VALUES (new.cid, new.firstname, new.surname); END",
+                    "CREATE TRIGGER caregiver_search_delete AFTER DELETE ON caregiver BEGIN " +
+                            "INSERT INTO caregiver_search (caregiver_search, rowid, firstname, surname) " +
+                            "VALUES ('delete', old.cid, old.firstname, old.surname); END",
+                    "CREATE TRIGGER caregiver_search_update AFTER UPDATE OF firstname, surname ON caregiver BEGIN " +
+                            "INSERT INTO caregiver_search (caregiver_search, rowid, firstname, surname) " +
+                            "VALUES ('delete', old.cid, old.firstname, old.surname); " +
+                            "INSERT INTO caregiver_search (rowid, firstname, surname) " +
+                            "VALUES (new.cid, new.firstname, new.surname); END",
+                    "INSERT INTO caregiver_search (caregiver_search) VALUES ('rebuild')",
+                    "CREATE VIRTUAL TABLE caregiver_search_terms USING fts5vocab(caregiver_search, 'row')",
+                    "CREATE VIRTUAL TABLE treatment_search USING fts5(description, remark, " +
+                            "content = 'treatment', content_rowid = 'tid', " +
+                            "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')",
+                    "CREATE TRIGGER treatment_search_insert AFTER INSERT ON treatment BEGIN " +
+                            "INSERT INTO treatment_search (rowid, description, remark) " +
+                            "VALUES (new.tid, new.description, new.remark); END",
+                    "CREATE TRIGGER treatment_search_delete AFTER DELETE ON treatment BEGIN " +
+                            "INSERT INTO treatment_search (treatment_search, rowid, description, remark) " +
+                            "VALUES ('delete', old.tid, old.description, old.remark); END",
+                    "CREATE TRIGGER treatment_search_update AFTER UPDATE OF description, remark ON treatment BEGIN " +
+                            "INSERT INTO treatment_search (treatment_search, rowid, description, remark) " +
+                            "VALUES ('delete', old.tid, old.description, old.remark); " +
+                            "INSERT INTO treatment_search (rowid, description, remark) " +
+                            "VALUES (new.tid, new.description, new.remark); END",
+                    "INSERT INTO treatment_search (treatment_search) VALUES ('rebuild')",
+                    "CREATE VIRTUAL TABLE treatment_search_terms USING fts5vocab(treatment_search, 'row')"),
+            // Number and minutes of the treatments per patient and day and per caregiver and day for the
+            // CareStatisticsDao, so statistics read one row per day instead of every treatment. The triggers keep
+            // them up to date on every write, including imports and cascading deletes of patients; days without
+            // treatments are removed. The minutes are computed from begin and end by SQLite.
+            new Migration(5, "Summen der Behandlungen je Tag anlegen",
+                    "CREATE TABLE patient_care_minutes (" +
+                            "   pid INTEGER NOT NULL, " +
+                            "   treatment_date TEXT NOT NULL, " +
+                            "   treatments INTEGER NOT NULL, " +
+                            "   minutes INTEGER NOT NULL, " +
+                            "   PRIMARY KEY (pid, treatment_date)" +
+                            ") WITHOUT ROWID",
+                    "CREATE INDEX patient_care_minutes_date ON patient_care_minutes (treatment_date)",
+                    "CREATE TABLE caregiver_care_minutes (" +
+                            "   cid INTEGER NOT NULL, " +
+                            "   treatment_date TEXT NOT NULL, " +
+                            "   treatments INTEGER NOT NULL, " +
+                            "   minutes INTEGER NOT NULL, " +
+                            "   PRIMARY KEY (cid, treatment_date)" +
+                            ") WITHOUT ROWID",
+                    "CREATE INDEX caregiver_care_minutes_date ON caregiver_care_minutes (treatment_date)",
+                    CARE_MINUTES_INSERT_TRIGGER,
+                    CARE_MINUTES_DELETE_TRIGGER,
+                    CARE_MINUTES_UPDATE_TRIGGER,
+                    "INSERT INTO patient_care_minutes (pid, treatment_date, treatments, minutes) " +
+                            "SELECT pid, treatment_date, COUNT(*), " +
+                            "SUM((strftime('%s', end) - strftime('%s', begin)) / 60) " +
+                            "FROM treatment GROUP BY pid, treatment_date",
+                    "INSERT INTO caregiver_care_minutes (cid, treatment_date, treatments, minutes) " +
+                            "SELECT cid, treatment_date, COUNT(*), " +
+                            "SUM((strftime('%s', end) - strftime('%s', begin)) / 60) " +
+                            "FROM treatment GROUP BY cid, treatment_date"),
+            // Descriptions and remarks repeat across many treatments, so each distinct text is stored once in
+            // treatment_text and the treatments reference it by id. SQLite cannot change the type of a column, so the
+            // table is rebuilt like the caregivers in migration 3; its triggers are dropped before and created again
+            // afterwards, the care minute triggers unchanged from migration 5. The view treatment_with_text joins the
+            // texts back for readers and is the content table of the full text index, whose triggers look the texts
+            // up by id. Texts are never changed or deleted, so a text is the same for an id forever.
+            new Migration(6, "Texte der Behandlungen in Katalog auslagern",
+                    "DROP TRIGGER treatment_search_insert",
+                    "DROP TRIGGER treatment_search_delete",
+                    "DROP TRIGGER treatment_search_update",
+                    "DROP TRIGGER care_minutes_insert",
+                    "DROP TRIGGER care_minutes_delete",
+                    "DROP TRIGGER care_minutes_update",
+                    "DROP TABLE treatment_search_terms",
+                    "DROP TABLE treatment_search",
+                    "CREATE TABLE treatment_text (" +
+                            "   id INTEGER PRIMARY KEY, " +
+                            "   text TEXT NOT NULL UNIQUE" +
+                            ")",
+                    "INSERT INTO treatment_text (text) " +
+                            "SELECT description FROM treatment UNION SELECT remark FROM treatment",
+                    "CREATE TABLE treatment_new (" +
+                            "   tid INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            "   pid INTEGER NOT NULL, " +
+                            "   treatment_date TEXT NOT NULL, " +
+                            "   begin TEXT NOT NULL, " +
+                            "   end TEXT NOT NULL, " +
+                            "   description_id INTEGER NOT NULL REFERENCES treatment_text (id), " +
+                            "   remark_id INTEGER NOT NULL REFERENCES treatment_text (id), " +
+                            "   cid INTEGER NOT NULL, " +
+                            "   FOREIGN KEY (pid) REFERENCES patient (pid) ON DELETE CASCADE" +
+                            ")",
+                    "INSERT INTO treatment_new " +
+                            "(tid, pid, treatment_date, begin, end, description_id, remark_id, cid) " +
+                            "SELECT t.tid, t.pid, t.treatment_date, t.begin, t.end, d.id, r.id, t.cid " +
+                            "FROM treatment t " +
+                            "JOIN treatment_text d ON d.text = t.description " +
+                            "JOIN treatment_text r ON r.text = t.remark",
+                    "UPDATE sqlite_sequence SET seq = max(seq, " +
+                            "IFNULL((SELECT seq FROM sqlite_sequence WHERE name = 'treatment'), 0)) " +
+                            "WHERE name = 'treatment_new'",
+                    "DROP TABLE treatment",
+                    "ALTER TABLE treatment_new RENAME TO treatment",
+                    "CREATE INDEX treatment_pid_date ON treatment (pid, treatment_date)",
+                    "CREATE INDEX treatment_cid_date ON treatment (cid, treatment_date)",
+                    "CREATE INDEX treatment_date ON treatment (treatment_date)",
+                    "CREATE INDEX treatment_pid_tid ON treatment (pid, tid)",
+                    "CREATE INDEX treatment_cid_tid ON treatment (cid, tid)",
+                    "CREATE VIEW treatment_with_text AS " +
+                            "SELECT t.tid, t.pid, t.treatment_date, t.begin, t.end, " +
+                            "t.description_id, d.text AS description, t.remark_id, r.text AS remark, t.cid " +
+                            "FROM treatment t " +
+                            "JOIN treatment_text d ON d.id = t.description_id " +
+                            "JOIN treatment_text r ON r.id = t.remark_id",
+                    "CREATE VIRTUAL TABLE treatment_search USING fts5(description, remark, " +
+                            "content = 'treatment_with_text', content_rowid = 'tid', " +
+                            "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')",
+                    "CREATE TRIGGER treatment_search_insert AFTER INSERT ON treatment BEGIN " +
+                            "INSERT INTO treatment_search (rowid, description, remark) " +
+                            "VALUES (new.tid, " +
+                            "(SELECT text FROM treatment_text WHERE id = new.description_id), " +
+                            "(SELECT text FROM treatment_text WHERE id = new.remark_id)); END",
+                    "CREATE TRIGGER treatment_search_delete AFTER DELETE ON treatment BEGIN " +
+                            "INSERT INTO treatment_search (treatment_search, rowid, description, remark) " +
+                            "VALUES ('delete', old.tid, " +
+                            "(SELECT text FROM treatment_text WHERE id = old.description_id), " +
+                            "(SELECT text FROM treatment_text WHERE id = old.remark_id)); END",
+                    "CREATE TRIGGER treatment_search_update AFTER UPDATE OF description_id, remark_id ON treatment " +
+                            "BEGIN " +
+                            "INSERT INTO treatment_search (treatment_search, rowid, description, remark) " +
+                            "VALUES ('delete', old.tid, " +
+                            "(SELECT text FROM treatment_text WHERE id = old.description_id), " +
+                            "(SELECT text FROM treatment_text WHERE id = old.remark_id)); " +
+                            "INSERT INTO treatment_search (rowid, description, remark) " +
+                            "VALUES (new.tid, " +
+                            "(SELECT text FROM treatment_text WHERE id = new.description_id), " +
+                            "(SELECT text FROM treatment_text WHERE id = new.remark_id)); END",
+                    "INSERT INTO treatment_search (treatment_search) VALUES ('rebuild')",
+                    "CREATE VIRTUAL TABLE treatment_search_terms USING fts5vocab(treatment_search, 'row')",
+                    CARE_MINUTES_INSERT_TRIGGER,
+                    CARE_MINUTES_DELETE_TRIGGER,
+                    CARE_MINUTES_UPDATE_TRIGGER)
+    };
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Returns the schema version reached by the last migration.
+     *
+     * @return Latest schema version.
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS[MIGRATIONS.length - 1].version();
+    }
+
+    /**
+     * Returns the schema version stored in the database.
+     *
+     * @param connection Connection to the database.
+     * @return Schema version, 0 for a new or not yet migrated database.
+     */
+    public static int getVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("PRAGMA user_version")) {
+            return result.next() ? result.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Applies all migrations the database has not reached yet. Each migration runs in its own transaction; if one
+     * fails, it is rolled back and the database stays at the version of the previous migration. If the migrations
+     * left a large part of the file unused, e.g. after rebuilding a table, the file is compacted afterwards, see
+     * {@link #compact(Connection)}. The applied migrations are only logged; reporting them is left to the caller.
+     *
+     * @param connection Writable connection to the database, in auto-commit mode.
+     * @return Number of applied migrations.
+     * @throws SQLException If a migration fails, or the database has a newer schema than this version of the
+     *                      application knows.
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        int version = getVersion(connection);
+        if (version > getLatestVersion()) {
+            throw new SQLException("Die Datenbank hat die Schemaversion " + version + ", unterstützt wird bis "
+                    + getLatestVersion() + ".");
+        }
+        int applied = 0;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version() > version) {
+                apply(connection, migration);
+                applied++;
+            }
+        }
+        if (applied > 0) {
+            compact(connection);
+        }
+        return applied;
+    }
+
+    /**
+     * Rewrites the database file with <code>VACUUM</code> if more than a tenth of its pages are free. SQLite keeps
+     * the pages of dropped tables and deleted rows for reuse instead of shrinking the file. <code>VACUUM</code> cannot
+     * run inside a transaction, so it runs after the migrations.
+     *
+     * @param connection Writable connection to the database, in auto-commit mode.
+     * @return Whether the file was compacted.
+     */
+    public static boolean compact(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            long pages;
+            long freePages;
+            try (ResultSet result = statement.executeQuery("PRAGMA page_count")) {
+                pages = result.next() ? result.getLong(1) : 0;
+            }
+            try (ResultSet result = statement.executeQuery("PRAGMA freelist_count")) {
+                freePages = result.next() ? result.getLong(1) : 0;
+            }
+            if (freePages * 10 <= pages) {
+                return false;
+            }
+            statement.execute("VACUUM");
+            return true;
+        }
+    }
+
+    /**
+     * Resets the schema version of the database to 0, e.g. after all tables have been dropped.
+     *
+     * @param connection Writable connection to the database.
+     */
+    public static void resetVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA user_version = 0");
+        }
+    }
+
+    /**
+     * Returns the query plan SQLite chooses for the given query, one line per step, e.g.
+     * <code>SEARCH t USING INDEX treatment_pid_tid (pid=? AND tid&gt;?)</code>. Useful to check whether a query is
+     * served by an index or scans the whole table.
+     *
+     * @param connection Connection to the database.
+     * @param sql        Query to explain; parameters may stay unbound.
+     * @return Details of the steps of the query plan.
+     */
+    public static List<String> explainQueryPlan(Connection connection, String sql) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+             ResultSet result = statement.executeQuery()) {
+            while (result.next()) {
+                plan.add(result.getString("detail"));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Drops the indexes of a table created by the migrations, e.g. before a bulk load, which is much faster without
+     * maintaining the indexes row by row. Has to run in a transaction which recreates the indexes with
+     * {@link #createIndexes(Connection, List)} before it commits, so the schema never stays without them.
+     *
+     * @param connection Writable connection to the database.
+     * @param table      Name of the table.
+     * @return <code>CREATE INDEX</code> statements of the dropped indexes.
+     */
+    public static List<String> dropIndexes(Connection connection, String table) throws SQLException {
+        List<String> names = new ArrayList<>();
+        List<String> statements = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT name, sql FROM sqlite_master WHERE type = 'index' AND tbl_name = ? AND sql IS NOT NULL")) {
+            statement.setString(1, table);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    names.add(result.getString("name"));
+                    statements.add(result.getString("sql"));
+                }
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (String name : names) {
+                statement.execute("DROP INDEX \"" + name + "\"");
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Creates the indexes dropped by {@link #dropIndexes(Connection, String)}.
+     *
+     * @param connection Writable connection to the database.
+     * @param statements <code>CREATE INDEX</code> statements of the indexes.
+     */
+    public static void createIndexes(Connection connection, List<String> statements) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Drops the triggers of a table created by the migrations, e.g. before a bulk load, which is much faster if the
+     * tables maintained by the triggers are computed once afterwards instead of row by row. Has to run in a
+     * transaction which recreates the triggers with {@link #createTriggers(Connection, String, List)} before it
+     * commits, so the schema never stays without them.
+     *
+     * @param connection Writable connection to the database.
+     * @param table      Name of the table.
+     * @return <code>CREATE TRIGGER</code> statements of the dropped triggers.
+     */
+    public static List<String> dropTriggers(Connection connection, String table) throws SQLException {
+        List<String> names = new ArrayList<>();
+        List<String> statements = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT name, sql FROM sqlite_master WHERE type = 'trigger' AND tbl_name = ?")) {
+            statement.setString(1, table);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    names.add(result.getString("name"));
+                    statements.add(result.getString("sql"));
+                }
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (String name : names) {
+                statement.execute("DROP TRIGGER \"" + name + "\"");
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Creates the triggers dropped by {@link #dropTriggers(Connection, String)} and computes the tables maintained by
+     * them again from all rows of the table, i.e. its search index and, for the treatments, the daily sums.
+     *
+     * @param connection Writable connection to the database.
+     * @param table      Name of the table.
+     * @param statements <code>CREATE TRIGGER</code> statements of the triggers.
+     */
+    public static void createTriggers(Connection connection, String table, List<String> statements)
+            throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : TRIGGER_TABLE_REBUILDS.getOrDefault(table, List.of())) {
+                statement.execute(sql);
+            }
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private static void apply(Connection connection, Migration migration) throws SQLException {
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : migration.statements()) {
+                statement.execute(sql);
+            }
+            statement.execute("PRAGMA user_version = " + migration.version());
+            connection.commit();
+            LOGGER.log(System.Logger.Level.DEBUG, "Datenbank migriert auf Version " + migration.version() + ": "
+                    + migration.description());
+        } catch (SQLException exception) {
+            connection.rollback();
+            throw exception;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+}
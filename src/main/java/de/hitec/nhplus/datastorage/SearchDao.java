@@ -0,0 +1,311 @@
+package de.hitec.nhplus.datastorage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Searches patients, caregivers and treatments in the full text indexes created by {@link SchemaMigrator}: patients by
+ * name and room number, caregivers by name and treatments by description and remark. Every term of the query matches
+ * the words starting with it, and all terms have to match, so <code>mül 2</code> finds patient Müller in room 204.
+ * Case and diacritics are ignored.
+ * <p>
+ * If a kind of objects has fewer hits than requested, the query is repeated with typos allowed: terms of at least
+ * four letters also match words differing by one letter inserted, deleted, replaced or swapped, terms of at least
+ * eight letters by two. To keep this fast, only indexed words with the same first letter are compared.
+ * <p>
+ * The index stores the prefixes of two and three letters of every word. Longer prefixes are expanded to the words
+ * starting with them by a {@link TermDictionary}, since FTS5 would merge the rows of all these words before returning
+ * the first hit. Patients and caregivers are ordered by relevance. Treatments are ordered newest first: ranking by
+ * relevance would have to score every matching treatment, while the newest ones are read from the index directly.
+ * Both keep a search in the range of milliseconds even for a million treatments.
+ */
+public class SearchDao {
+
+    /**
+     * Number of hits per kind returned by {@link #search(String)}.
+     */
+    public static final int DEFAULT_LIMIT = 10;
+
+    private static final int MAX_INDEXED_PREFIX_LENGTH = 3;
+    private static final int MAX_EXPANDED_TERMS = 64;
+    private static final int MIN_ONE_TYPO_LENGTH = 4;
+    private static final int MIN_TWO_TYPOS_LENGTH = 8;
+    private static final int MAX_SIMILAR_TERMS = 10;
+
+    private static final String SQL_SEARCH_PATIENTS =
+            "SELECT p.pid, p.surname || ', ' || p.firstname, 'Zimmer ' || p.roomnumber " +
+                    "FROM patient_search JOIN patient p ON p.pid = patient_search.rowid " +
+                    "WHERE patient_search MATCH ? ORDER BY patient_search.rank LIMIT ?";
+    private static final String SQL_SEARCH_CAREGIVERS =
+            "SELECT c.cid, c.surname || ', ' || c.firstname, c.phonenumber " +
+                    "FROM caregiver_search JOIN caregiver c ON c.cid = caregiver_search.rowid " +
+                    "WHERE caregiver_search MATCH ? ORDER BY caregiver_search.rank LIMIT ?";
+    private static final String SQL_SEARCH_TREATMENTS =
+            "SELECT t.tid, t.treatment_date || ' ' || t.description, IFNULL(p.surname || ', ' || p.firstname, '') " +
+                    "FROM treatment_search JOIN treatment_with_text t ON t.tid = treatment_search.rowid " +
+                    "LEFT JOIN patient p ON p.pid = t.pid " +
+                    "WHERE treatment_search MATCH ? ORDER BY treatment_search.rowid DESC LIMIT ?";
+
+    /**
+     * Full text index of one table: the query returning id, title and detail of the rows matching an FTS5 expression,
+     * limited by the second parameter, and the dictionary of the indexed words.
+     */
+    private record Index(SearchResult.Kind kind, String searchSql, TermDictionary dictionary) {
+    }
+
+    private final ConnectionManager connectionManager;
+    private final List<Index> indexes;
+
+    /**
+     * Creates a DAO searching with the given dictionaries, which have to be shared by all DAOs of the database.
+     *
+     * @param connectionManager Manager of the database connections.
+     * @param patientTerms      Dictionary of the patient index.
+     * @param caregiverTerms    Dictionary of the caregiver index.
+     * @param treatmentTerms    Dictionary of the treatment index.
+     */
+    public SearchDao(ConnectionManager connectionManager, TermDictionary patientTerms, TermDictionary caregiverTerms,
+                     TermDictionary treatmentTerms) {
+        this.connectionManager = connectionManager;
+        this.indexes = List.of(
+                new Index(SearchResult.Kind.PATIENT, SQL_SEARCH_PATIENTS, patientTerms),
+                new Index(SearchResult.Kind.CAREGIVER, SQL_SEARCH_CAREGIVERS, caregiverTerms),
+                new Index(SearchResult.Kind.TREATMENT, SQL_SEARCH_TREATMENTS, treatmentTerms));
+    }
+
+    /**
+     * Searches with the default number of hits per kind.
+     *
+     * @param query Words to search for, separated by blanks.
+     * @return Hits of the patients, caregivers and treatments, in this order.
+     */
+    public List<SearchResult> search(String query) throws SQLException {
+        return search(query, DEFAULT_LIMIT);
+    }
+
+    /**
+     * Searches patients, caregivers and treatments.
+     *
+     * @param query Words to search for, separated by blanks.
+     * @param limit Maximum number of hits per kind.
+     * @return Hits of the patients, caregivers and treatments, in this order; empty if the query has no words.
+     */
+    public List<SearchResult> search(String query, int limit) throws SQLException {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || limit < 1) {
+            return List.of();
+        }
+        return DaoMetrics.getInstance().measure(getClass().getSimpleName(), "search", () -> {
+            Connection reader = this.connectionManager.leaseReader();
+            try {
+                List<SearchResult> results = new ArrayList<>();
+                for (Index index : this.indexes) {
+                    results.addAll(search(reader, index, terms, limit));
+                }
+                return results;
+            } finally {
+                this.connectionManager.release(reader);
+            }
+        });
+    }
+
+    /**
+     * Reads the dictionaries of the indexes, which the first search would do otherwise. Takes up to a second for a
+     * million treatments, so it should be called in the background, e.g. when a search field is shown.
+     */
+    public void loadDictionaries() throws SQLException {
+        DaoMetrics.getInstance().measure(getClass().getSimpleName(), "loadDictionaries", () -> {
+            Connection reader = this.connectionManager.leaseReader();
+            try {
+                for (Index index : this.indexes) {
+                    index.dictionary().load(reader);
+                }
+                return null;
+            } finally {
+                this.connectionManager.release(reader);
+            }
+        });
+    }
+
+    /**
+     * Splits a text into the terms of the index: lower case words of letters and digits without diacritics, like the
+     * <code>unicode61</code> tokenizer of the full text index does.
+     *
+     * @param text Text to split.
+     * @return Terms of the text in their order.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+        for (String term : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private List<SearchResult> search(Connection connection, Index index, List<String> terms, int limit)
+            throws SQLException {
+        Map<Long, SearchResult> hits = new LinkedHashMap<>();
+        List<List<String>> alternatives = new ArrayList<>();
+        for (String term : terms) {
+            alternatives.add(expandPrefix(connection, index, term));
+        }
+        query(connection, index, alternatives, limit, hits);
+        if (hits.size() < limit) {
+            boolean similar = false;
+            for (int i = 0; i < terms.size(); i++) {
+                List<String> similarTerms = findSimilarTerms(connection, index, terms.get(i));
+                if (!similarTerms.isEmpty()) {
+                    alternatives.set(i, new ArrayList<>(alternatives.get(i)));
+                    alternatives.get(i).addAll(similarTerms);
+                    similar = true;
+                }
+            }
+            if (similar) {
+                query(connection, index, alternatives, limit, hits);
+            }
+        }
+        return new ArrayList<>(hits.values());
+    }
+
+    /**
+     * Returns the FTS5 strings matching the words starting with a term: the term as prefix query if the index stores
+     * prefixes of its length or too many words start with it, otherwise the words themselves.
+     */
+    private List<String> expandPrefix(Connection connection, Index index, String term) throws SQLException {
+        if (term.length() <= MAX_INDEXED_PREFIX_LENGTH) {
+            return List.of(quote(term) + '*');
+        }
+        List<String> words = index.dictionary().getTermsStartingWith(connection, term, MAX_EXPANDED_TERMS + 1);
+        if (words.size() > MAX_EXPANDED_TERMS) {
+            return List.of(quote(term) + '*');
+        }
+        return words.stream().map(SearchDao::quote).toList();
+    }
+
+    /**
+     * Runs the search of an index for the expression matching one of the alternatives of every term and adds hits
+     * not found yet until there are <code>limit</code> hits. Does nothing if a term has no alternative.
+     */
+    private void query(Connection connection, Index index, List<List<String>> alternatives, int limit,
+                       Map<Long, SearchResult> hits) throws SQLException {
+        StringBuilder expression = new StringBuilder();
+        for (List<String> termAlternatives : alternatives) {
+            if (termAlternatives.isEmpty()) {
+                return;
+            }
+            expression.append(expression.isEmpty() ? "(" : " AND (")
+                    .append(String.join(" OR ", termAlternatives))
+                    .append(')');
+        }
+        PreparedStatement statement = prepare(connection, index.searchSql());
+        statement.setString(1, expression.toString());
+        statement.setInt(2, limit + hits.size());
+        try (ResultSet result = statement.executeQuery()) {
+            while (result.next() && hits.size() < limit) {
+                long id = result.getLong(1);
+                hits.putIfAbsent(id, new SearchResult(index.kind(), id, result.getString(2), result.getString(3)));
+            }
+        }
+    }
+
+    /**
+     * Finds the indexed words within the allowed number of typos of a term, as FTS5 strings. A word also matches if its
+     * beginning is that close to the term, as the term may be a word still being typed. Words starting with the term
+     * are left out, as they are matched by the prefix already.
+     */
+    private List<String> findSimilarTerms(Connection connection, Index index, String term) throws SQLException {
+        int maxDistance = term.length() >= MIN_TWO_TYPOS_LENGTH ? 2 : term.length() >= MIN_ONE_TYPO_LENGTH ? 1 : 0;
+        if (maxDistance == 0) {
+            return List.of();
+        }
+        record Candidate(String word, int distance) {
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (String word : index.dictionary().getTermsStartingWith(connection, term.substring(0, 1),
+                Integer.MAX_VALUE)) {
+            if (word.startsWith(term)) {
+                continue;
+            }
+            int distance = getEditDistance(term, word, maxDistance);
+            if (word.length() > term.length()) {
+                distance = Math.min(distance, getEditDistance(term, word.substring(0, term.length()), maxDistance));
+            }
+            if (distance <= maxDistance) {
+                candidates.add(new Candidate(word, distance));
+            }
+        }
+        return candidates.stream()
+                .sorted(Comparator.comparingInt(Candidate::distance))
+                .limit(MAX_SIMILAR_TERMS)
+                .map(candidate -> quote(candidate.word()))
+                .toList();
+    }
+
+    /**
+     * Computes the number of letters to insert, delete, replace or swap with their neighbour to turn one word into the
+     * other (optimal string alignment distance). Stops as soon as the distance exceeds <code>max</code>.
+     *
+     * @return Distance of the words, or <code>max + 1</code> if it exceeds <code>max</code>.
+     */
+    static int getEditDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int[] beforePrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMinimum = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, beforePrevious[j - 2] + 1);
+                }
+                current[j] = distance;
+                rowMinimum = Math.min(rowMinimum, distance);
+            }
+            if (rowMinimum > max) {
+                return max + 1;
+            }
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+
+    /**
+     * Quotes a term as FTS5 string, which cannot be mistaken for an operator.
+     */
+    private static String quote(String term) {
+        return '"' + term.replace("\"", "\"\"") + '"';
+    }
+
+    private static PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        DaoMetrics.recordStatement(sql);
+        return StatementCache.forConnection(connection).prepare(sql);
+    }
+}
@@ -0,0 +1,36 @@
+package de.hitec.nhplus.datastorage;
+
+/**
+ * Hit of a search by {@link SearchDao}.
+ *
+ * @param kind   Kind of the found object.
+ * @param id     Id of the found object, i.e. its pid, cid or tid.
+ * @param title  Short text of the object to show, e.g. the name of a patient.
+ * @param detail Additional text to tell the objects apart, e.g. the room number of a patient.
+ */
+public record SearchResult(Kind kind, long id, String title, String detail) {
+
+    /**
+     * Kind of a found object.
+     */
+    public enum Kind {
+        PATIENT("Patient"),
+        CAREGIVER("Pfleger"),
+        TREATMENT("Behandlung");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return this.label;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.kind.getLabel() + ": " + this.title + (this.detail.isEmpty() ? "" : " (" + this.detail + ")");
+    }
+}
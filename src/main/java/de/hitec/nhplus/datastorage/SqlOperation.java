@@ -0,0 +1,20 @@
+package de.hitec.nhplus.datastorage;
+
+import java.sql.SQLException;
+
+/**
+ * A unit of database work which may throw an <code>SQLException</code>.
+ *
+ * @param <R> Type of the result.
+ */
+@FunctionalInterface
+public interface SqlOperation<R> {
+
+    /**
+     * Executes the work.
+     *
+     * @return Result of the work, <code>null</code> if there is none.
+     * @throws SQLException If the database access fails.
+     */
+    R execute() throws SQLException;
+}
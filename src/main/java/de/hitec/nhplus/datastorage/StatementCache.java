@@ -0,0 +1,166 @@
+package de.hitec.nhplus.datastorage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the <code>PreparedStatement</code>s of one <code>Connection</code>, keyed by their SQL text. A cached
+ * statement is compiled once and handed out again for every later request of the same SQL, after its parameters
+ * have been cleared. The cache is bounded; when it is full, the least recently used statement is closed and removed.
+ * <p>
+ * Statements handed out by the cache belong to the cache and must not be closed by the caller. All statements of a
+ * connection are closed by {@link #close(Connection)}, which has to be called before the connection itself is closed.
+ */
+public class StatementCache {
+
+    /**
+     * Maximum number of statements kept per connection, unless another capacity is configured.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final Map<Connection, StatementCache> CACHES = new IdentityHashMap<>();
+    private static int capacity = DEFAULT_CAPACITY;
+
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private final Connection connection;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private StatementCache(Connection connection, int capacity) {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                StatementCache.this.evictions++;
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the statement cache of the given connection. The cache is created on first use.
+     *
+     * @param connection Connection whose statements are cached.
+     * @return <code>StatementCache</code> of the connection.
+     */
+    public static synchronized StatementCache forConnection(Connection connection) {
+        return CACHES.computeIfAbsent(connection, key -> new StatementCache(key, StatementCache.capacity));
+    }
+
+    /**
+     * Closes all cached statements of the given connection and discards its cache. The connection stays open.
+     *
+     * @param connection Connection whose statements should be closed.
+     */
+    public static void close(Connection connection) {
+        StatementCache cache;
+        synchronized (StatementCache.class) {
+            cache = CACHES.remove(connection);
+        }
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Sets the maximum number of statements cached per connection. Only caches created afterwards are affected.
+     *
+     * @param capacity Maximum number of statements per connection, at least 1.
+     */
+    public static synchronized void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+        }
+        StatementCache.capacity = capacity;
+    }
+
+    /**
+     * Returns a <code>PreparedStatement</code> for the given SQL. A cached statement is reused with cleared
+     * parameters, otherwise the SQL is compiled and the new statement is added to the cache.
+     *
+     * @param sql SQL text of the statement.
+     * @return Prepared statement owned by this cache.
+     * @throws SQLException If the SQL could not be compiled.
+     */
+    public synchronized PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = this.statements.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            this.hits++;
+            statement.clearParameters();
+            return statement;
+        }
+        this.misses++;
+        statement = this.connection.prepareStatement(sql);
+        this.statements.put(sql, statement);
+        return statement;
+    }
+
+    /**
+     * Closes and removes all cached statements.
+     */
+    public synchronized void clear() {
+        for (PreparedStatement statement : this.statements.values()) {
+            closeQuietly(statement);
+        }
+        this.statements.clear();
+    }
+
+    /**
+     * Returns the number of requests served by an already compiled statement.
+     *
+     * @return Number of cache hits.
+     */
+    public synchronized long getHitCount() {
+        return this.hits;
+    }
+
+    /**
+     * Returns the number of requests that had to compile a new statement.
+     *
+     * @return Number of cache misses.
+     */
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    /**
+     * Returns the number of statements closed because the cache was full.
+     *
+     * @return Number of evictions.
+     */
+    public synchronized long getEvictionCount() {
+        return this.evictions;
+    }
+
+    /**
+     * Returns the number of statements currently cached.
+     *
+     * @return Number of cached statements.
+     */
+    public synchronized int size() {
+        return this.statements.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StatementCache[size=" + this.statements.size() + ", hits=" + this.hits + ", misses=" + this.misses +
+                ", evictions=" + this.evictions + "]";
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package de.hitec.nhplus.datastorage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sorted set of the words in the full text index of one table, kept in memory for the {@link SearchDao}, which expands
+ * prefixes to the words starting with them and looks up words similar to misspelled terms. The vocabulary table of
+ * FTS5 counts the rows of every word it lists, which takes half a second for a million treatments, so the words are
+ * read from it only once and then kept up to date with the {@link DataChange}s of the table: the text of inserted and
+ * updated rows is read and split into words by the next lookup. Words of deleted rows stay in the set; a lookup may
+ * return them, but they match no row.
+ * <p>
+ * Changes are only recorded without locking, so a writer publishing a change never waits for a lookup.
+ */
+public class TermDictionary implements DataChangeNotifier.Listener {
+
+    private final String termsTable;
+    private final String textSql;
+    private final NavigableSet<String> terms = new TreeSet<>();
+    private final Set<Long> pendingKeys = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+
+    /**
+     * Creates a dictionary which is read on its first lookup.
+     *
+     * @param termsTable FTS5 vocabulary table of the index, e.g. <code>treatment_search_terms</code>.
+     * @param textSql    Query of the indexed columns of the row with the id given as parameter.
+     */
+    public TermDictionary(String termsTable, String textSql) {
+        this.termsTable = termsTable;
+        this.textSql = textSql;
+    }
+
+    /**
+     * Reads the words if they are not read yet and adds the words of the rows changed since.
+     *
+     * @param connection Connection to read the words with.
+     */
+    public synchronized void load(Connection connection) throws SQLException {
+        update(connection);
+    }
+
+    /**
+     * Returns the words starting with the given prefix, in alphabetical order.
+     *
+     * @param connection Connection to read the words with, if they are not read yet or have changed.
+     * @param prefix     Prefix of the words.
+     * @param limit      Maximum number of words.
+     * @return At most <code>limit</code> words; the prefix itself if it is a word.
+     */
+    public synchronized List<String> getTermsStartingWith(Connection connection, String prefix, int limit)
+            throws SQLException {
+        update(connection);
+        List<String> result = new ArrayList<>();
+        for (String term : this.terms.tailSet(prefix, true)) {
+            if (!term.startsWith(prefix) || result.size() == limit) {
+                break;
+            }
+            result.add(term);
+        }
+        return result;
+    }
+
+    /**
+     * Marks the dictionary to be read again by the next lookup, e.g. after the tables were changed without the DAOs.
+     */
+    public void clear() {
+        this.loaded = false;
+        this.pendingKeys.clear();
+    }
+
+    @Override
+    public void changed(DataChange change) {
+        switch (change.type()) {
+            case RELOADED -> clear();
+            case INSERTED, UPDATED -> this.pendingKeys.addAll(change.keys());
+            case DELETED -> {
+            }
+        }
+    }
+
+    /**
+     * Reads all words if the dictionary is not loaded, otherwise the words of the rows changed since the last lookup.
+     * Changes are published after their commit, so the rows of changes recorded before reading all words are already
+     * contained in the words read. A key is removed before its row is read, so a change recorded meanwhile is read
+     * again next time, and put back if the read fails.
+     */
+    private void update(Connection connection) throws SQLException {
+        if (!this.loaded) {
+            this.loaded = true;
+            this.pendingKeys.clear();
+            this.terms.clear();
+            String sql = "SELECT term FROM " + this.termsTable;
+            DaoMetrics.recordStatement(sql);
+            try (PreparedStatement statement = connection.prepareStatement(sql);
+                 ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    this.terms.add(result.getString(1));
+                }
+            } catch (SQLException exception) {
+                this.loaded = false;
+                throw exception;
+            }
+            return;
+        }
+        if (this.pendingKeys.isEmpty()) {
+            return;
+        }
+        DaoMetrics.recordStatement(this.textSql);
+        PreparedStatement statement = StatementCache.forConnection(connection).prepare(this.textSql);
+        for (Iterator<Long> iterator = this.pendingKeys.iterator(); iterator.hasNext(); ) {
+            long key = iterator.next();
+            iterator.remove();
+            statement.setLong(1, key);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    for (int column = 1; column <= result.getMetaData().getColumnCount(); column++) {
+                        this.terms.addAll(SearchDao.tokenize(result.getString(column)));
+                    }
+                }
+            } catch (SQLException exception) {
+                this.pendingKeys.add(key);
+                throw exception;
+            }
+        }
+    }
+}
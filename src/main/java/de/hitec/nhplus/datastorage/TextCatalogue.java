@@ -0,0 +1,118 @@
+package de.hitec.nhplus.datastorage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Catalogue of the descriptions and remarks of the treatments. Every distinct text is stored once in the table
+ * <code>treatment_text</code>, and the treatments reference it by id, see {@link SchemaMigrator}.
+ * <p>
+ * The catalogue keeps the most recently read texts by id, so the treatments read by a {@link TreatmentDao} share one
+ * <code>String</code> per text instead of holding a copy each. It is bounded; when it is full, the least recently used
+ * text is removed. Texts are never changed or deleted, so a cached text is never stale and needs no invalidation.
+ */
+public class TextCatalogue {
+
+    /**
+     * Maximum number of texts kept, unless another capacity is configured.
+     */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private static final String SQL_FIND = "SELECT id FROM treatment_text WHERE text = ?";
+    private static final String SQL_INSERT = "INSERT INTO treatment_text (text) VALUES (?) RETURNING id";
+
+    private final LinkedHashMap<Long, String> texts;
+
+    /**
+     * Creates a catalogue with the default capacity.
+     */
+    public TextCatalogue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a catalogue.
+     *
+     * @param capacity Maximum number of cached texts, at least 1.
+     */
+    public TextCatalogue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+        }
+        this.texts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached text with the given id.
+     *
+     * @param id Id of the text.
+     * @return The cached text, or <code>null</code> if it is not cached.
+     */
+    public synchronized String get(long id) {
+        return this.texts.get(id);
+    }
+
+    /**
+     * Caches a text read from the database, unless it is cached already.
+     *
+     * @param id   Id of the text.
+     * @param text Text read for the id.
+     * @return The cached instance of the text, which replaces the given one.
+     */
+    public synchronized String intern(long id, String text) {
+        String cached = this.texts.putIfAbsent(id, text);
+        return cached != null ? cached : text;
+    }
+
+    /**
+     * Returns the id of a text, adding it to the table <code>treatment_text</code> if it is not stored yet. Runs on
+     * the writer connection inside the write storing the id, so a new text is rolled back together with the write.
+     *
+     * @param writer Writer connection of the current write.
+     * @param text   Text to look up.
+     * @return Id of the text.
+     */
+    public long getId(Connection writer, String text) throws SQLException {
+        StatementCache statements = StatementCache.forConnection(writer);
+        DaoMetrics.recordStatement(SQL_FIND);
+        PreparedStatement find = statements.prepare(SQL_FIND);
+        find.setString(1, text);
+        try (ResultSet result = find.executeQuery()) {
+            if (result.next()) {
+                return result.getLong(1);
+            }
+        }
+        DaoMetrics.recordStatement(SQL_INSERT);
+        PreparedStatement insert = statements.prepare(SQL_INSERT);
+        insert.setString(1, text);
+        try (ResultSet result = insert.executeQuery()) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+
+    /**
+     * Removes all cached texts, e.g. after the database was replaced.
+     */
+    public synchronized void clear() {
+        this.texts.clear();
+    }
+
+    /**
+     * Returns the number of cached texts.
+     *
+     * @return Number of cached texts.
+     */
+    public synchronized int size() {
+        return this.texts.size();
+    }
+}
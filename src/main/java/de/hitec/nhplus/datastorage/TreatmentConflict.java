@@ -0,0 +1,38 @@
+package de.hitec.nhplus.datastorage;
+
+/**
+ * Two treatments of the same caregiver or the same patient overlapping in time, found by
+ * {@link TreatmentDao#findConflicts(TreatmentFilter, java.util.function.Consumer)}.
+ *
+ * @param kind      Whether the treatments share their caregiver or their patient.
+ * @param key       Cid of the caregiver or pid of the patient.
+ * @param date      Day of the treatments.
+ * @param firstTid  Tid of the treatment beginning first.
+ * @param secondTid Tid of the treatment beginning during the first one.
+ */
+public record TreatmentConflict(Kind kind, long key, String date, long firstTid, long secondTid) {
+
+    /**
+     * Resource booked twice by a conflict.
+     */
+    public enum Kind {
+        CAREGIVER("Pflegekraft"),
+        PATIENT("Patient");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return this.label;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.date + ": " + this.kind.getLabel() + " " + this.key + ", Behandlungen " + this.firstTid + " und "
+                + this.secondTid;
+    }
+}
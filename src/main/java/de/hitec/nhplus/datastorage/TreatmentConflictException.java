@@ -0,0 +1,64 @@
+package de.hitec.nhplus.datastorage;
+
+import de.hitec.nhplus.model.Treatment;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Thrown by {@link TreatmentDao} if a treatment to create or update overlaps other treatments of its caregiver or
+ * its patient on the same day. Nothing was written.
+ */
+public class TreatmentConflictException extends SQLException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of overlapping treatments listed in the message.
+     */
+    private static final int MAX_LISTED_CONFLICTS = 5;
+
+    /**
+     * Treatments are not serializable, so a deserialized exception only keeps them in its message.
+     */
+    private final transient List<Treatment> conflicts;
+
+    /**
+     * Creates an exception listing the overlapping treatments in its message.
+     *
+     * @param treatment Treatment which was to be written.
+     * @param conflicts Treatments overlapping it, ordered by begin.
+     */
+    public TreatmentConflictException(Treatment treatment, List<Treatment> conflicts) {
+        super(getMessage(treatment, conflicts));
+        this.conflicts = List.copyOf(conflicts);
+    }
+
+    /**
+     * Returns the treatments overlapping the treatment which was to be written.
+     *
+     * @return Overlapping treatments, ordered by begin; empty if the exception was deserialized.
+     */
+    public List<Treatment> getConflicts() {
+        return this.conflicts != null ? this.conflicts : List.of();
+    }
+
+    private static String getMessage(Treatment treatment, List<Treatment> conflicts) {
+        StringBuilder message = new StringBuilder("Die Behandlung am ").append(treatment.getDate())
+                .append(" überschneidet sich mit:");
+        for (Treatment conflict : conflicts.subList(0, Math.min(conflicts.size(), MAX_LISTED_CONFLICTS))) {
+            message.append('\n').append(conflict.getBegin()).append(" - ").append(conflict.getEnd()).append(' ')
+                    .append(conflict.getDescription());
+            if (conflict.getCid() == treatment.getCid()) {
+                message.append(" (gleiche Pflegekraft)");
+            }
+            if (conflict.getPid() == treatment.getPid()) {
+                message.append(" (gleicher Patient)");
+            }
+        }
+        if (conflicts.size() > MAX_LISTED_CONFLICTS) {
+            message.append("\nund ").append(conflicts.size() - MAX_LISTED_CONFLICTS).append(" weitere");
+        }
+        return message.toString();
+    }
+}
@@ -1,6 +1,5 @@
 package de.hitec.nhplus.datastorage;
 
-import de.hitec.nhplus.model.Caregiver;
 import de.hitec.nhplus.model.Treatment;
 import de.hitec.nhplus.utils.DateConverter;
 
@@ -8,7 +7,13 @@ import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Implements the Interface <code>DaoImp</code>. Overrides methods to generate specific <code>PreparedStatements</code>,
@@ -16,6 +21,41 @@ import java.util.List;
  */
 public class TreatmentDao extends DaoImp<Treatment> {
 
+    /**
+     * Selects all columns of a treatment together with the name and phone number of its caregiver. The description
+     * and remark are selected together with their ids in the {@link TextCatalogue}, see
+     * {@link #getInstanceFromResultSet(ResultSet)}. The caregiver is joined with a <code>LEFT JOIN</code>, so
+     * treatments of a deleted caregiver are still returned, with empty caregiver columns; they belong to the history
+     * of the patient and are not hidden like with an inner join.
+     */
+    static final String SELECT_WITH_CAREGIVER =
+            "SELECT t.tid, t.pid, t.treatment_date, t.begin, t.end, t.description_id, t.description, " +
+                    "t.remark_id, t.remark, t.cid, c.surname, c.firstname, c.phonenumber " +
+                    "FROM treatment_with_text t " +
+                    "LEFT JOIN caregiver c ON t.cid = c.cid";
+
+    /**
+     * Names of the columns of the rows returned by {@link #streamHistory(TreatmentFilter)}. The treatment columns keep
+     * the names of the table, so an export can be imported again.
+     */
+    public static final List<String> HISTORY_COLUMNS = List.of("tid", "treatment_date", "begin", "end",
+            "description", "remark", "pid", "patient_surname", "patient_firstname", "patient_dateOfBirth",
+            "patient_carelevel", "patient_roomnumber", "cid", "caregiver_surname", "caregiver_firstname",
+            "caregiver_phonenumber");
+
+    /**
+     * Selects the columns of {@link #HISTORY_COLUMNS}: a treatment together with its patient and caregiver.
+     */
+    private static final String SELECT_HISTORY =
+            "SELECT t.tid, t.treatment_date, t.begin, t.end, t.description, t.remark, " +
+                    "t.pid, p.surname, p.firstname, p.dateOfBirth, p.carelevel, p.roomnumber, " +
+                    "t.cid, c.surname, c.firstname, c.phonenumber " +
+                    "FROM treatment_with_text t " +
+                    "LEFT JOIN patient p ON t.pid = p.pid " +
+                    "LEFT JOIN caregiver c ON t.cid = c.cid";
+
+    private final TextCatalogue textCatalogue;
+
     /**
      * The constructor initiates an object of <code>TreatmentDao</code> and passes the connection to its super class.
      *
@@ -23,10 +63,67 @@ public class TreatmentDao extends DaoImp<Treatment> {
      */
     public TreatmentDao(Connection connection) {
         super(connection);
+        this.textCatalogue = new TextCatalogue();
+    }
+
+    /**
+     * The constructor initiates an object of <code>TreatmentDao</code> and passes the connection manager to its super class.
+     *
+     * @param connectionManager Object of <code>ConnectionManager</code> providing the connections to execute the
+     *                          SQL-statements.
+     */
+    public TreatmentDao(ConnectionManager connectionManager) {
+        this(connectionManager, new TextCatalogue());
+    }
+
+    /**
+     * The constructor initiates an object of <code>TreatmentDao</code> which shares the texts of the treatments read
+     * with all DAOs using the same catalogue.
+     *
+     * @param connectionManager Object of <code>ConnectionManager</code> providing the connections to execute the
+     *                          SQL-statements.
+     * @param textCatalogue     Catalogue of the descriptions and remarks.
+     */
+    public TreatmentDao(ConnectionManager connectionManager, TextCatalogue textCatalogue) {
+        super(connectionManager);
+        this.textCatalogue = textCatalogue;
+    }
+
+    /**
+     * Persists a treatment if it does not overlap other treatments of its caregiver or its patient on the same day.
+     * The check and the insert run under the write lock, so concurrent writes cannot create a conflict in between.
+     *
+     * @param treatment Treatment to persist.
+     * @throws TreatmentConflictException If the treatment overlaps other treatments; nothing is written.
+     */
+    @Override
+    public void create(Treatment treatment) throws SQLException {
+        withWriteConnection(() -> {
+            checkConflicts(treatment);
+            super.create(treatment);
+            return null;
+        });
     }
 
     /**
-     * Generates a <code>PreparedStatement</code> to persist the given object of <code>Treatment</code>.
+     * Updates a treatment if it does not overlap other treatments of its caregiver or its patient on the same day,
+     * like {@link #create(Treatment)}.
+     *
+     * @param treatment Treatment to update.
+     * @throws TreatmentConflictException If the treatment overlaps other treatments; nothing is written.
+     */
+    @Override
+    public void update(Treatment treatment) throws SQLException {
+        withWriteConnection(() -> {
+            checkConflicts(treatment);
+            super.update(treatment);
+            return null;
+        });
+    }
+
+    /**
+     * Generates a <code>PreparedStatement</code> to persist the given object of <code>Treatment</code>. The description
+     * and remark are stored by their ids in the {@link TextCatalogue}; new texts are added to the catalogue right away.
      *
      * @param treatment Object of <code>Treatment</code> to persist.
      * @return <code>PreparedStatement</code> to insert the given patient.
@@ -35,15 +132,17 @@ public class TreatmentDao extends DaoImp<Treatment> {
     protected PreparedStatement getCreateStatement(Treatment treatment) {
         PreparedStatement preparedStatement = null;
         try {
-            final String SQL = "INSERT INTO treatment (pid, treatment_date, begin, end, description, remark, cid) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?)";
-            preparedStatement = this.connection.prepareStatement(SQL);
+            long descriptionId = this.textCatalogue.getId(this.connection, treatment.getDescription());
+            long remarkId = this.textCatalogue.getId(this.connection, treatment.getRemarks());
+            final String SQL = "INSERT INTO treatment (pid, treatment_date, begin, end, description_id, remark_id, " +
+                    "cid) VALUES (?, ?, ?, ?, ?, ?, ?)";
+            preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setLong(1, treatment.getPid());
             preparedStatement.setString(2, treatment.getDate());
             preparedStatement.setString(3, treatment.getBegin());
             preparedStatement.setString(4, treatment.getEnd());
-            preparedStatement.setString(5, treatment.getDescription());
-            preparedStatement.setString(6, treatment.getRemarks());
+            preparedStatement.setLong(5, descriptionId);
+            preparedStatement.setLong(6, remarkId);
             preparedStatement.setLong(7, treatment.getCaregiverId());
         } catch (SQLException exception) {
             exception.printStackTrace();
@@ -61,8 +160,8 @@ public class TreatmentDao extends DaoImp<Treatment> {
     protected PreparedStatement getReadByIDStatement(long tid) {
         PreparedStatement preparedStatement = null;
         try {
-            final String SQL = "SELECT * FROM treatment WHERE tid = ?";
-            preparedStatement = this.connection.prepareStatement(SQL);
+            final String SQL = SELECT_WITH_CAREGIVER + " WHERE t.tid = ?";
+            preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setLong(1, tid);
         } catch (SQLException exception) {
             exception.printStackTrace();
@@ -71,49 +170,48 @@ public class TreatmentDao extends DaoImp<Treatment> {
     }
 
     /**
-     * Maps a <code>ResultSet</code> of one treatment to an object of <code>Treatment</code>.
+     * Maps the current row of a <code>ResultSet</code> to an object of <code>Treatment</code>. The row has to contain
+     * the columns of {@link #SELECT_WITH_CAREGIVER}, so the caregiver data is taken from the joined columns instead of
+     * querying the caregiver separately. The description and remark are taken from the {@link TextCatalogue} if it
+     * holds their ids, so treatments with the same texts share the same <code>String</code> instances.
      *
-     * @param result ResultSet with a single row. Columns will be mapped to an object of class <code>Treatment</code>.
+     * @param result ResultSet positioned on a single row. Columns will be mapped to an object of class <code>Treatment</code>.
      * @return Object of class <code>Treatment</code> with the data from the resultSet.
      */
     @Override
     protected Treatment getInstanceFromResultSet(ResultSet result) throws SQLException {
-        System.out.println("Geladene CaregiverID: " + result.getLong("cid"));
-        System.out.println("Geladener Nachname: " + result.getString("surname"));
-        System.out.println("Geladener Vorname: " + result.getString("firstname"));
-        System.out.println("Geladene Telefonnummer: " + result.getString("phonenumber"));
-
-
         LocalDate date = DateConverter.convertStringToLocalDate(result.getString(3));
         LocalTime begin = DateConverter.convertStringToLocalTime(result.getString(4));
         LocalTime end = DateConverter.convertStringToLocalTime(result.getString(5));
 
         return new Treatment(
-                result.getLong("tid"), result.getLong("pid"),
+                result.getLong(1), result.getLong(2),
                 date,
                 begin,
                 end,
-                result.getString("description"),
-                result.getString("remark"),
-                result.getLong("cid"),
-                result.getString("surname"),
-                result.getString("sirstname"),
-                result.getString("phonenumber")
+                getText(result, 6),
+                getText(result, 8),
+                result.getLong(10),
+                result.getString(11),
+                result.getString(12),
+                result.getString(13)
         );
-
     }
 
-    private Caregiver getCaregiverById(long caregiverId) {
-        CaregiverDao caregiverDao = DaoFactory.getDaoFactory().createCaregiverDAO();
-        try {
-            return caregiverDao.read(caregiverId); // Holt den Caregiver anhand der ID aus der Datenbank
-        } catch (SQLException exception) {
-            exception.printStackTrace();
-            return new Caregiver("Unbekannt", "", "", null); // Fallback bei Fehler
-        }
+    /**
+     * Returns the text of the current row from the {@link TextCatalogue}. Only a text not cached yet is read from the
+     * <code>ResultSet</code>.
+     *
+     * @param result ResultSet positioned on a single row.
+     * @param index  Index of the column with the id of the text; the text itself is in the next column.
+     * @return Shared instance of the text.
+     */
+    private String getText(ResultSet result, int index) throws SQLException {
+        long id = result.getLong(index);
+        String text = this.textCatalogue.get(id);
+        return text != null ? text : this.textCatalogue.intern(id, result.getString(index + 1));
     }
 
-
     /**
      * Generates a <code>PreparedStatement</code> to query all treatments.
      *
@@ -122,20 +220,16 @@ public class TreatmentDao extends DaoImp<Treatment> {
     @Override
     protected PreparedStatement getReadAllStatement() {
         try {
-            final String SQL = "SELECT t.tid, t.pid, t.treatment_date, t.begin, t.end, t.description, t.remark, t.cid, c.surname, c.firstname, c.phonenumber " +
-                    "FROM treatment t " +
-                    "INNER JOIN caregiver c ON t.cid = c.cid";
-            return this.connection.prepareStatement(SQL);
+            return this.prepareStatement(SELECT_WITH_CAREGIVER);
         } catch (SQLException exception) {
             exception.printStackTrace();
             return null;
         }
     }
 
-
     /**
      * Maps a <code>ResultSet</code> of all treatments to an <code>ArrayList</code> with objects of class
-     * <code>Treatment</code>.
+     * <code>Treatment</code>. All rows are mapped in a single pass over the result, no further queries are executed.
      *
      * @param result ResultSet with all rows. The columns will be mapped to objects of class <code>Treatment</code>.
      * @return <code>ArrayList</code> with objects of class <code>Treatment</code> of all rows in the
@@ -145,48 +239,489 @@ public class TreatmentDao extends DaoImp<Treatment> {
     protected ArrayList<Treatment> getListFromResultSet(ResultSet result) throws SQLException {
         ArrayList<Treatment> list = new ArrayList<>();
         while (result.next()) {
-            LocalDate date = DateConverter.convertStringToLocalDate(result.getString(3));
-            LocalTime begin = DateConverter.convertStringToLocalTime(result.getString(4));
-            LocalTime end = DateConverter.convertStringToLocalTime(result.getString(5));
-            long caregiverId = result.getLong("cid");
-            Caregiver caregiver = getCaregiverById(caregiverId);
-
-            Treatment treatment = new Treatment(
-                    result.getLong("tid"), result.getLong("pid"),
-                    date,
-                    begin,
-                    end,
-                    result.getString("description"),
-                    result.getString("remark"),
-                    caregiverId, // Wird gesetzt, aber nicht in der UI angezeigt
-                    caregiver.getSurname(),
-                    caregiver.getFirstName(),
-                    caregiver.getPhoneNumber() // Pflegekraft-Daten hinzufügen
-            );
-            list.add(treatment);
+            list.add(getInstanceFromResultSet(result));
         }
         return list;
     }
 
+    /**
+     * Generates a <code>PreparedStatement</code> to query all treatments matching the given filter. Only the criteria
+     * set in the filter are added to the <code>WHERE</code> clause.
+     *
+     * @param filter Criteria the treatments have to match.
+     * @return <code>PreparedStatement</code> to query the matching treatments.
+     */
+    private PreparedStatement getReadByFilterStatement(TreatmentFilter filter) {
+        PreparedStatement preparedStatement = null;
+        try {
+            List<String> conditions = getFilterConditions(filter);
+            final String SQL = conditions.isEmpty()
+                    ? SELECT_WITH_CAREGIVER
+                    : SELECT_WITH_CAREGIVER + " WHERE " + String.join(" AND ", conditions);
+            preparedStatement = this.prepareStatement(SQL);
+            setFilterParameters(preparedStatement, filter, 1);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return preparedStatement;
+    }
+
+    /**
+     * Generates a <code>PreparedStatement</code> to query the next page of treatments matching the given filter, ordered
+     * by tid. The page starts behind the given tid (keyset pagination), so SQLite seeks directly to the first row of
+     * the page by the primary key instead of skipping all previous rows as with <code>OFFSET</code>.
+     *
+     * @param filter   Criteria the treatments have to match.
+     * @param afterTid Tid of the last treatment of the previous page, or 0 for the first page.
+     * @param limit    Maximum number of treatments of the page.
+     * @return <code>PreparedStatement</code> to query the page.
+     */
+    private PreparedStatement getReadPageStatement(TreatmentFilter filter, long afterTid, int limit) {
+        PreparedStatement preparedStatement = null;
+        try {
+            List<String> conditions = getFilterConditions(filter);
+            conditions.add("t.tid > ?");
+            final String SQL = SELECT_WITH_CAREGIVER + " WHERE " + String.join(" AND ", conditions) +
+                    " ORDER BY t.tid LIMIT ?";
+            preparedStatement = this.prepareStatement(SQL);
+            int index = setFilterParameters(preparedStatement, filter, 1);
+            preparedStatement.setLong(index++, afterTid);
+            preparedStatement.setInt(index, limit);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return preparedStatement;
+    }
 
     /**
-     * Generates a <code>PreparedStatement</code> to query all treatments of a patient with a given patient id (pid).
+     * Generates a <code>PreparedStatement</code> to query the next page of treatments matching the given filter, ordered
+     * by treatment date and tid. The page starts behind the given date and tid (keyset pagination), which is served by
+     * the index on the treatment date.
      *
-     * @param pid Patient id to query all treatments referencing this id.
-     * @return <code>PreparedStatement</code> to query all treatments of the given patient id (pid).
+     * @param filter    Criteria the treatments have to match.
+     * @param afterDate Treatment date of the last treatment of the previous page, or <code>null</code> for the first page.
+     * @param afterTid  Tid of the last treatment of the previous page; ignored for the first page.
+     * @param limit     Maximum number of treatments of the page.
+     * @return <code>PreparedStatement</code> to query the page.
+     */
+    private PreparedStatement getReadPageByDateStatement(TreatmentFilter filter, LocalDate afterDate, long afterTid,
+                                                         int limit) {
+        PreparedStatement preparedStatement = null;
+        try {
+            List<String> conditions = getFilterConditions(filter);
+            if (afterDate != null) {
+                conditions.add("(t.treatment_date, t.tid) > (?, ?)");
+            }
+            final String SQL = SELECT_WITH_CAREGIVER +
+                    (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions)) +
+                    " ORDER BY t.treatment_date, t.tid LIMIT ?";
+            preparedStatement = this.prepareStatement(SQL);
+            int index = setFilterParameters(preparedStatement, filter, 1);
+            if (afterDate != null) {
+                preparedStatement.setString(index++, DateConverter.convertLocalDateToString(afterDate));
+                preparedStatement.setLong(index++, afterTid);
+            }
+            preparedStatement.setInt(index, limit);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return preparedStatement;
+    }
+
+    /**
+     * Generates a <code>PreparedStatement</code> to query the tids of all treatments matching the given filter,
+     * ordered by tid.
+     *
+     * @param filter Criteria the treatments have to match.
+     * @return <code>PreparedStatement</code> to query the tids.
+     */
+    private PreparedStatement getReadTidsStatement(TreatmentFilter filter) {
+        PreparedStatement preparedStatement = null;
+        try {
+            List<String> conditions = getFilterConditions(filter);
+            final String SQL = "SELECT t.tid FROM treatment t" +
+                    (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions)) +
+                    " ORDER BY t.tid";
+            preparedStatement = this.prepareStatement(SQL);
+            setFilterParameters(preparedStatement, filter, 1);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return preparedStatement;
+    }
+
+    /**
+     * Generates a <code>PreparedStatement</code> to query the treatments matching the given filter together with their
+     * patient and caregiver, ordered by date and tid.
+     *
+     * @param filter Criteria the treatments have to match.
+     * @return <code>PreparedStatement</code> to query the history.
+     */
+    private PreparedStatement getReadHistoryStatement(TreatmentFilter filter) {
+        PreparedStatement preparedStatement = null;
+        try {
+            List<String> conditions = getFilterConditions(filter);
+            final String SQL = (conditions.isEmpty()
+                    ? SELECT_HISTORY
+                    : SELECT_HISTORY + " WHERE " + String.join(" AND ", conditions)) +
+                    " ORDER BY t.treatment_date, t.tid";
+            preparedStatement = this.prepareStatement(SQL);
+            setFilterParameters(preparedStatement, filter, 1);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return preparedStatement;
+    }
+
+    /**
+     * Generates a <code>PreparedStatement</code> to count the treatments matching the given filter.
+     *
+     * @param filter Criteria the treatments have to match.
+     * @return <code>PreparedStatement</code> to count the treatments.
+     */
+    private PreparedStatement getCountByFilterStatement(TreatmentFilter filter) {
+        PreparedStatement preparedStatement = null;
+        try {
+            List<String> conditions = getFilterConditions(filter);
+            final String SQL = conditions.isEmpty()
+                    ? "SELECT COUNT(*) FROM treatment t"
+                    : "SELECT COUNT(*) FROM treatment t WHERE " + String.join(" AND ", conditions);
+            preparedStatement = this.prepareStatement(SQL);
+            setFilterParameters(preparedStatement, filter, 1);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return preparedStatement;
+    }
+
+    /**
+     * Generates a <code>PreparedStatement</code> to query the treatments of the same day overlapping the given
+     * treatment and sharing its caregiver or its patient. Times are stored as <code>HH:mm</code>, so they compare
+     * as text. The treatments of the caregiver and of the patient on that day are looked up in the indexes on caregiver
+     * and date and on patient and date, so only these few treatments are read, however long the history is.
+     *
+     * @param treatment Treatment to check; itself is excluded by its tid.
+     * @return <code>PreparedStatement</code> to query the overlapping treatments.
      */
-    private PreparedStatement getReadAllTreatmentsOfOnePatientByPid(long pid) {
+    private PreparedStatement getReadConflictsStatement(Treatment treatment) {
         PreparedStatement preparedStatement = null;
         try {
-            final String SQL = "SELECT * FROM treatment WHERE pid = ?";
-            preparedStatement = this.connection.prepareStatement(SQL);
-            preparedStatement.setLong(1, pid);
+            final String SQL = SELECT_WITH_CAREGIVER +
+                    " WHERE t.tid IN (" +
+                    "SELECT tid FROM treatment WHERE cid = ? AND treatment_date = ? " +
+                    "UNION SELECT tid FROM treatment WHERE pid = ? AND treatment_date = ?) " +
+                    "AND t.tid <> ? AND t.begin < ? AND t.end > ? ORDER BY t.begin";
+            preparedStatement = this.prepareStatement(SQL);
+            preparedStatement.setLong(1, treatment.getCid());
+            preparedStatement.setString(2, treatment.getDate());
+            preparedStatement.setLong(3, treatment.getPid());
+            preparedStatement.setString(4, treatment.getDate());
+            preparedStatement.setLong(5, treatment.getTid());
+            preparedStatement.setString(6, treatment.getEnd());
+            preparedStatement.setString(7, treatment.getBegin());
         } catch (SQLException exception) {
             exception.printStackTrace();
         }
         return preparedStatement;
     }
 
+    /**
+     * Generates a <code>PreparedStatement</code> to query the times of the treatments matching the given filter,
+     * ordered by date and begin, for {@link #findConflicts(TreatmentFilter)}.
+     *
+     * @param filter Criteria the treatments have to match.
+     * @return <code>PreparedStatement</code> to query tid, pid, cid, date, begin and end of the treatments.
+     */
+    private PreparedStatement getReadScheduleStatement(TreatmentFilter filter) {
+        PreparedStatement preparedStatement = null;
+        try {
+            List<String> conditions = getFilterConditions(filter);
+            final String SQL = "SELECT t.tid, t.pid, t.cid, t.treatment_date, t.begin, t.end FROM treatment t" +
+                    (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions)) +
+                    " ORDER BY t.treatment_date, t.begin, t.tid";
+            preparedStatement = this.prepareStatement(SQL);
+            setFilterParameters(preparedStatement, filter, 1);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return preparedStatement;
+    }
+
+    /**
+     * Returns the SQL conditions for the criteria set in the given filter. The parameters of the conditions are set
+     * by {@link #setFilterParameters(PreparedStatement, TreatmentFilter, int)} in the same order.
+     *
+     * @param filter Criteria the treatments have to match.
+     * @return Modifiable list of conditions, empty if the filter has no criteria.
+     */
+    private static List<String> getFilterConditions(TreatmentFilter filter) {
+        List<String> conditions = new ArrayList<>();
+        if (filter.getPid() != null) {
+            conditions.add("t.pid = ?");
+        }
+        if (filter.getCid() != null) {
+            conditions.add("t.cid = ?");
+        }
+        if (filter.getFrom() != null) {
+            conditions.add("t.treatment_date >= ?");
+        }
+        if (filter.getTo() != null) {
+            conditions.add("t.treatment_date <= ?");
+        }
+        return conditions;
+    }
+
+    /**
+     * Sets the parameters of the conditions returned by {@link #getFilterConditions(TreatmentFilter)}.
+     *
+     * @param preparedStatement Statement containing the conditions.
+     * @param filter            Criteria the treatments have to match.
+     * @param index             Index of the first parameter of the conditions.
+     * @return Index of the first parameter behind the conditions.
+     */
+    private static int setFilterParameters(PreparedStatement preparedStatement, TreatmentFilter filter, int index)
+            throws SQLException {
+        if (filter.getPid() != null) {
+            preparedStatement.setLong(index++, filter.getPid());
+        }
+        if (filter.getCid() != null) {
+            preparedStatement.setLong(index++, filter.getCid());
+        }
+        if (filter.getFrom() != null) {
+            preparedStatement.setString(index++, DateConverter.convertLocalDateToString(filter.getFrom()));
+        }
+        if (filter.getTo() != null) {
+            preparedStatement.setString(index++, DateConverter.convertLocalDateToString(filter.getTo()));
+        }
+        return index;
+    }
+
+    /**
+     * Queries all treatments matching the given filter and maps the results to an <code>ArrayList</code> with
+     * objects of class <code>Treatment</code>. The filter is evaluated by SQLite, only matching rows are read.
+     *
+     * @param filter Criteria the treatments have to match.
+     * @return <code>ArrayList</code> with objects of class <code>Treatment</code> of all matching rows.
+     */
+    public List<Treatment> readByFilter(TreatmentFilter filter) throws SQLException {
+        return measure("readByFilter", () -> queryByFilter(filter));
+    }
+
+    /**
+     * Queries the treatments matching the given filter without recording an operation in {@link DaoMetrics}, so the
+     * public methods reading by a filter are recorded once, under their own name.
+     *
+     * @param filter Criteria the treatments have to match.
+     * @return Treatments of all matching rows.
+     */
+    private List<Treatment> queryByFilter(TreatmentFilter filter) throws SQLException {
+        return withReadConnection(() -> {
+            try (ResultSet result = getReadByFilterStatement(filter).executeQuery()) {
+                return getListFromResultSet(result);
+            }
+        });
+    }
+
+    /**
+     * Returns the treatments matching the given filter as a lazy stream, like {@link #stream()}. The stream holds a
+     * database cursor and has to be closed.
+     *
+     * @param filter Criteria the treatments have to match.
+     * @return Lazy stream of the matching treatments.
+     * @throws SQLException If the query could not be started.
+     */
+    public Stream<Treatment> streamByFilter(TreatmentFilter filter) throws SQLException {
+        return measure("streamByFilter", () -> stream(() -> getReadByFilterStatement(filter)));
+    }
+
+    /**
+     * Returns the treatments matching the given filter together with their patient and caregiver as a lazy stream of
+     * rows, ordered by date and tid. Every row holds the values of {@link #HISTORY_COLUMNS} as text, without mapping
+     * them to objects, e.g. to export them. The stream holds a database cursor and has to be closed.
+     *
+     * @param filter Criteria the treatments have to match.
+     * @return Lazy stream of the matching rows; a column without value, e.g. of a deleted caregiver, is
+     * <code>null</code>.
+     * @throws SQLException If the query could not be started.
+     */
+    public Stream<String[]> streamHistory(TreatmentFilter filter) throws SQLException {
+        return measure("streamHistory", () -> stream(() -> getReadHistoryStatement(filter), result -> {
+            String[] row = new String[HISTORY_COLUMNS.size()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = result.getString(i + 1);
+            }
+            return row;
+        }));
+    }
+
+    /**
+     * Counts the treatments matching the given filter.
+     *
+     * @param filter Criteria the treatments have to match.
+     * @return Number of matching treatments.
+     */
+    public long countByFilter(TreatmentFilter filter) throws SQLException {
+        return measure("countByFilter", () -> withReadConnection(() -> {
+            try (ResultSet result = getCountByFilterStatement(filter).executeQuery()) {
+                return result.next() ? result.getLong(1) : 0L;
+            }
+        }));
+    }
+
+    /**
+     * Queries one page of treatments ordered by tid. To read all treatments page by page, pass the tid of the last
+     * treatment of a page as <code>afterTid</code> of the next call, starting with 0.
+     *
+     * @param afterTid Tid of the last treatment of the previous page, or 0 for the first page.
+     * @param limit    Maximum number of treatments of the page.
+     * @return <code>ArrayList</code> with at most <code>limit</code> objects of class <code>Treatment</code>; empty
+     * behind the last page.
+     */
+    public List<Treatment> readPage(long afterTid, int limit) throws SQLException {
+        return readPage(TreatmentFilter.all(), afterTid, limit);
+    }
+
+    /**
+     * Queries one page of the treatments matching the given filter, ordered by tid.
+     *
+     * @param filter   Criteria the treatments have to match.
+     * @param afterTid Tid of the last treatment of the previous page, or 0 for the first page.
+     * @param limit    Maximum number of treatments of the page.
+     * @return <code>ArrayList</code> with at most <code>limit</code> objects of class <code>Treatment</code>; empty
+     * behind the last page.
+     */
+    public List<Treatment> readPage(TreatmentFilter filter, long afterTid, int limit) throws SQLException {
+        return measure("readPage", () -> withReadConnection(() -> {
+            try (ResultSet result = getReadPageStatement(filter, afterTid, limit).executeQuery()) {
+                return getListFromResultSet(result);
+            }
+        }));
+    }
+
+    /**
+     * Queries one page of the treatments matching the given filter, ordered by treatment date and tid. To read the
+     * next page, pass the date and tid of the last treatment of a page, starting with <code>null</code> and 0.
+     *
+     * @param filter    Criteria the treatments have to match.
+     * @param afterDate Treatment date of the last treatment of the previous page, or <code>null</code> for the first page.
+     * @param afterTid  Tid of the last treatment of the previous page; ignored for the first page.
+     * @param limit     Maximum number of treatments of the page.
+     * @return <code>ArrayList</code> with at most <code>limit</code> objects of class <code>Treatment</code>; empty
+     * behind the last page.
+     */
+    public List<Treatment> readPageByDate(TreatmentFilter filter, LocalDate afterDate, long afterTid, int limit)
+            throws SQLException {
+        return measure("readPageByDate", () -> withReadConnection(() -> {
+            try (ResultSet result = getReadPageByDateStatement(filter, afterDate, afterTid, limit).executeQuery()) {
+                return getListFromResultSet(result);
+            }
+        }));
+    }
+
+    /**
+     * Queries the tids of all treatments matching the given filter in ascending order. At eight bytes per treatment
+     * this is small enough to keep in memory even for long histories and allows addressing every page of
+     * {@link #readPage(TreatmentFilter, long, int)} directly.
+     *
+     * @param filter Criteria the treatments have to match.
+     * @return Array with the tids of all matching treatments.
+     */
+    public long[] readTids(TreatmentFilter filter) throws SQLException {
+        return measure("readTids", () -> withReadConnection(() -> {
+            try (ResultSet result = getReadTidsStatement(filter).executeQuery()) {
+                long[] tids = new long[256];
+                int count = 0;
+                while (result.next()) {
+                    if (count == tids.length) {
+                        tids = Arrays.copyOf(tids, count * 2);
+                    }
+                    tids[count++] = result.getLong(1);
+                }
+                return Arrays.copyOf(tids, count);
+            }
+        }));
+    }
+
+    /**
+     * Queries the treatments of the same day which overlap the given treatment in time and share its caregiver or its
+     * patient. Treatments touching each other, i.e. one ending when the other begins, do not overlap.
+     *
+     * @param treatment Treatment to check, either new or persisted; it does not conflict with itself.
+     * @return Overlapping treatments ordered by begin; empty if there is no conflict.
+     */
+    public List<Treatment> readConflicts(Treatment treatment) throws SQLException {
+        return measure("readConflicts", () -> withReadConnection(() -> {
+            try (ResultSet result = getReadConflictsStatement(treatment).executeQuery()) {
+                return getListFromResultSet(result);
+            }
+        }));
+    }
+
+    /**
+     * Finds all pairs of overlapping treatments of the same caregiver or the same patient among the treatments
+     * matching the given filter, in a single pass over the treatments ordered by date and begin. For every caregiver
+     * and patient the treatments of the current day which have not ended yet are kept; a treatment conflicts with all
+     * of them that are still running when it begins. Only these few treatments are held in memory and the conflicts
+     * are passed on as they are found, so the whole history can be checked, e.g. after an import, which does not check
+     * conflicts.
+     *
+     * @param filter   Criteria the treatments have to match.
+     * @param consumer Receives the conflicts ordered by date and begin of the later treatment.
+     * @return Number of conflicts found.
+     */
+    public long findConflicts(TreatmentFilter filter, Consumer<TreatmentConflict> consumer) throws SQLException {
+        return measure("findConflicts", () -> {
+            long[] count = new long[1];
+            Consumer<TreatmentConflict> counter = conflict -> {
+                count[0]++;
+                consumer.accept(conflict);
+            };
+            Map<Long, List<RunningTreatment>> runningByCaregiver = new HashMap<>();
+            Map<Long, List<RunningTreatment>> runningByPatient = new HashMap<>();
+            String currentDate = null;
+            try (Stream<String[]> rows = stream(() -> getReadScheduleStatement(filter), result -> new String[]{
+                    result.getString(1), result.getString(2), result.getString(3), result.getString(4),
+                    result.getString(5), result.getString(6)})) {
+                for (Iterator<String[]> iterator = rows.iterator(); iterator.hasNext(); ) {
+                    String[] row = iterator.next();
+                    if (!row[3].equals(currentDate)) {
+                        runningByCaregiver.clear();
+                        runningByPatient.clear();
+                        currentDate = row[3];
+                    }
+                    RunningTreatment treatment = new RunningTreatment(Long.parseLong(row[0]), row[5]);
+                    addConflicts(runningByCaregiver, TreatmentConflict.Kind.CAREGIVER, Long.parseLong(row[2]),
+                            currentDate, row[4], treatment, counter);
+                    addConflicts(runningByPatient, TreatmentConflict.Kind.PATIENT, Long.parseLong(row[1]),
+                            currentDate, row[4], treatment, counter);
+                }
+            }
+            return count[0];
+        });
+    }
+
+    /**
+     * Treatment of the current day which has begun, with the time it ends.
+     */
+    private record RunningTreatment(long tid, String end) {
+    }
+
+    /**
+     * Adds the conflicts of a treatment with the running treatments of its caregiver or patient and adds the
+     * treatment to them. Treatments ended before it begins are removed first; as the treatments arrive ordered by
+     * begin, they cannot overlap any later treatment either.
+     */
+    private static void addConflicts(Map<Long, List<RunningTreatment>> runningByKey, TreatmentConflict.Kind kind,
+                                     long key, String date, String begin, RunningTreatment treatment,
+                                     Consumer<TreatmentConflict> conflicts) {
+        List<RunningTreatment> running = runningByKey.computeIfAbsent(key, k -> new ArrayList<>());
+        running.removeIf(other -> other.end().compareTo(begin) <= 0);
+        for (RunningTreatment other : running) {
+            conflicts.accept(new TreatmentConflict(kind, key, date, other.tid(), treatment.tid()));
+        }
+        running.add(treatment);
+    }
+
     /**
      * Queries all treatments of a given patient id (pid) and maps the results to an <code>ArrayList</code> with
      * objects of class <code>Treatment</code>.
@@ -196,13 +731,12 @@ public class TreatmentDao extends DaoImp<Treatment> {
      * <code>ResultSet</code>.
      */
     public List<Treatment> readTreatmentsByPid(long pid) throws SQLException {
-        ResultSet result = getReadAllTreatmentsOfOnePatientByPid(pid).executeQuery();
-        return getListFromResultSet(result);
+        return measure("readTreatmentsByPid", () -> queryByFilter(TreatmentFilter.all().withPatient(pid)));
     }
 
     /**
      * Generates a <code>PreparedStatement</code> to update the given treatment, identified
-     * by the id of the treatment (tid).
+     * by the id of the treatment (tid). The texts are stored like in {@link #getCreateStatement(Treatment)}.
      *
      * @param treatment Treatment object to update.
      * @return <code>PreparedStatement</code> to update the given treatment.
@@ -211,23 +745,25 @@ public class TreatmentDao extends DaoImp<Treatment> {
     protected PreparedStatement getUpdateStatement(Treatment treatment) {
         PreparedStatement preparedStatement = null;
         try {
+            long descriptionId = this.textCatalogue.getId(this.connection, treatment.getDescription());
+            long remarkId = this.textCatalogue.getId(this.connection, treatment.getRemarks());
             final String SQL =
                     "UPDATE treatment SET " +
                             "pid = ?, " +
                             "treatment_date = ?, " +
                             "begin = ?, " +
                             "end = ?, " +
-                            "description = ?, " +
-                            "remark = ?, " +
+                            "description_id = ?, " +
+                            "remark_id = ?, " +
                             "cid = ? " +
                             "WHERE tid = ?";
-            preparedStatement = this.connection.prepareStatement(SQL);
+            preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setLong(1, treatment.getPid());
             preparedStatement.setString(2, treatment.getDate());
             preparedStatement.setString(3, treatment.getBegin());
             preparedStatement.setString(4, treatment.getEnd());
-            preparedStatement.setString(5, treatment.getDescription());
-            preparedStatement.setString(6, treatment.getRemarks());
+            preparedStatement.setLong(5, descriptionId);
+            preparedStatement.setLong(6, remarkId);
             preparedStatement.setLong(7, treatment.getCaregiverId());
             preparedStatement.setLong(8, treatment.getTid());
         } catch (SQLException exception) {
@@ -236,6 +772,16 @@ public class TreatmentDao extends DaoImp<Treatment> {
         return preparedStatement;
     }
 
+    /**
+     * Throws if the given treatment overlaps other treatments, see {@link #readConflicts(Treatment)}.
+     */
+    private void checkConflicts(Treatment treatment) throws SQLException {
+        List<Treatment> conflicts = readConflicts(treatment);
+        if (!conflicts.isEmpty()) {
+            throw new TreatmentConflictException(treatment, conflicts);
+        }
+    }
+
     /**
      * Generates a <code>PreparedStatement</code> to delete a treatment with the given id.
      *
@@ -248,7 +794,7 @@ public class TreatmentDao extends DaoImp<Treatment> {
         try {
             final String SQL =
                     "DELETE FROM treatment WHERE tid = ?";
-            preparedStatement = this.connection.prepareStatement(SQL);
+            preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setLong(1, tid);
         } catch (SQLException exception) {
             exception.printStackTrace();
@@ -0,0 +1,94 @@
+package de.hitec.nhplus.datastorage;
+
+import java.time.LocalDate;
+
+/**
+ * Immutable filter for treatment queries. Every criterion is optional; a filter without criteria matches all
+ * treatments. The criteria are evaluated by SQLite, see {@link TreatmentDao#readByFilter(TreatmentFilter)}.
+ */
+public final class TreatmentFilter {
+
+    private static final TreatmentFilter ALL = new TreatmentFilter(null, null, null, null);
+
+    private final Long pid;
+    private final Long cid;
+    private final LocalDate from;
+    private final LocalDate to;
+
+    private TreatmentFilter(Long pid, Long cid, LocalDate from, LocalDate to) {
+        this.pid = pid;
+        this.cid = cid;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Returns a filter matching all treatments.
+     *
+     * @return Filter without criteria.
+     */
+    public static TreatmentFilter all() {
+        return ALL;
+    }
+
+    /**
+     * Returns a copy of this filter restricted to the treatments of one patient.
+     *
+     * @param pid Patient id, or <code>null</code> for all patients.
+     * @return New filter.
+     */
+    public TreatmentFilter withPatient(Long pid) {
+        return new TreatmentFilter(pid, this.cid, this.from, this.to);
+    }
+
+    /**
+     * Returns a copy of this filter restricted to the treatments of one caregiver.
+     *
+     * @param cid Caregiver id, or <code>null</code> for all caregivers.
+     * @return New filter.
+     */
+    public TreatmentFilter withCaregiver(Long cid) {
+        return new TreatmentFilter(this.pid, cid, this.from, this.to);
+    }
+
+    /**
+     * Returns a copy of this filter restricted to treatments within a date range.
+     *
+     * @param from First day of the range (inclusive), or <code>null</code> for no lower bound.
+     * @param to   Last day of the range (inclusive), or <code>null</code> for no upper bound.
+     * @return New filter.
+     */
+    public TreatmentFilter withDateRange(LocalDate from, LocalDate to) {
+        return new TreatmentFilter(this.pid, this.cid, from, to);
+    }
+
+    public Long getPid() {
+        return this.pid;
+    }
+
+    public Long getCid() {
+        return this.cid;
+    }
+
+    public LocalDate getFrom() {
+        return this.from;
+    }
+
+    public LocalDate getTo() {
+        return this.to;
+    }
+
+    /**
+     * Returns whether the filter has no criteria and therefore matches all treatments.
+     *
+     * @return <code>true</code> if no criterion is set.
+     */
+    public boolean isEmpty() {
+        return this.pid == null && this.cid == null && this.from == null && this.to == null;
+    }
+
+    @Override
+    public String toString() {
+        return "TreatmentFilter[pid=" + this.pid + ", cid=" + this.cid + ", from=" + this.from + ", to=" + this.to + "]";
+    }
+}
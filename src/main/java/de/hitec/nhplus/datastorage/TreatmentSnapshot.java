@@ -0,0 +1,535 @@
+package de.hitec.nhplus.datastorage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copy of the treatment table in memory for reports, which scan many treatments but need only a few of their columns.
+ * The columns are held in primitive arrays with one entry per treatment in the order of the tid: the day as epoch
+ * day, begin and end as minute of the day, pid and cid, and the description as index into a dictionary of the
+ * distinct descriptions. A million treatments take about 36 MB, and a {@link Query} runs over the arrays in tight
+ * loops without creating an object per treatment, so it takes milliseconds where reading the treatments with the
+ * {@link TreatmentDao} takes seconds.
+ * <p>
+ * The snapshot is read completely by its first query and then kept up to date with the {@link DataChange}s of the
+ * treatments and of the patients, whose treatments are deleted with them by the database: the next query reads the
+ * changed treatments again and drops the deleted ones. Changes are only recorded when they are published, so a writer
+ * never waits for a query; queries run one after another.
+ */
+public class TreatmentSnapshot implements DataChangeNotifier.Listener {
+
+    /**
+     * Sum of treatments and their durations.
+     *
+     * @param treatments Number of treatments.
+     * @param minutes    Sum of the durations of the treatments in minutes.
+     */
+    public record Aggregate(long treatments, long minutes) {
+    }
+
+    /**
+     * Day of a deleted treatment, which is matched by no query. Deleted treatments are removed from the arrays once
+     * they make up a quarter of them.
+     */
+    private static final int DELETED = Integer.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final String SELECT_COLUMNS = "SELECT tid, " +
+            "CAST(julianday(treatment_date) - 2440587.5 AS INTEGER), " +
+            "CAST(substr(begin, 1, 2) AS INTEGER) * 60 + CAST(substr(begin, 4, 2) AS INTEGER), " +
+            "CAST(substr(end, 1, 2) AS INTEGER) * 60 + CAST(substr(end, 4, 2) AS INTEGER), pid, cid, " +
+            "description_id, description FROM treatment_with_text ";
+    private static final String SQL_READ_ALL = SELECT_COLUMNS + "ORDER BY tid";
+    private static final String SQL_READ = SELECT_COLUMNS + "WHERE tid = ?";
+
+    private final ConnectionManager connectionManager;
+    private final Set<Long> pendingKeys = ConcurrentHashMap.newKeySet();
+    private final Set<Long> deletedPatients = ConcurrentHashMap.newKeySet();
+    private final DataChangeNotifier.Listener patientListener = change -> {
+        if (change.type() == DataChange.Type.DELETED) {
+            this.deletedPatients.addAll(change.keys());
+        }
+    };
+    private volatile boolean loaded;
+
+    private int size;
+    private int deleted;
+    private long[] tids = new long[0];
+    private int[] days = new int[0];
+    private short[] begins = new short[0];
+    private short[] ends = new short[0];
+    private long[] pids = new long[0];
+    private long[] cids = new long[0];
+    private int[] descriptionIds = new int[0];
+    private final List<String> descriptions = new ArrayList<>();
+    private final Map<String, Integer> descriptionIndex = new HashMap<>();
+    private final Map<Long, Integer> descriptionIndexByTextId = new HashMap<>();
+
+    /**
+     * Indexes of the rows selected by the running query, reused by all queries.
+     */
+    private int[] selection = new int[0];
+
+    /**
+     * Creates a snapshot which is read by its first query. It has to be registered as listener of the treatments and,
+     * with {@link #getPatientListener()}, of the patients.
+     *
+     * @param connectionManager Manager of the database connections.
+     */
+    public TreatmentSnapshot(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    /**
+     * Returns the listener of the patients, which drops the treatments of deleted patients. It is held by the
+     * snapshot, so it stays registered as long as the snapshot is used.
+     *
+     * @return Listener to register at the notifier of the patients.
+     */
+    public DataChangeNotifier.Listener getPatientListener() {
+        return this.patientListener;
+    }
+
+    /**
+     * Starts a query of all treatments, which is narrowed down by the methods of the query.
+     *
+     * @return New query.
+     */
+    public Query query() {
+        return new Query();
+    }
+
+    /**
+     * Reads the snapshot if it is not read yet, otherwise the treatments changed since the last query.
+     */
+    public synchronized void refresh() throws SQLException {
+        DaoMetrics.getInstance().measure(getClass().getSimpleName(), "refresh", () -> {
+            update();
+            return null;
+        });
+    }
+
+    /**
+     * Returns the number of treatments of the snapshot as of its last query.
+     *
+     * @return Number of treatments.
+     */
+    public synchronized int size() {
+        return this.size - this.deleted;
+    }
+
+    /**
+     * Marks the snapshot to be read completely by the next query, e.g. after the tables were changed without the DAOs.
+     */
+    public void clear() {
+        this.loaded = false;
+        this.pendingKeys.clear();
+        this.deletedPatients.clear();
+    }
+
+    @Override
+    public void changed(DataChange change) {
+        switch (change.type()) {
+            case RELOADED -> clear();
+            case INSERTED, UPDATED, DELETED -> this.pendingKeys.addAll(change.keys());
+        }
+    }
+
+    /**
+     * Reads all treatments if the snapshot is not loaded, otherwise applies the changes recorded since the last query.
+     * Changes are published after their commit, so the rows of changes recorded before reading all treatments are
+     * already contained in the rows read.
+     */
+    private void update() throws SQLException {
+        if (this.loaded && this.pendingKeys.isEmpty() && this.deletedPatients.isEmpty()) {
+            return;
+        }
+        Connection reader = this.connectionManager.leaseReader();
+        try {
+            if (!this.loaded) {
+                this.loaded = true;
+                this.pendingKeys.clear();
+                this.deletedPatients.clear();
+                try {
+                    readAll(reader);
+                } catch (SQLException exception) {
+                    this.loaded = false;
+                    throw exception;
+                }
+                return;
+            }
+            try {
+                removePatients();
+                readPending(reader);
+            } catch (SQLException exception) {
+                this.loaded = false;
+                throw exception;
+            }
+            if (this.deleted > this.size / 4) {
+                compact();
+            }
+        } finally {
+            this.connectionManager.release(reader);
+        }
+    }
+
+    private void readAll(Connection reader) throws SQLException {
+        this.size = 0;
+        this.deleted = 0;
+        this.descriptions.clear();
+        this.descriptionIndex.clear();
+        this.descriptionIndexByTextId.clear();
+        DaoMetrics.recordStatement(SQL_READ_ALL);
+        try (PreparedStatement statement = reader.prepareStatement(SQL_READ_ALL)) {
+            statement.setFetchSize(DaoImp.DEFAULT_FETCH_SIZE);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    ensureCapacity(this.size + 1);
+                    set(this.size++, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the changed treatments in the order of their tid. Treatments which are not found were deleted. New
+     * treatments have the highest tids, so they are appended. The keys are taken before the rows are read, so a change
+     * recorded meanwhile is read again next time; if a read fails, the caller reads all treatments next time instead.
+     */
+    private void readPending(Connection reader) throws SQLException {
+        if (this.pendingKeys.isEmpty()) {
+            return;
+        }
+        List<Long> keys = new ArrayList<>(this.pendingKeys);
+        this.pendingKeys.removeAll(keys);
+        keys.sort(null);
+        DaoMetrics.recordStatement(SQL_READ);
+        PreparedStatement statement = StatementCache.forConnection(reader).prepare(SQL_READ);
+        for (long tid : keys) {
+            int index = Arrays.binarySearch(this.tids, 0, this.size, tid);
+            statement.setLong(1, tid);
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next()) {
+                    if (index >= 0 && this.days[index] != DELETED) {
+                        this.days[index] = DELETED;
+                        this.deleted++;
+                    }
+                    continue;
+                }
+                if (index < 0) {
+                    index = insertAt(-index - 1);
+                } else if (this.days[index] == DELETED) {
+                    this.deleted--;
+                }
+                set(index, result);
+            }
+        }
+    }
+
+    private void removePatients() {
+        if (this.deletedPatients.isEmpty()) {
+            return;
+        }
+        Set<Long> patients = new HashSet<>(this.deletedPatients);
+        this.deletedPatients.removeAll(patients);
+        for (int i = 0; i < this.size; i++) {
+            if (this.days[i] != DELETED && patients.contains(this.pids[i])) {
+                this.days[i] = DELETED;
+                this.deleted++;
+            }
+        }
+    }
+
+    private void set(int index, ResultSet result) throws SQLException {
+        this.tids[index] = result.getLong(1);
+        this.days[index] = result.getInt(2);
+        this.begins[index] = (short) result.getInt(3);
+        this.ends[index] = (short) result.getInt(4);
+        this.pids[index] = result.getLong(5);
+        this.cids[index] = result.getLong(6);
+        Integer descriptionId = this.descriptionIndexByTextId.get(result.getLong(7));
+        if (descriptionId == null) {
+            descriptionId = this.descriptionIndex.computeIfAbsent(result.getString(8), description -> {
+                this.descriptions.add(description);
+                return this.descriptions.size() - 1;
+            });
+            this.descriptionIndexByTextId.put(result.getLong(7), descriptionId);
+        }
+        this.descriptionIds[index] = descriptionId;
+    }
+
+    /**
+     * Makes room for a row at the given index by moving the rows behind it.
+     */
+    private int insertAt(int index) {
+        ensureCapacity(this.size + 1);
+        int moved = this.size - index;
+        System.arraycopy(this.tids, index, this.tids, index + 1, moved);
+        System.arraycopy(this.days, index, this.days, index + 1, moved);
+        System.arraycopy(this.begins, index, this.begins, index + 1, moved);
+        System.arraycopy(this.ends, index, this.ends, index + 1, moved);
+        System.arraycopy(this.pids, index, this.pids, index + 1, moved);
+        System.arraycopy(this.cids, index, this.cids, index + 1, moved);
+        System.arraycopy(this.descriptionIds, index, this.descriptionIds, index + 1, moved);
+        this.size++;
+        return index;
+    }
+
+    /**
+     * Removes the deleted rows from the arrays.
+     */
+    private void compact() {
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (this.days[i] == DELETED) {
+                continue;
+            }
+            this.tids[kept] = this.tids[i];
+            this.days[kept] = this.days[i];
+            this.begins[kept] = this.begins[i];
+            this.ends[kept] = this.ends[i];
+            this.pids[kept] = this.pids[i];
+            this.cids[kept] = this.cids[i];
+            this.descriptionIds[kept] = this.descriptionIds[i];
+            kept++;
+        }
+        this.size = kept;
+        this.deleted = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.tids.length) {
+            return;
+        }
+        int length = Math.max(capacity, Math.max(INITIAL_CAPACITY, this.tids.length + (this.tids.length >> 1)));
+        this.tids = Arrays.copyOf(this.tids, length);
+        this.days = Arrays.copyOf(this.days, length);
+        this.begins = Arrays.copyOf(this.begins, length);
+        this.ends = Arrays.copyOf(this.ends, length);
+        this.pids = Arrays.copyOf(this.pids, length);
+        this.cids = Arrays.copyOf(this.cids, length);
+        this.descriptionIds = Arrays.copyOf(this.descriptionIds, length);
+    }
+
+    /**
+     * Selects the rows matching a query. Each condition is one pass over the rows selected so far, which keeps the
+     * index of every row and advances the end of the selection only for matching rows, so the loops have no branches
+     * depending on the data. The first pass over the days also drops the deleted rows.
+     *
+     * @return Number of selected rows, whose indexes are at the start of {@link #selection}.
+     */
+    private int select(Query query) {
+        if (this.selection.length < this.size) {
+            this.selection = new int[this.tids.length];
+        }
+        int[] rows = this.selection;
+        int[] days = this.days;
+        int from = query.fromDay;
+        int to = query.toDay;
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            int day = days[i];
+            rows[count] = i;
+            count += day >= from & day <= to ? 1 : 0;
+        }
+        if (query.caregiver != null) {
+            long[] cids = this.cids;
+            long cid = query.caregiver;
+            int matched = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                rows[matched] = row;
+                matched += cids[row] == cid ? 1 : 0;
+            }
+            count = matched;
+        }
+        if (query.description != null) {
+            Integer id = this.descriptionIndex.get(query.description);
+            if (id == null) {
+                return 0;
+            }
+            int[] descriptionIds = this.descriptionIds;
+            int description = id;
+            int matched = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                rows[matched] = row;
+                matched += descriptionIds[row] == description ? 1 : 0;
+            }
+            count = matched;
+        }
+        if (query.patients != null) {
+            long[] pids = this.pids;
+            BitSet patients = query.patients;
+            int matched = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                long pid = pids[row];
+                rows[matched] = row;
+                matched += pid <= Integer.MAX_VALUE && patients.get((int) pid) ? 1 : 0;
+            }
+            count = matched;
+        }
+        return count;
+    }
+
+    private synchronized Aggregate aggregate(Query query) throws SQLException {
+        return DaoMetrics.getInstance().measure(getClass().getSimpleName(), "aggregate", () -> {
+            update();
+            int count = select(query);
+            int[] rows = this.selection;
+            short[] begins = this.begins;
+            short[] ends = this.ends;
+            long minutes = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                minutes += ends[row] - begins[row];
+            }
+            return new Aggregate(count, minutes);
+        });
+    }
+
+    private synchronized Map<String, Aggregate> aggregateByDescription(Query query) throws SQLException {
+        return DaoMetrics.getInstance().measure(getClass().getSimpleName(), "aggregateByDescription", () -> {
+            update();
+            int count = select(query);
+            int[] rows = this.selection;
+            long[] treatments = new long[this.descriptions.size()];
+            long[] minutes = new long[this.descriptions.size()];
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                int description = this.descriptionIds[row];
+                treatments[description]++;
+                minutes[description] += this.ends[row] - this.begins[row];
+            }
+            Map<String, Aggregate> aggregates = new TreeMap<>();
+            for (int description = 0; description < treatments.length; description++) {
+                if (treatments[description] > 0) {
+                    aggregates.put(this.descriptions.get(description),
+                            new Aggregate(treatments[description], minutes[description]));
+                }
+            }
+            return aggregates;
+        });
+    }
+
+    private synchronized long[] readTids(Query query) throws SQLException {
+        return DaoMetrics.getInstance().measure(getClass().getSimpleName(), "readTids", () -> {
+            update();
+            int count = select(query);
+            long[] result = new long[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = this.tids[this.selection[i]];
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Query of the treatments of the snapshot. The conditions are combined with AND; a query without conditions
+     * matches all treatments. Every result is computed from the current state of the snapshot, so a query can be run
+     * again to see later changes.
+     */
+    public final class Query {
+        private int fromDay = DELETED + 1;
+        private int toDay = Integer.MAX_VALUE;
+        private Long caregiver;
+        private String description;
+        private BitSet patients;
+
+        private Query() {
+        }
+
+        /**
+         * Restricts the query to the treatments of the given days.
+         *
+         * @param from First day, inclusive.
+         * @param to   Last day, inclusive.
+         * @return This query.
+         */
+        public Query between(LocalDate from, LocalDate to) {
+            this.fromDay = (int) from.toEpochDay();
+            this.toDay = (int) to.toEpochDay();
+            return this;
+        }
+
+        /**
+         * Restricts the query to the treatments of a caregiver.
+         *
+         * @param cid Id of the caregiver.
+         * @return This query.
+         */
+        public Query withCaregiver(long cid) {
+            this.caregiver = cid;
+            return this;
+        }
+
+        /**
+         * Restricts the query to the treatments of some patients, e.g. those of one care level.
+         *
+         * @param pids Ids of the patients.
+         * @return This query.
+         */
+        public Query withPatients(Collection<Long> pids) {
+            this.patients = new BitSet();
+            for (long pid : pids) {
+                if (pid >= 0 && pid <= Integer.MAX_VALUE) {
+                    this.patients.set((int) pid);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Restricts the query to the treatments with the given description.
+         *
+         * @param description Description of the treatments.
+         * @return This query.
+         */
+        public Query withDescription(String description) {
+            this.description = description;
+            return this;
+        }
+
+        /**
+         * Counts the matching treatments and sums up their durations.
+         *
+         * @return Number and minutes of the matching treatments.
+         */
+        public Aggregate aggregate() throws SQLException {
+            return TreatmentSnapshot.this.aggregate(this);
+        }
+
+        /**
+         * Counts the matching treatments and sums up their durations per description.
+         *
+         * @return Number and minutes of the matching treatments by description, in alphabetical order.
+         */
+        public Map<String, Aggregate> aggregateByDescription() throws SQLException {
+            return TreatmentSnapshot.this.aggregateByDescription(this);
+        }
+
+        /**
+         * Returns the ids of the matching treatments, e.g. to read them with the {@link TreatmentDao}.
+         *
+         * @return Tids of the matching treatments in ascending order.
+         */
+        public long[] readTids() throws SQLException {
+            return TreatmentSnapshot.this.readTids(this);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package de.hitec.nhplus.datastorage;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps a <code>SQLException</code> thrown where no checked exceptions are allowed, e.g. while a
+ * <code>Stream</code> returned by {@link Dao#stream()} reads its next row.
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
@@ -1,13 +1,21 @@
 package de.hitec.nhplus.datastorage;
 
 import de.hitec.nhplus.model.User;
-import org.mindrot.jbcrypt.BCrypt;
+import de.hitec.nhplus.utils.LoginLockedException;
+import de.hitec.nhplus.utils.LoginThrottle;
+import de.hitec.nhplus.utils.PasswordHasher;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -16,6 +24,10 @@ import java.util.ArrayList;
  */
 public class UserDao extends DaoImp<User> {
 
+    private static final int MAX_PENDING_LOGINS = 8;
+    private static final ThreadPoolExecutor AUTHENTICATION_EXECUTOR = createAuthenticationExecutor();
+    private static final LoginThrottle LOGIN_THROTTLE = new LoginThrottle();
+
     /**
      * The constructor initiates an object of <code>UserDao</code> and passes the connection to its super class.
      *
@@ -25,6 +37,16 @@ public class UserDao extends DaoImp<User> {
         super(connection);
     }
 
+    /**
+     * The constructor initiates an object of <code>UserDao</code> and passes the connection manager to its super class.
+     *
+     * @param connectionManager Object of <code>ConnectionManager</code> providing the connections to execute the
+     *                          SQL-statements.
+     */
+    public UserDao(ConnectionManager connectionManager) {
+        super(connectionManager);
+    }
+
     /**
      * Maps a <code>ResultSet</code> of one user to an object of <code>User</code>.
      *
@@ -62,7 +84,7 @@ public class UserDao extends DaoImp<User> {
         PreparedStatement preparedStatement = null;
         try {
             final String SQL = "INSERT INTO user (username, password) VALUES (?, ?)";
-            preparedStatement = this.connection.prepareStatement(SQL);
+            preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setString(1, user.getUsername());
             preparedStatement.setString(2, user.getPassword());
         } catch (SQLException exception) {
@@ -83,7 +105,8 @@ public class UserDao extends DaoImp<User> {
         PreparedStatement preparedStatement = null;
         try {
             final String SQL = "SELECT * FROM user WHERE id = ?";
-            preparedStatement = this.connection.prepareStatement(SQL);
+            preparedStatement = this.prepareStatement(SQL);
+            preparedStatement.setLong(1, uid);
         } catch (SQLException exception) {
             exception.printStackTrace();
         }
@@ -102,7 +125,7 @@ public class UserDao extends DaoImp<User> {
         PreparedStatement statement = null;
         try {
             final String SQL = "SELECT * FROM user";
-            statement = this.connection.prepareStatement(SQL);
+            statement = this.prepareStatement(SQL);
         } catch (SQLException exception) {
             exception.printStackTrace();
         }
@@ -120,6 +143,7 @@ public class UserDao extends DaoImp<User> {
         PreparedStatement preparedStatement = null;
         try {
             final String SQL = "UPDATE user SET username = ?, password = ? WHERE id = ?";
+            preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setString(1, user.getUsername());
             preparedStatement.setString(2, user.getPassword());
             preparedStatement.setInt(3, user.getId());
@@ -140,6 +164,7 @@ public class UserDao extends DaoImp<User> {
         PreparedStatement preparedStatement = null;
         try {
             final String SQL = "DELETE FROM user WHERE id = ?";
+            preparedStatement = this.prepareStatement(SQL);
             preparedStatement.setLong(1, uid);
         } catch (SQLException exception) {
             exception.printStackTrace();
@@ -148,7 +173,12 @@ public class UserDao extends DaoImp<User> {
     }
 
     /**
-     * Checks user credentials by querying the user by username and comparing the password using BCrypt.
+     * Checks user credentials by querying the user by username and comparing the password using BCrypt. If the
+     * stored hash was computed with a lower cost than configured in {@link PasswordHasher}, it is replaced by a new
+     * hash of the password.
+     * <p>
+     * Verifying the password takes hundreds of milliseconds by design; use {@link #authenticateAsync(String, String)}
+     * on the JavaFX application thread.
      *
      * @param username Username of the user trying to authenticate.
      * @param password Plain text password of the user.
@@ -156,19 +186,91 @@ public class UserDao extends DaoImp<User> {
      */
     public User getUserByCredentials(String username, String password) {
         final String SQL = "SELECT * FROM user WHERE username = ?";
-        try (PreparedStatement preparedStatement = this.connection.prepareStatement(SQL)) {
-            preparedStatement.setString(1, username);
-            ResultSet result = preparedStatement.executeQuery();
-
-            if (result.next()) {
-                String storedHash = result.getString("password");
-                if (BCrypt.checkpw(password, storedHash)) {
-                    return getInstanceFromResultSet(result);
+        try {
+            User user = measure("getUserByCredentials", () -> withReadConnection(() -> {
+                PreparedStatement preparedStatement = this.prepareStatement(SQL);
+                preparedStatement.setString(1, username);
+                try (ResultSet result = preparedStatement.executeQuery()) {
+                    return result.next() ? getInstanceFromResultSet(result) : null;
                 }
+            }));
+            if (!PasswordHasher.verify(password, user == null ? null : user.getPassword())) {
+                return null;
+            }
+            if (PasswordHasher.needsRehash(user.getPassword())) {
+                user = rehash(user, password);
             }
+            return user;
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return null;
     }
+
+    /**
+     * Checks user credentials on the authentication executor. Failed attempts are counted per username by a
+     * {@link LoginThrottle}; while a username is locked, the returned future fails with a
+     * {@link LoginLockedException} without verifying the password. If more logins are pending than the executor
+     * accepts, the future fails with a <code>RejectedExecutionException</code>.
+     *
+     * @param username Username of the user trying to authenticate.
+     * @param password Plain text password of the user.
+     * @return Future completed with the <code>User</code> if the credentials are valid, else with <code>null</code>.
+     */
+    public CompletableFuture<User> authenticateAsync(String username, String password) {
+        long remaining = LOGIN_THROTTLE.getRemainingLockMillis(username);
+        if (remaining > 0) {
+            return CompletableFuture.failedFuture(new LoginLockedException(username, remaining));
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                User user = getUserByCredentials(username, password);
+                if (user == null) {
+                    LOGIN_THROTTLE.recordFailure(username);
+                } else {
+                    LOGIN_THROTTLE.recordSuccess(username);
+                }
+                return user;
+            }, AUTHENTICATION_EXECUTOR);
+        } catch (RejectedExecutionException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+    }
+
+    /**
+     * Replaces the stored hash of the given user by a hash of the password with the configured cost.
+     *
+     * @return The user with the new hash, or the given user if the hash could not be stored.
+     */
+    private User rehash(User user, String password) {
+        final String SQL = "UPDATE user SET password = ? WHERE id = ?";
+        String hash = PasswordHasher.hash(password);
+        try {
+            measure("rehash", () -> withWriteConnection(() -> {
+                PreparedStatement preparedStatement = this.prepareStatement(SQL);
+                preparedStatement.setString(1, hash);
+                preparedStatement.setInt(2, user.getId());
+                return preparedStatement.executeUpdate();
+            }));
+            return new User(user.getId(), user.getUsername(), hash);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+            return user;
+        }
+    }
+
+    /**
+     * Creates the executor verifying passwords. It is bounded in threads and pending logins, so a burst of login
+     * attempts occupies at most two cores and is rejected instead of queued without limit.
+     */
+    private static ThreadPoolExecutor createAuthenticationExecutor() {
+        int threads = Math.min(2, Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING_LOGINS), runnable -> {
+            Thread thread = new Thread(runnable, "auth-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
 }
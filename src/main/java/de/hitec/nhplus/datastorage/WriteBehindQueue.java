@@ -0,0 +1,217 @@
+package de.hitec.nhplus.datastorage;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Collects the updates of a table, e.g. the edits of the cells of a <code>TableView</code>, and writes them in the
+ * background. The first update starts a delay, after which all updates collected meanwhile are written in one
+ * transaction with {@link Dao#updateAll(java.util.Collection)}; several updates of the same row are written once, with
+ * the state of its last update. So typing through a row costs one write instead of one per cell, and no update waits
+ * longer than the delay. If {@link #MAX_PENDING} rows are collected, they are written at once.
+ * <p>
+ * The queue collects a copy of every submitted object, so the view can go on editing its object while the background
+ * thread writes the copy, and a flush never sees a row in the middle of an edit.
+ * <p>
+ * Flushes run one after the other on a single background thread, so the updates reach the database in the order they
+ * were submitted. A failed flush is passed to the failure handler; the DAO publishes the rows as updated anyway, so the
+ * views read them again and show what is stored. {@link #shutdown()} writes the updates still collected and has to be
+ * called before the database connections are closed; updates submitted after it are written right away on the
+ * calling thread.
+ *
+ * @param <T> Type of the objects of the table.
+ */
+public class WriteBehindQueue<T> {
+
+    /**
+     * Default time between the first update and the flush writing it.
+     */
+    public static final long DEFAULT_DELAY_MILLIS = 500;
+
+    /**
+     * Number of collected rows which are written without waiting for the delay.
+     */
+    public static final int MAX_PENDING = DaoImp.DEFAULT_BATCH_SIZE;
+
+    private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+    private static final List<WriteBehindQueue<?>> QUEUES = new CopyOnWriteArrayList<>();
+
+    private final Dao<T> dao;
+    private final ToLongFunction<T> keyExtractor;
+    private final UnaryOperator<T> copier;
+    private final long delayMillis;
+    private final Map<Long, T> pending = new LinkedHashMap<>();
+    private final Object flushLock = new Object();
+    private ScheduledFuture<?> scheduledFlush;
+    private volatile Consumer<SQLException> failureHandler;
+
+    private WriteBehindQueue(Dao<T> dao, ToLongFunction<T> keyExtractor, UnaryOperator<T> copier, long delayMillis) {
+        this.dao = dao;
+        this.keyExtractor = keyExtractor;
+        this.copier = copier;
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Creates a queue with the default delay.
+     *
+     * @param dao          DAO writing the updates.
+     * @param keyExtractor Returns the id of an object.
+     * @param copier       Returns a copy of an object with the same id and values.
+     * @param <T>          Type of the objects of the table.
+     * @return The new queue.
+     */
+    public static <T> WriteBehindQueue<T> create(Dao<T> dao, ToLongFunction<T> keyExtractor,
+                                                 UnaryOperator<T> copier) {
+        return create(dao, keyExtractor, copier, DEFAULT_DELAY_MILLIS);
+    }
+
+    /**
+     * Creates a queue and registers it to be written by {@link #shutdown()}. Queues should therefore live as long as
+     * the application, e.g. in the {@link DaoFactory}.
+     *
+     * @param dao          DAO writing the updates.
+     * @param keyExtractor Returns the id of an object.
+     * @param copier       Returns a copy of an object with the same id and values.
+     * @param delayMillis  Maximum time between an update and the flush writing it.
+     * @param <T>          Type of the objects of the table.
+     * @return The new queue.
+     */
+    public static <T> WriteBehindQueue<T> create(Dao<T> dao, ToLongFunction<T> keyExtractor, UnaryOperator<T> copier,
+                                                 long delayMillis) {
+        WriteBehindQueue<T> queue = new WriteBehindQueue<>(dao, keyExtractor, copier, delayMillis);
+        QUEUES.add(queue);
+        return queue;
+    }
+
+    /**
+     * Collects a copy of an updated object. An update of the same row collected before is replaced. After
+     * {@link #shutdown()}, the collected updates are written on the calling thread instead.
+     *
+     * @param t Changed object.
+     */
+    public void submit(T t) {
+        T copy = this.copier.apply(t);
+        synchronized (this) {
+            this.pending.put(this.keyExtractor.applyAsLong(copy), copy);
+            try {
+                if (this.pending.size() >= MAX_PENDING) {
+                    if (this.scheduledFlush != null) {
+                        this.scheduledFlush.cancel(false);
+                    }
+                    this.scheduledFlush = SCHEDULER.schedule(this::flushQuietly, 0, TimeUnit.MILLISECONDS);
+                } else if (this.scheduledFlush == null) {
+                    this.scheduledFlush = SCHEDULER.schedule(this::flushQuietly, this.delayMillis,
+                            TimeUnit.MILLISECONDS);
+                }
+                return;
+            } catch (RejectedExecutionException exception) {
+                this.scheduledFlush = null;
+            }
+        }
+        flushQuietly();
+    }
+
+    /**
+     * Writes the collected updates on the calling thread, without waiting for the delay.
+     *
+     * @throws SQLException If the updates could not be written; they are not collected again.
+     */
+    public void flush() throws SQLException {
+        synchronized (this.flushLock) {
+            List<T> batch;
+            synchronized (this) {
+                batch = new ArrayList<>(this.pending.values());
+                this.pending.clear();
+                this.scheduledFlush = null;
+            }
+            if (!batch.isEmpty()) {
+                this.dao.updateAll(batch);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows collected and not yet written.
+     *
+     * @return Number of pending rows.
+     */
+    public synchronized int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * Sets the handler of failed flushes, e.g. a view showing an error message. The handler is called on the thread
+     * of the flush and has to hand the exception over to its own thread.
+     *
+     * @param failureHandler Handler of failed flushes, or <code>null</code> to only print them.
+     */
+    public void setFailureHandler(Consumer<SQLException> failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Stops the background thread and writes the updates still collected by all queues on the calling thread. Has to
+     * be called before {@link AsyncDao#shutdown()} and before the database connections are closed.
+     */
+    public static void shutdown() {
+        SCHEDULER.shutdown();
+        for (WriteBehindQueue<?> queue : QUEUES) {
+            queue.flushQuietly();
+        }
+        try {
+            SCHEDULER.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the collected updates and passes a failure to the failure handler. Runtime exceptions, e.g. of a
+     * statement parameter the DAO could not convert, are passed on as <code>SQLException</code>, since the flushes on
+     * the background thread would drop them silently otherwise.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException exception) {
+            reportFailure(exception);
+        } catch (RuntimeException exception) {
+            reportFailure(new SQLException(exception.getMessage(), exception));
+        }
+    }
+
+    private void reportFailure(SQLException exception) {
+        exception.printStackTrace();
+        Consumer<SQLException> handler = this.failureHandler;
+        if (handler != null) {
+            handler.accept(exception);
+        }
+    }
+
+    /**
+     * Creates the single daemon thread writing the updates. Delayed flushes are dropped on shutdown, as
+     * {@link #shutdown()} writes their updates itself.
+     */
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
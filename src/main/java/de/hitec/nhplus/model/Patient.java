@@ -54,6 +54,20 @@ public class Patient extends Person {
         this.roomNumber = new SimpleStringProperty(roomNumber);
     }
 
+    /**
+     * Constructor to initiate a copy of the given patient with the same patient id and values. The date of birth is
+     * copied as it is, without parsing it. The treatments are not copied.
+     *
+     * @param patient Patient to copy.
+     */
+    public Patient(Patient patient) {
+        super(patient.getFirstName(), patient.getSurname());
+        this.pid = patient.pid == null ? null : new SimpleLongProperty(patient.getPid());
+        this.dateOfBirth = new SimpleStringProperty(patient.getDateOfBirth());
+        this.careLevel = new SimpleStringProperty(patient.getCareLevel());
+        this.roomNumber = new SimpleStringProperty(patient.getRoomNumber());
+    }
+
     public long getPid() {
         return pid.get();
     }
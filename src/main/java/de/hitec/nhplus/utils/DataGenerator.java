@@ -0,0 +1,422 @@
+package de.hitec.nhplus.utils;
+
+import de.hitec.nhplus.datastorage.ConnectionBuilder;
+import de.hitec.nhplus.datastorage.ConnectionManager;
+import de.hitec.nhplus.datastorage.DaoFactory;
+import de.hitec.nhplus.datastorage.DaoImp;
+import de.hitec.nhplus.datastorage.SchemaMigrator;
+import de.hitec.nhplus.model.Caregiver;
+import de.hitec.nhplus.model.Patient;
+import de.hitec.nhplus.model.Treatment;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fills the database with synthetic patients, caregivers and treatments, e.g. to reproduce a database of production
+ * size for load tests. The rows are generated in chunks on a pool of worker threads, while the calling thread writes
+ * the finished chunks in order with the batches of the DAOs, one transaction per chunk. Large tables are written in
+ * one transaction instead, with the indexes and triggers computed once at the end.
+ * <p>
+ * The data is deterministic: every chunk draws from its own <code>SplittableRandom</code>, split off the random of
+ * the seed in chunk order, so the same seed, numbers of rows and chunk size always generate the same rows, however
+ * many threads are used.
+ * <p>
+ * The treatments are spread evenly over hourly slots from 7 to 19 o'clock, starting at {@link #FIRST_DAY}, for a
+ * year or longer if there are more treatments than patients and caregivers can take in a year. Within a slot every
+ * patient and every caregiver has at most one treatment, so the generated treatments never overlap. Every tenth
+ * caregiver becomes inactive during the period and has no treatments from that day on.
+ */
+public class DataGenerator {
+
+    public static final long DEFAULT_SEED = 1;
+    public static final int DEFAULT_CHUNK_SIZE = 5000;
+
+    /**
+     * Day of the first treatments.
+     */
+    public static final LocalDate FIRST_DAY = LocalDate.of(2023, 1, 1);
+
+    /**
+     * Number of rows of a table from which on it is written in one transaction, see
+     * {@link #write(ExecutorService, String, long, DaoImp, long, SplittableRandom, ChunkGenerator, long[])}.
+     */
+    private static final long BULK_LOAD_THRESHOLD = 100_000;
+
+    private static final int MIN_DAYS = 365;
+    private static final LocalTime FIRST_SLOT = LocalTime.of(7, 0);
+    private static final int SLOTS_PER_DAY = 12;
+    private static final int SLOT_MINUTES = 60;
+    private static final int INACTIVE_CAREGIVER_RATIO = 10;
+
+    private static final LocalDate FIRST_BIRTHDAY = LocalDate.of(1925, 1, 1);
+    private static final int BIRTHDAY_RANGE_DAYS = (int) ChronoUnit.DAYS.between(FIRST_BIRTHDAY,
+            LocalDate.of(1960, 12, 31));
+
+    private static final String[] FIRST_NAMES = {
+            "Anna", "Ahmet", "Berta", "Dieter", "Elena", "Elisabeth", "Emil", "Erika", "Flora", "Franz", "Gertrud",
+            "Günter", "Hannelore", "Hans", "Helga", "Ingrid", "Jonas", "Karl", "Klaus", "Lena", "Lieselotte", "Marc",
+            "Maria", "Martina", "Monika", "Otto", "Renate", "Seppl", "Tim", "Tobias", "Ursula", "Walter", "Wolfgang"
+    };
+    private static final String[] SURNAMES = {
+            "Bauer", "Becker", "Fischer", "Franzen", "Gerdsen", "Hartmann", "Herberger", "Hoffmann", "Klein", "Koch",
+            "Krüger", "Lange", "Meier", "Müller", "Neumann", "Richter", "Schäfer", "Schmidt", "Schneider", "Schulz",
+            "Schwarz", "Wagner", "Weber", "Wolf", "Yilmaz", "Zimmermann"
+    };
+    private static final String[] PHONE_PREFIXES = {"0151", "0157", "0160", "0170", "0176", "040", "0421"};
+
+    /**
+     * Cumulative shares of the care levels 1 to 5 in percent.
+     */
+    private static final int[] CARE_LEVEL_PERCENTILES = {10, 35, 65, 87, 100};
+
+    private static final TreatmentType[] TREATMENT_TYPES = {
+            new TreatmentType("Waschen", new int[]{20, 30, 45},
+                    "Patient mit Waschlappen gewaschen und frisch angezogen.",
+                    "Waschen per Dusche auf einem Stuhl.",
+                    "Ganzkörperwäsche im Bett, Haut eingecremt."),
+            new TreatmentType("Gespräch", new int[]{15, 30, 60},
+                    "Patient ist unruhig und sucht nach seinen Wertsachen.",
+                    "Patient ist heute lebhafter und hat klare Momente; erzählt von seiner Familie.",
+                    "Patient klagt über Einsamkeit."),
+            new TreatmentType("Spaziergang", new int[]{30, 45, 60},
+                    "Spaziergang im Park.",
+                    "Runde über die Etage mit Rollator.",
+                    "Spaziergang im Park, Patient döst im Rollstuhl ein."),
+            new TreatmentType("Physiotherapie", new int[]{30, 45},
+                    "Übungen zur Stabilisation und Mobilisierung der Rückenmuskulatur.",
+                    "Gangtraining mit Rollator.",
+                    "Mobilisierung der Gelenke."),
+            new TreatmentType("KG", new int[]{30, 45},
+                    "Lymphdrainage.",
+                    "Massage der Extremitäten zur Verbesserung der Durchblutung."),
+            new TreatmentType("Toilettengang", new int[]{15},
+                    "Hilfe beim Toilettengang.",
+                    "Hilfe beim Toilettengang; Patient klagt über Schmerzen beim Stuhlgang."),
+            new TreatmentType("Medikamentengabe", new int[]{15},
+                    "Tabletten nach Plan gegeben.",
+                    "Insulin gespritzt, Blutzucker gemessen."),
+            new TreatmentType("Verbandswechsel", new int[]{15, 30},
+                    "Wunde gereinigt und neu verbunden; Wundränder reizlos.",
+                    "Dekubitus am Steiß versorgt."),
+            new TreatmentType("Essen anreichen", new int[]{30, 45},
+                    "Patient hat vollständig gegessen.",
+                    "Patient isst wenig, Trinkmenge dokumentiert."),
+            new TreatmentType("Lagern", new int[]{15},
+                    "Patient gewendet.",
+                    "Lagerung zur Druckentlastung.")
+    };
+    private static final String[] TREATMENT_NOTES = {
+            "Keine Auffälligkeiten.", "Angehörige informiert.", "Arzt verständigt.", "Patient schläft danach ein."
+    };
+
+    private final long seed;
+    private final int chunkSize;
+    private final int threads;
+
+    /**
+     * Creates a generator with the default seed and chunk size, using all but one processor.
+     */
+    public DataGenerator() {
+        this(DEFAULT_SEED, DEFAULT_CHUNK_SIZE, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Creates a generator with the given settings.
+     *
+     * @param seed      Seed of the random data.
+     * @param chunkSize Number of rows generated and written together.
+     * @param threads   Number of threads generating the rows.
+     */
+    public DataGenerator(long seed, int chunkSize, int threads) {
+        if (chunkSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("Chunk size and threads must be at least 1");
+        }
+        this.seed = seed;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Generates the given numbers of patients, caregivers and treatments and writes them to the database. The
+     * treatments reference the generated patients and caregivers only.
+     *
+     * @param patients   Number of patients.
+     * @param caregivers Number of caregivers.
+     * @param treatments Number of treatments.
+     * @throws SQLException If the rows cannot be written. Chunks written before stay persisted, except for a table
+     *                      written in one transaction, which is rolled back completely.
+     */
+    public void generate(int patients, int caregivers, long treatments) throws SQLException {
+        if (patients < 0 || caregivers < 0 || treatments < 0) {
+            throw new IllegalArgumentException("Numbers of rows must not be negative");
+        }
+        Schedule schedule = new Schedule(patients, caregivers, treatments, this.chunkSize);
+        SplittableRandom random = new SplittableRandom(this.seed);
+        DaoFactory factory = DaoFactory.getDaoFactory();
+        ExecutorService executor = createExecutor();
+        try {
+            long[] pids = new long[patients];
+            write(executor, "patient", patients, factory.createPatientDAO(), chunks(patients), random.split(),
+                    (chunk, chunkRandom) -> generatePatients(chunk, patients, chunkRandom), pids);
+            long[] cids = new long[caregivers];
+            write(executor, "caregiver", caregivers, factory.createCaregiverDAO(), chunks(caregivers),
+                    random.split(), (chunk, chunkRandom) -> generateCaregivers(chunk, schedule, chunkRandom), cids);
+            write(executor, "treatment", treatments, factory.createTreatmentDao(), schedule.chunks(), random.split(),
+                    (chunk, chunkRandom) -> generateTreatments(chunk, schedule, pids, cids, chunkRandom), null);
+        } finally {
+            executor.shutdownNow();
+            factory.clearCaches();
+        }
+    }
+
+    /**
+     * Writes the rows of a table. From {@link #BULK_LOAD_THRESHOLD} rows on, the table is written in one transaction
+     * with its indexes and triggers dropped; the indexes, the search index and the daily sums of the treatments are
+     * computed once before the commit, which is several times faster than maintaining them row by row.
+     */
+    private <T> void write(ExecutorService executor, String table, long rows, DaoImp<T> dao, long chunks,
+                           SplittableRandom random, ChunkGenerator<T> generator, long[] keys) throws SQLException {
+        dao.setBatchSize(this.chunkSize);
+        if (rows < BULK_LOAD_THRESHOLD) {
+            writeChunks(executor, dao, chunks, random, generator, keys);
+            return;
+        }
+        ConnectionManager manager = ConnectionBuilder.getConnectionManager();
+        if (manager == null) {
+            throw new SQLException("Keine Verbindung zur Datenbank");
+        }
+        // The tables are reloaded as a whole afterwards, so the keys of the rows are not kept for the views.
+        dao.setChangeNotifier(null);
+        manager.inTransaction(() -> {
+            Connection writer = manager.getWriter();
+            List<String> indexes = SchemaMigrator.dropIndexes(writer, table);
+            List<String> triggers = SchemaMigrator.dropTriggers(writer, table);
+            writeChunks(executor, dao, chunks, random, generator, keys);
+            SchemaMigrator.createIndexes(writer, indexes);
+            SchemaMigrator.createTriggers(writer, table, triggers);
+            return null;
+        });
+    }
+
+    /**
+     * Generates the chunks of a table on the worker pool and writes them in order. At most two chunks per worker are
+     * in flight, so the memory needed does not depend on the number of rows.
+     *
+     * @param keys Receives the generated keys in chunk order, or <code>null</code> if they are not needed.
+     */
+    private <T> void writeChunks(ExecutorService executor, DaoImp<T> dao, long chunks, SplittableRandom random,
+                                 ChunkGenerator<T> generator, long[] keys) throws SQLException {
+        ArrayDeque<Future<List<T>>> pending = new ArrayDeque<>();
+        int written = 0;
+        try {
+            for (long chunk = 0; chunk < chunks; chunk++) {
+                long index = chunk;
+                SplittableRandom chunkRandom = random.split();
+                pending.add(executor.submit(() -> generator.generate(index, chunkRandom)));
+                if (pending.size() >= this.threads * 2) {
+                    written = store(pending.poll(), dao, keys, written);
+                }
+            }
+            while (!pending.isEmpty()) {
+                written = store(pending.poll(), dao, keys, written);
+            }
+        } finally {
+            for (Future<List<T>> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static <T> int store(Future<List<T>> future, DaoImp<T> dao, long[] keys, int written)
+            throws SQLException {
+        List<T> objects;
+        try {
+            objects = future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Datengenerierung unterbrochen", exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException("Datengenerierung fehlgeschlagen", exception.getCause());
+        }
+        List<Long> generatedKeys = dao.createAll(objects);
+        if (keys != null) {
+            for (long key : generatedKeys) {
+                keys[written++] = key;
+            }
+        }
+        return written;
+    }
+
+    private long chunks(int rows) {
+        return (rows + this.chunkSize - 1) / this.chunkSize;
+    }
+
+    private List<Patient> generatePatients(long chunk, int patients, SplittableRandom random) {
+        int first = (int) (chunk * this.chunkSize);
+        int last = Math.min(patients, first + this.chunkSize);
+        List<Patient> list = new ArrayList<>(last - first);
+        for (int i = first; i < last; i++) {
+            int percentile = random.nextInt(100);
+            int careLevel = 1;
+            while (CARE_LEVEL_PERCENTILES[careLevel - 1] <= percentile) {
+                careLevel++;
+            }
+            list.add(new Patient(pick(random, FIRST_NAMES), pick(random, SURNAMES),
+                    FIRST_BIRTHDAY.plusDays(random.nextInt(BIRTHDAY_RANGE_DAYS + 1)), String.valueOf(careLevel),
+                    String.format("%03d", i / 2 + 1)));
+        }
+        return list;
+    }
+
+    private List<Caregiver> generateCaregivers(long chunk, Schedule schedule, SplittableRandom random) {
+        int first = (int) (chunk * this.chunkSize);
+        int last = Math.min(schedule.caregivers, first + this.chunkSize);
+        List<Caregiver> list = new ArrayList<>(last - first);
+        for (int i = first; i < last; i++) {
+            String phoneNumber = pick(random, PHONE_PREFIXES) + String.format("%07d", random.nextInt(10_000_000));
+            int inactiveDay = schedule.inactiveDay(i);
+            list.add(new Caregiver(pick(random, FIRST_NAMES), pick(random, SURNAMES), phoneNumber,
+                    inactiveDay < 0 ? null : FIRST_DAY.plusDays(inactiveDay)));
+        }
+        return list;
+    }
+
+    /**
+     * Generates the treatments of the slots of a chunk. The treatments of a slot are given consecutive patients and
+     * consecutive caregivers active on that day, each starting at a random one, so no patient and no caregiver is
+     * booked twice in the slot.
+     */
+    private static List<Treatment> generateTreatments(long chunk, Schedule schedule, long[] pids, long[] cids,
+                                                      SplittableRandom random) {
+        long firstSlot = chunk * schedule.slotsPerChunk;
+        long lastSlot = Math.min(schedule.slots, firstSlot + schedule.slotsPerChunk);
+        List<Treatment> list = new ArrayList<>((int) (schedule.treatmentsBefore(lastSlot)
+                - schedule.treatmentsBefore(firstSlot)));
+        for (long slot = firstSlot; slot < lastSlot; slot++) {
+            int count = (int) (schedule.treatmentsBefore(slot + 1) - schedule.treatmentsBefore(slot));
+            if (count == 0) {
+                continue;
+            }
+            int day = (int) (slot / SLOTS_PER_DAY);
+            LocalDate date = FIRST_DAY.plusDays(day);
+            LocalTime slotStart = FIRST_SLOT.plusMinutes((slot % SLOTS_PER_DAY) * SLOT_MINUTES);
+            int activeCaregivers = schedule.activeCaregivers[day];
+            int firstPatient = random.nextInt(pids.length);
+            int firstCaregiver = random.nextInt(activeCaregivers);
+            for (int k = 0; k < count; k++) {
+                TreatmentType type = pick(random, TREATMENT_TYPES);
+                int minutes = type.minutes()[random.nextInt(type.minutes().length)];
+                LocalTime begin = slotStart.plusMinutes(5L * random.nextInt((SLOT_MINUTES - minutes) / 5 + 1));
+                String remark = pick(random, type.remarks());
+                if (random.nextInt(3) == 0) {
+                    remark += " " + pick(random, TREATMENT_NOTES);
+                }
+                list.add(new Treatment(pids[(firstPatient + k) % pids.length], date, begin,
+                        begin.plusMinutes(minutes), type.description(), remark,
+                        cids[(firstCaregiver + k) % activeCaregivers]));
+            }
+        }
+        return list;
+    }
+
+    private static <T> T pick(SplittableRandom random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private ExecutorService createExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "data-generator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Generates the rows of one chunk. Must only use the given random, so the rows do not depend on the thread.
+     */
+    @FunctionalInterface
+    private interface ChunkGenerator<T> {
+        List<T> generate(long chunk, SplittableRandom random);
+    }
+
+    private record TreatmentType(String description, int[] minutes, String... remarks) {
+    }
+
+    /**
+     * Distribution of the treatments over the slots and of the caregivers over the days.
+     */
+    private static final class Schedule {
+        private final int caregivers;
+        private final int alwaysActive;
+        private final int days;
+        private final long slots;
+        private final long treatments;
+        private final long slotsPerChunk;
+        private final int[] activeCaregivers;
+
+        private Schedule(int patients, int caregivers, long treatments, int chunkSize) {
+            this.caregivers = caregivers;
+            this.alwaysActive = caregivers - caregivers / INACTIVE_CAREGIVER_RATIO;
+            this.treatments = treatments;
+            int perSlot = Math.min(patients, this.alwaysActive);
+            if (treatments > 0 && perSlot == 0) {
+                throw new IllegalArgumentException("Treatments need at least one patient and one caregiver");
+            }
+            long slotsNeeded = treatments == 0 ? 0 : (treatments + perSlot - 1) / perSlot;
+            long daysNeeded = Math.max(MIN_DAYS, (slotsNeeded + SLOTS_PER_DAY - 1) / SLOTS_PER_DAY);
+            if (daysNeeded > Integer.MAX_VALUE / SLOTS_PER_DAY) {
+                throw new IllegalArgumentException("Too many treatments for " + perSlot + " patients per slot");
+            }
+            this.days = (int) daysNeeded;
+            this.slots = (long) this.days * SLOTS_PER_DAY;
+            this.slotsPerChunk = Math.max(1, chunkSize * this.slots / Math.max(1, treatments));
+            this.activeCaregivers = new int[this.days];
+            for (int i = this.alwaysActive; i < caregivers; i++) {
+                this.activeCaregivers[inactiveDay(i)]--;
+            }
+            int active = caregivers;
+            for (int day = 0; day < this.days; day++) {
+                active += this.activeCaregivers[day];
+                this.activeCaregivers[day] = active;
+            }
+        }
+
+        /**
+         * Returns the day from which on the caregiver with the given index is inactive, or -1 if the caregiver stays
+         * active. The later a caregiver is created, the earlier it becomes inactive, so the active caregivers of a
+         * day are always the first ones.
+         */
+        private int inactiveDay(int caregiver) {
+            if (caregiver < this.alwaysActive) {
+                return -1;
+            }
+            int inactive = this.caregivers - this.alwaysActive;
+            return (int) ((long) this.days * (this.caregivers - caregiver) / (inactive + 1));
+        }
+
+        /**
+         * Returns the number of treatments in the slots before the given one, spreading them evenly.
+         */
+        private long treatmentsBefore(long slot) {
+            return Math.multiplyExact(slot, this.treatments) / this.slots;
+        }
+
+        private long chunks() {
+            return (this.slots + this.slotsPerChunk - 1) / this.slotsPerChunk;
+        }
+    }
+}
@@ -4,24 +4,146 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 
+/**
+ * Converts dates and times between their text form in the database and the user interface ("yyyy-MM-dd" and
+ * "HH:mm") and <code>LocalDate</code> and <code>LocalTime</code>. The conversions run for every row read from the
+ * database, so well-formed fixed-width values are parsed and formatted by hand without intermediate objects; any other
+ * value is passed to a <code>DateTimeFormatter</code>, so the results and exceptions are the same as before.
+ */
 public class DateConverter {
 
     private static final String DATE_FORMAT = "yyyy-MM-dd";
     private static final String TIME_FORMAT = "HH:mm";
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(DATE_FORMAT);
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern(TIME_FORMAT);
+
+    private static final int[] DAYS_BEFORE_MONTH = {0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334};
 
     public static LocalDate convertStringToLocalDate(String date) {
-        return LocalDate.parse(date, DateTimeFormatter.ofPattern(DATE_FORMAT));
+        long fields = parseDateFields(date);
+        if (fields < 0) {
+            return LocalDate.parse(date, DATE_FORMATTER);
+        }
+        return LocalDate.of((int) (fields >> 16), (int) (fields >> 8) & 0xFF, (int) fields & 0xFF);
     }
 
     public static LocalTime convertStringToLocalTime(String time) {
-        return LocalTime.parse(time, DateTimeFormatter.ofPattern(TIME_FORMAT));
+        if (time.length() == 5 && time.charAt(2) == ':') {
+            int hour = twoDigits(time, 0);
+            int minute = twoDigits(time, 3);
+            if (hour >= 0 && hour < 24 && minute >= 0 && minute < 60) {
+                return LocalTime.of(hour, minute);
+            }
+        }
+        return LocalTime.parse(time, TIME_FORMATTER);
     }
 
     public static String convertLocalDateToString(LocalDate date) {
-        return date.format(DateTimeFormatter.ofPattern(DATE_FORMAT));
+        int year = date.getYear();
+        if (year < 1 || year > 9999) {
+            return date.format(DATE_FORMATTER);
+        }
+        char[] chars = new char[10];
+        writeDigits(chars, 0, year, 4);
+        chars[4] = '-';
+        writeDigits(chars, 5, date.getMonthValue(), 2);
+        chars[7] = '-';
+        writeDigits(chars, 8, date.getDayOfMonth(), 2);
+        return new String(chars);
     }
 
     public static String convertLocalTimeToString(LocalTime time) {
-        return time.format(DateTimeFormatter.ofPattern(TIME_FORMAT));
+        char[] chars = new char[5];
+        writeDigits(chars, 0, time.getHour(), 2);
+        chars[2] = ':';
+        writeDigits(chars, 3, time.getMinute(), 2);
+        return new String(chars);
+    }
+
+    /**
+     * Converts a date in the format "yyyy-MM-dd" to the number of days since 1970-01-01, without creating a
+     * <code>LocalDate</code>.
+     *
+     * @param date Date in the format "yyyy-MM-dd".
+     * @return Epoch day of the date, as returned by <code>LocalDate.toEpochDay()</code>.
+     */
+    public static long convertStringToEpochDay(String date) {
+        long fields = parseDateFields(date);
+        if (fields < 0) {
+            return LocalDate.parse(date, DATE_FORMATTER).toEpochDay();
+        }
+        int year = (int) (fields >> 16);
+        int month = (int) (fields >> 8) & 0xFF;
+        int day = (int) fields & 0xFF;
+        // Days since 0000-03-01 of the proleptic Gregorian calendar, shifted to 1970-01-01 (719468 days later).
+        int shiftedYear = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(shiftedYear, 400);
+        int yearOfEra = shiftedYear - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * Converts a number of days since 1970-01-01 to a date in the format "yyyy-MM-dd".
+     *
+     * @param epochDay Epoch day, as returned by <code>LocalDate.toEpochDay()</code>.
+     * @return Date in the format "yyyy-MM-dd".
+     */
+    public static String convertEpochDayToString(long epochDay) {
+        return convertLocalDateToString(LocalDate.ofEpochDay(epochDay));
+    }
+
+    /**
+     * Parses a well-formed date in the format "yyyy-MM-dd" into year, month and day, packed as
+     * <code>year &lt;&lt; 16 | month &lt;&lt; 8 | day</code>.
+     *
+     * @return The packed fields, or -1 if the text is not a valid date of this fixed-width format.
+     */
+    private static long parseDateFields(String date) {
+        if (date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return -1;
+        }
+        int high = twoDigits(date, 0);
+        int low = twoDigits(date, 2);
+        int month = twoDigits(date, 5);
+        int day = twoDigits(date, 8);
+        if (high < 0 || low < 0 || month < 1 || month > 12 || day < 1) {
+            return -1;
+        }
+        int year = high * 100 + low;
+        if (year == 0 || day > lengthOfMonth(year, month)) {
+            // The formatter rejects the year 0 of its year-of-era pattern and resolves e.g. February 30 to the last day
+            // of the month.
+            return -1;
+        }
+        return (long) year << 16 | month << 8 | day;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 12) {
+            return 31;
+        }
+        boolean leap = month == 2 && year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+        return DAYS_BEFORE_MONTH[month] - DAYS_BEFORE_MONTH[month - 1] + (leap ? 1 : 0);
+    }
+
+    /**
+     * Returns the value of the two decimal digits at the given index, or -1 if one of them is not a digit.
+     */
+    private static int twoDigits(String text, int index) {
+        int tens = text.charAt(index) - '0';
+        int ones = text.charAt(index + 1) - '0';
+        if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+            return -1;
+        }
+        return tens * 10 + ones;
+    }
+
+    private static void writeDigits(char[] chars, int index, int value, int width) {
+        for (int position = index + width - 1; position >= index; position--) {
+            chars[position] = (char) ('0' + value % 10);
+            value /= 10;
+        }
     }
 }
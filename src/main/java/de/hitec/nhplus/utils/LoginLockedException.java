@@ -0,0 +1,35 @@
+package de.hitec.nhplus.utils;
+
+/**
+ * Thrown when a login is attempted for a username which is locked by the {@link LoginThrottle} after too many failed
+ * attempts.
+ */
+public class LoginLockedException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long remainingMillis;
+
+    public LoginLockedException(String username, long remainingMillis) {
+        super("Anmeldung für " + username + " gesperrt für " + remainingMillis + " ms");
+        this.remainingMillis = remainingMillis;
+    }
+
+    /**
+     * Returns how long the username is still locked.
+     *
+     * @return Remaining lock in milliseconds.
+     */
+    public long getRemainingMillis() {
+        return this.remainingMillis;
+    }
+
+    /**
+     * Returns the remaining lock rounded up to whole seconds, e.g. to show it to the user.
+     *
+     * @return Remaining lock in seconds.
+     */
+    public long getRemainingSeconds() {
+        return (this.remainingMillis + 999) / 1000;
+    }
+}
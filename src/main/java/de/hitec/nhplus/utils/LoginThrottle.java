@@ -0,0 +1,114 @@
+package de.hitec.nhplus.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits failed login attempts per username. The first failures are free; after that, every further failure locks the
+ * username for twice as long as the previous one, up to a maximum. A successful login resets the counter. Failed
+ * attempts are forgotten when a username had no failure for the reset period, so the map does not grow without bound.
+ * <p>
+ * The limits are configured with the system properties <code>nhplus.login.freeAttempts</code> (default 3),
+ * <code>nhplus.login.baseLockMillis</code> (default 1000) and <code>nhplus.login.maxLockMillis</code> (default 300000).
+ * All methods are thread-safe.
+ */
+public class LoginThrottle {
+
+    private static final long RESET_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final int CLEANUP_THRESHOLD = 1000;
+
+    private final int freeAttempts;
+    private final long baseLockMillis;
+    private final long maxLockMillis;
+    private final ConcurrentHashMap<String, Attempts> attempts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a throttle with the limits from the system properties.
+     */
+    public LoginThrottle() {
+        this(Integer.getInteger("nhplus.login.freeAttempts", 3),
+                Long.getLong("nhplus.login.baseLockMillis", 1000),
+                Long.getLong("nhplus.login.maxLockMillis", TimeUnit.MINUTES.toMillis(5)));
+    }
+
+    /**
+     * Creates a throttle with the given limits.
+     *
+     * @param freeAttempts   Number of failures before the username gets locked.
+     * @param baseLockMillis Duration of the first lock.
+     * @param maxLockMillis  Maximum duration of a lock.
+     */
+    public LoginThrottle(int freeAttempts, long baseLockMillis, long maxLockMillis) {
+        this.freeAttempts = Math.max(freeAttempts, 0);
+        this.baseLockMillis = Math.max(baseLockMillis, 0);
+        this.maxLockMillis = Math.max(maxLockMillis, this.baseLockMillis);
+    }
+
+    /**
+     * Returns how long the given username is still locked.
+     *
+     * @param username Username of the login attempt.
+     * @return Remaining lock in milliseconds, or 0 if a login may be attempted now.
+     */
+    public long getRemainingLockMillis(String username) {
+        Attempts entry = this.attempts.get(normalize(username));
+        if (entry == null) {
+            return 0;
+        }
+        synchronized (entry) {
+            return Math.max(entry.lockedUntil - System.currentTimeMillis(), 0);
+        }
+    }
+
+    /**
+     * Records a failed login and locks the username if it has no free attempts left.
+     *
+     * @param username Username of the failed login.
+     * @return Duration of the lock in milliseconds, or 0 if the username is not locked.
+     */
+    public long recordFailure(String username) {
+        long now = System.currentTimeMillis();
+        if (this.attempts.size() > CLEANUP_THRESHOLD) {
+            this.attempts.values().removeIf(entry -> entry.isExpired(now));
+        }
+        Attempts entry = this.attempts.computeIfAbsent(normalize(username), key -> new Attempts());
+        synchronized (entry) {
+            if (entry.isExpired(now)) {
+                entry.failures = 0;
+            }
+            entry.failures++;
+            entry.lastFailure = now;
+            int lockCount = entry.failures - this.freeAttempts;
+            if (lockCount <= 0) {
+                return 0;
+            }
+            long lock = this.baseLockMillis << Math.min(lockCount - 1, 30);
+            lock = Math.min(lock, this.maxLockMillis);
+            entry.lockedUntil = now + lock;
+            return lock;
+        }
+    }
+
+    /**
+     * Records a successful login and resets the failures of the username.
+     *
+     * @param username Username of the successful login.
+     */
+    public void recordSuccess(String username) {
+        this.attempts.remove(normalize(username));
+    }
+
+    private static String normalize(String username) {
+        return username == null ? "" : username.trim().toLowerCase();
+    }
+
+    private static final class Attempts {
+        private int failures;
+        private long lastFailure;
+        private long lockedUntil;
+
+        private boolean isExpired(long now) {
+            return now - this.lastFailure > RESET_MILLIS && now >= this.lockedUntil;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package de.hitec.nhplus.utils;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * Hashes and verifies passwords with BCrypt. The cost factor of new hashes is read from the system property
+ * <code>nhplus.bcrypt.cost</code> (default 12, allowed 4 to 30). Each increment doubles the time to compute a hash, so
+ * the cost can be raised as hardware gets faster; hashes stored with a lower cost are detected by
+ * {@link #needsRehash(String)} and replaced on the next successful login.
+ */
+public class PasswordHasher {
+
+    public static final int DEFAULT_COST = 12;
+    private static final int MIN_COST = 4;
+    private static final int MAX_COST = 30;
+
+    private static final int COST = Math.max(MIN_COST,
+            Math.min(MAX_COST, Integer.getInteger("nhplus.bcrypt.cost", DEFAULT_COST)));
+
+    /**
+     * Returns the cost factor of new hashes.
+     *
+     * @return Configured BCrypt cost factor.
+     */
+    public static int getCost() {
+        return COST;
+    }
+
+    /**
+     * Hashes the given password with a new salt and the configured cost.
+     *
+     * @param password Plain text password.
+     * @return BCrypt hash of the password.
+     */
+    public static String hash(String password) {
+        return BCrypt.hashpw(password, BCrypt.gensalt(COST));
+    }
+
+    /**
+     * Verifies a password against a stored hash. If there is no stored hash, the password is verified against a
+     * dummy hash, so the call takes as long as for an existing user, and <code>false</code> is returned.
+     *
+     * @param password   Plain text password.
+     * @param storedHash Stored BCrypt hash, or <code>null</code> if the user does not exist.
+     * @return <code>true</code> if the password matches the hash.
+     */
+    public static boolean verify(String password, String storedHash) {
+        if (storedHash == null) {
+            BCrypt.checkpw(password, DummyHash.HASH);
+            return false;
+        }
+        try {
+            return BCrypt.checkpw(password, storedHash);
+        } catch (IllegalArgumentException exception) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether a stored hash was computed with a lower cost than configured and should be replaced.
+     *
+     * @param storedHash Stored BCrypt hash.
+     * @return <code>true</code> if the hash is outdated or cannot be read.
+     */
+    public static boolean needsRehash(String storedHash) {
+        return getCost(storedHash) < COST;
+    }
+
+    /**
+     * Reads the cost factor of a BCrypt hash of the form <code>$2a$10$...</code>.
+     *
+     * @param hash BCrypt hash.
+     * @return Cost factor, or -1 if the hash has a different format.
+     */
+    public static int getCost(String hash) {
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$') {
+            return -1;
+        }
+        int costStart = hash.indexOf('$', 1) + 1;
+        if (costStart <= 0 || costStart + 3 > hash.length() || hash.charAt(costStart + 2) != '$') {
+            return -1;
+        }
+        char tens = hash.charAt(costStart);
+        char ones = hash.charAt(costStart + 1);
+        if (tens < '0' || tens > '9' || ones < '0' || ones > '9') {
+            return -1;
+        }
+        return (tens - '0') * 10 + (ones - '0');
+    }
+
+    /**
+     * Holds the hash of a random password with the configured cost, which is verified against when a user does not
+     * exist, so unknown and known usernames take the same time to reject. It is computed on first use only.
+     */
+    private static final class DummyHash {
+        private static final String HASH = BCrypt.hashpw(Long.toHexString(System.nanoTime()), BCrypt.gensalt(COST));
+    }
+}
@@ -1,180 +1,113 @@
 package de.hitec.nhplus.utils;
 
 import de.hitec.nhplus.datastorage.*;
-import de.hitec.nhplus.model.Caregiver;
-import de.hitec.nhplus.model.Patient;
-import de.hitec.nhplus.model.Treatment;
-import org.mindrot.jbcrypt.BCrypt;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.time.LocalDate;
-
-import static de.hitec.nhplus.utils.DateConverter.convertStringToLocalDate;
-import static de.hitec.nhplus.utils.DateConverter.convertStringToLocalTime;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Call static class provides to static methods to set up and wipe the database. It uses the class ConnectionBuilder
  * and its path to build up the connection to the database. The class is executable. Executing the class will build
  * up a connection to the database and calls setUpDb() to wipe the database, build up a clean database and fill the
- * database with some test data.
+ * database with test data generated by the {@link DataGenerator}. Called with <code>--rebuild-statistics</code>, it
+ * only computes the statistics of the treatments again.
  */
 public class SetUpDB {
 
+    public static final int DEFAULT_PATIENTS = 50;
+    public static final int DEFAULT_CAREGIVERS = 12;
+    public static final long DEFAULT_TREATMENTS = 5000;
+
+    private static final String USAGE = "Aufruf: SetUpDB [--patients=N] [--caregivers=N] [--treatments=N] [--seed=N] "
+            + "[--threads=N] | --rebuild-statistics";
+
     /**
      * This method wipes the database by dropping the tables. Then the method calls DDL statements to build it up from
-     * scratch and DML statements to fill the database with hard coded test data.
+     * scratch and fills it with the default number of generated patients, caregivers and treatments.
      */
     public static void setUpDb() {
-        Connection connection = ConnectionBuilder.getConnection();
-        SetUpDB.wipeDb(connection);
-        SetUpDB.setUpTableCaregiver(connection);
-        SetUpDB.setUpTablePatient(connection);
-        SetUpDB.setUpTableTreatment(connection);
-        SetUpDB.setUpTableUser(connection);
-        SetUpDB.setUpPatients();
-        SetUpDB.setUpTreatments();
-        SetUpDB.setUpTestUsers(connection);
-        SetUpDB.setUpCaregivers();
+        SetUpDB.setUpDb(new DataGenerator(), DEFAULT_PATIENTS, DEFAULT_CAREGIVERS, DEFAULT_TREATMENTS);
     }
 
     /**
-     * This method wipes the database by dropping the tables.
+     * This method wipes the database by dropping the tables. Then the method calls DDL statements to build it up from
+     * scratch and fills it with the test user and the given number of generated rows.
+     *
+     * @param generator  Generator of the rows.
+     * @param patients   Number of patients.
+     * @param caregivers Number of caregivers.
+     * @param treatments Number of treatments.
      */
-    public static void wipeDb(Connection connection) {
-        try (Statement statement = connection.createStatement()) {
-            statement.execute("DROP TABLE IF EXISTS treatment");
-            statement.execute("DROP TABLE IF EXISTS patient");
-            statement.execute("DROP TABLE IF EXISTS caregiver");
-            statement.execute("DROP TABLE IF EXISTS user");
-        } catch (SQLException exception) {
-            System.out.println(exception.getMessage());
+    public static void setUpDb(DataGenerator generator, int patients, int caregivers, long treatments) {
+        ConnectionManager manager = ConnectionBuilder.getConnectionManager();
+        if (manager == null) {
+            return;
         }
-    }
-
-    private static void setUpTableCaregiver(Connection connection) {
-        final String SQL = "CREATE TABLE IF NOT EXISTS caregiver (" +
-                "   cid INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "   firstname TEXT NOT NULL, " +
-                "   surname TEXT NOT NULL, " +
-                "   phonenumber TEXT NOT NULL," +
-                "inactiveSince TEXT" +
-                ");";
-        try (Statement statement = connection.createStatement()) {
-            statement.execute(SQL);
-        } catch (SQLException exception) {
-            System.out.println(exception.getMessage());
-        }
-    }
-
-    private static void setUpTablePatient(Connection connection) {
-        final String SQL = "CREATE TABLE IF NOT EXISTS patient (" +
-                "   pid INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "   firstname TEXT NOT NULL, " +
-                "   surname TEXT NOT NULL, " +
-                "   dateOfBirth TEXT NOT NULL, " +
-                "   carelevel TEXT NOT NULL, " +
-                "   roomnumber TEXT NOT NULL " +
-                ");";
-        try (Statement statement = connection.createStatement()) {
-            statement.execute(SQL);
-        } catch (SQLException exception) {
-            System.out.println(exception.getMessage());
-        }
-    }
-
-    private static void setUpTableTreatment(Connection connection) {
-        final String SQL = "CREATE TABLE IF NOT EXISTS treatment (" +
-                "   tid INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "   pid INTEGER NOT NULL, " +
-                "   treatment_date TEXT NOT NULL, " +
-                "   begin TEXT NOT NULL, " +
-                "   end TEXT NOT NULL, " +
-                "   description TEXT NOT NULL, " +
-                "   remark TEXT NOT NULL," +
-                "   cid INTEGER NOT NULL,"+
-                "   FOREIGN KEY (pid) REFERENCES patient (pid) ON DELETE CASCADE " +
-                ");";
-
-        try (Statement statement = connection.createStatement()) {
-            statement.execute(SQL);
-        } catch (SQLException exception) {
-            System.out.println(exception.getMessage());
-        }
-    }
-
-    private static void setUpTableUser(Connection connection) {
-        final String SQL = "CREATE TABLE IF NOT EXISTS user (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "username TEXT NOT NULL UNIQUE, " +
-                "password TEXT NOT NULL" +
-                ");";
-        try (Statement statement = connection.createStatement()) {
-            statement.execute(SQL);
-        } catch (SQLException exception) {
-            System.out.println(exception.getMessage());
+        ReentrantLock writeLock = manager.getWriteLock();
+        writeLock.lock();
+        try {
+            Connection connection = manager.getWriter();
+            SetUpDB.wipeDb(connection);
+            SetUpDB.setUpTables(connection);
+            SetUpDB.setUpTestUsers(connection);
+        } finally {
+            writeLock.unlock();
         }
-    }
-
-
-    private static void setUpPatients() {
         try {
-            PatientDao dao = DaoFactory.getDaoFactory().createPatientDAO();
-            dao.create(new Patient("Seppl", "Herberger", convertStringToLocalDate("1945-12-01"), "4", "202"));
-            dao.create(new Patient("Martina", "Gerdsen", convertStringToLocalDate("1954-08-12"), "5", "010"));
-            dao.create(new Patient("Gertrud", "Franzen", convertStringToLocalDate("1949-04-16"), "3", "002"));
-            dao.create(new Patient("Ahmet", "Yilmaz", convertStringToLocalDate("1941-02-22"), "3", "013"));
-            dao.create(new Patient("Hans", "Neumann", convertStringToLocalDate("1955-12-12"), "2", "001"));
-            dao.create(new Patient("Elisabeth", "Müller", convertStringToLocalDate("1958-03-07"), "5", "110"));
+            long start = System.nanoTime();
+            generator.generate(patients, caregivers, treatments);
+            System.out.printf("%d Patienten, %d Pflegekräfte und %d Behandlungen in %.1f s erzeugt%n", patients,
+                    caregivers, treatments, (System.nanoTime() - start) / 1e9);
         } catch (SQLException exception) {
             exception.printStackTrace();
         }
     }
 
-    private static void setUpTreatments() {
-        try {
-            TreatmentDao dao = DaoFactory.getDaoFactory().createTreatmentDao();
-            dao.create(new Treatment(1, 1, convertStringToLocalDate("2023-06-03"), convertStringToLocalTime("11:00"), convertStringToLocalTime("15:00"), "Gespräch", "Der Patient hat enorme Angstgefühle und glaubt, er sei überfallen worden. Ihm seien alle Wertsachen gestohlen worden.\nPatient beruhigt sich erst, als alle Wertsachen im Zimmer gefunden worden sind.", 3));
-            dao.create(new Treatment(2, 1, convertStringToLocalDate("2023-06-05"), convertStringToLocalTime("11:00"), convertStringToLocalTime("12:30"), "Gespräch", "Patient irrt auf der Suche nach gestohlenen Wertsachen durch die Etage und bezichtigt andere Bewohner des Diebstahls.\nPatient wird in seinen Raum zurückbegleitet und erhält Beruhigungsmittel.", 6));
-            dao.create(new Treatment(3, 2, convertStringToLocalDate("2023-06-04"), convertStringToLocalTime("07:30"), convertStringToLocalTime("08:00"), "Waschen", "Patient mit Waschlappen gewaschen und frisch angezogen. Patient gewendet.", 5));
-            dao.create(new Treatment(4, 1, convertStringToLocalDate("2023-06-06"), convertStringToLocalTime("15:10"), convertStringToLocalTime("16:00"), "Spaziergang", "Spaziergang im Park, Patient döst  im Rollstuhl ein",4));
-            dao.create(new Treatment(8, 1, convertStringToLocalDate("2023-06-08"), convertStringToLocalTime("15:00"), convertStringToLocalTime("16:00"), "Spaziergang", "Parkspaziergang; Patient ist heute lebhafter und hat klare Momente; erzählt von seiner Tochter",6));
-            dao.create(new Treatment(9, 2, convertStringToLocalDate("2023-06-07"), convertStringToLocalTime("11:00"), convertStringToLocalTime("11:30"), "Waschen", "Waschen per Dusche auf einem Stuhl; Patientin gewendet;", 3));
-            dao.create(new Treatment(12, 5, convertStringToLocalDate("2023-06-08"), convertStringToLocalTime("15:00"), convertStringToLocalTime("15:30"), "Physiotherapie", "Übungen zur Stabilisation und Mobilisierung der Rückenmuskulatur", 7));
-            dao.create(new Treatment(14, 4, convertStringToLocalDate("2023-08-24"), convertStringToLocalTime("09:30"), convertStringToLocalTime("10:15"), "KG", "Lympfdrainage",3));
-            dao.create(new Treatment(16, 6, convertStringToLocalDate("2023-08-31"), convertStringToLocalTime("13:30"), convertStringToLocalTime("13:45"), "Toilettengang", "Hilfe beim Toilettengang; Patientin klagt über Schmerzen beim Stuhlgang. Gabe von Iberogast",4));
-            dao.create(new Treatment(17, 6, convertStringToLocalDate("2023-09-01"), convertStringToLocalTime("16:00"), convertStringToLocalTime("17:00"), "KG", "Massage der Extremitäten zur Verbesserung der Durchblutung",3));
+    /**
+     * This method wipes the database by dropping the tables and resetting the schema version.
+     */
+    public static void wipeDb(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS treatment_search_terms");
+            statement.execute("DROP TABLE IF EXISTS treatment_search");
+            statement.execute("DROP TABLE IF EXISTS patient_search_terms");
+            statement.execute("DROP TABLE IF EXISTS patient_search");
+            statement.execute("DROP TABLE IF EXISTS caregiver_search_terms");
+            statement.execute("DROP TABLE IF EXISTS caregiver_search");
+            statement.execute("DROP TABLE IF EXISTS patient_care_minutes");
+            statement.execute("DROP TABLE IF EXISTS caregiver_care_minutes");
+            statement.execute("DROP VIEW IF EXISTS treatment_with_text");
+            statement.execute("DROP TABLE IF EXISTS treatment");
+            statement.execute("DROP TABLE IF EXISTS treatment_text");
+            statement.execute("DROP TABLE IF EXISTS patient");
+            statement.execute("DROP TABLE IF EXISTS caregiver");
+            statement.execute("DROP TABLE IF EXISTS user");
+            SchemaMigrator.resetVersion(connection);
+            DaoFactory.getDaoFactory().clearCaches();
         } catch (SQLException exception) {
-            exception.printStackTrace();
+            System.out.println(exception.getMessage());
         }
     }
 
     /**
-     * Initializes a predefined list of caregivers and inserts them into the database.
-     * Uses the `CaregiverDao` to persist caregiver objects with names, phone numbers, and optional start dates.
-     *
-     * If an SQL exception occurs during insertion, it is caught and printed to the console.
+     * This method builds up the tables and indexes by applying all schema migrations to the wiped database.
      */
-    private static void setUpCaregivers(){
+    private static void setUpTables(Connection connection) {
         try {
-            CaregiverDao dao = DaoFactory.getDaoFactory().createCaregiverDAO();
-            dao.create(new Caregiver("Tim", "Müller", "1257123124", LocalDate.now()));
-            dao.create(new Caregiver("Flora", "Fischer", "125626776543", LocalDate.now()));
-            dao.create(new Caregiver("Jonas", "Meier", "017612345678", null));
-            dao.create(new Caregiver("Elena", "Schmidt", "015778899001", null));
-            dao.create(new Caregiver("Tobias", "Klein", "016012398765", null));
-            dao.create(new Caregiver("Lena", "Weber", "017698745612", null));
-            dao.create(new Caregiver("Marc", "Zimmermann", "015112233445", null));
-        } catch (SQLException exception){
-            exception.printStackTrace();
+            int applied = SchemaMigrator.migrate(connection);
+            System.out.println(applied + " Migrationen angewendet, Datenbank auf Version "
+                    + SchemaMigrator.getVersion(connection));
+        } catch (SQLException exception) {
+            System.out.println(exception.getMessage());
         }
     }
 
     /**
      * Inserts a predefined test user into the database for authentication testing.
-     * The password is securely hashed using BCrypt before storage.
+     * The password is securely hashed using BCrypt with the cost configured in {@link PasswordHasher} before storage.
      *
      * @param connection The active database connection used for executing the insert statement.
      * @throws SQLException If a database error occurs during user insertion.
@@ -184,7 +117,7 @@ public class SetUpDB {
         final String SQL = "INSERT INTO user (username, password) VALUES (?, ?)";
         try (PreparedStatement stmt = connection.prepareStatement(SQL)) {
             stmt.setString(1, "admin");
-            String hashedPassword = BCrypt.hashpw("admin123", BCrypt.gensalt());
+            String hashedPassword = PasswordHasher.hash("admin123");
             stmt.setString(2, hashedPassword);
             stmt.executeUpdate();
         } catch (SQLException exception) {
@@ -192,7 +125,57 @@ public class SetUpDB {
         }
     }
 
+    /**
+     * Computes the daily sums of the treatments read by the {@link CareStatisticsDao} again from all treatments.
+     */
+    public static void rebuildStatistics() {
+        try {
+            long treatments = DaoFactory.getDaoFactory().createCareStatisticsDao().rebuild();
+            System.out.println("Statistik aus " + treatments + " Behandlungen neu berechnet");
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Sets up the database with generated test data, or with the argument <code>--rebuild-statistics</code> only
+     * computes the statistics of the treatments again. The numbers of rows, the seed and the number of threads
+     * generating the rows are given as <code>--patients=N</code>, <code>--caregivers=N</code>,
+     * <code>--treatments=N</code>, <code>--seed=N</code> and <code>--threads=N</code>.
+     *
+     * @param args Command line arguments.
+     */
     public static void main(String[] args) {
-        SetUpDB.setUpDb();
+        if (args.length > 0 && args[0].equals("--rebuild-statistics")) {
+            SetUpDB.rebuildStatistics();
+            ConnectionBuilder.closeConnection();
+            return;
+        }
+        int patients = DEFAULT_PATIENTS;
+        int caregivers = DEFAULT_CAREGIVERS;
+        long treatments = DEFAULT_TREATMENTS;
+        long seed = DataGenerator.DEFAULT_SEED;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        try {
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                String value = arg.substring(separator + 1);
+                switch (separator < 0 ? arg : arg.substring(0, separator)) {
+                    case "--patients" -> patients = Integer.parseInt(value);
+                    case "--caregivers" -> caregivers = Integer.parseInt(value);
+                    case "--treatments" -> treatments = Long.parseLong(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("Unbekannte Option " + arg);
+                }
+            }
+            DataGenerator generator = new DataGenerator(seed, DataGenerator.DEFAULT_CHUNK_SIZE, threads);
+            SetUpDB.setUpDb(generator, patients, caregivers, treatments);
+        } catch (IllegalArgumentException exception) {
+            System.err.println(exception.getMessage());
+            System.err.println(USAGE);
+        } finally {
+            ConnectionBuilder.closeConnection();
+        }
     }
 }
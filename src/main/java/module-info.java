@@ -4,6 +4,7 @@ module de.hitec.nhplus {
 
     requires org.controlsfx.controls;
     requires java.sql;
+    requires java.management;
     requires org.xerial.sqlitejdbc;
     requires jbcrypt;
 
@@ -14,4 +15,5 @@ module de.hitec.nhplus {
     exports de.hitec.nhplus;
     exports de.hitec.nhplus.controller;
     exports de.hitec.nhplus.model;
+    exports de.hitec.nhplus.datastorage to java.management;
 }
\ No newline at end of file
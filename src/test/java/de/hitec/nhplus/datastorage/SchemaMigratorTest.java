@@ -0,0 +1,101 @@
+package de.hitec.nhplus.datastorage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaMigratorTest {
+
+    @TempDir
+    Path directory;
+
+    private ConnectionManager connectionManager;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        this.connectionManager = new ConnectionManager("jdbc:sqlite:" + directory.resolve("test.db"), 1);
+        SchemaMigrator.migrate(this.connectionManager.getWriter());
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.connectionManager.close();
+    }
+
+    @Test
+    void migrateReachesLatestVersion() throws SQLException {
+        assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.getVersion(this.connectionManager.getWriter()));
+        assertEquals(0, SchemaMigrator.migrate(this.connectionManager.getWriter()));
+    }
+
+    @Test
+    void treatmentsOfPatientUseIndex() throws SQLException {
+        List<String> plan = explain(TreatmentDao.SELECT_WITH_CAREGIVER + " WHERE t.pid = ?");
+
+        assertUsesIndex(plan, "treatment_pid_date", "treatment_pid_tid");
+    }
+
+    @Test
+    void treatmentsOfPatientInDateRangeUsePatientDateIndex() throws SQLException {
+        List<String> plan = explain(TreatmentDao.SELECT_WITH_CAREGIVER +
+                " WHERE t.pid = ? AND t.treatment_date >= ? AND t.treatment_date <= ?");
+
+        assertUsesIndex(plan, "treatment_pid_date");
+    }
+
+    @Test
+    void treatmentsOfCaregiverInDateRangeUseCaregiverDateIndex() throws SQLException {
+        List<String> plan = explain(TreatmentDao.SELECT_WITH_CAREGIVER +
+                " WHERE t.cid = ? AND t.treatment_date >= ? AND t.treatment_date <= ?");
+
+        assertUsesIndex(plan, "treatment_cid_date");
+    }
+
+    @Test
+    void caregiverIsJoinedByPrimaryKey() throws SQLException {
+        List<String> plan = explain(TreatmentDao.SELECT_WITH_CAREGIVER + " WHERE t.pid = ?");
+
+        assertTrue(plan.stream().anyMatch(step -> step.startsWith("SEARCH c USING INTEGER PRIMARY KEY")),
+                "Plan: " + plan);
+    }
+
+    @Test
+    void keysetPagesOfPatientUsePatientTidIndex() throws SQLException {
+        List<String> plan = explain(TreatmentDao.SELECT_WITH_CAREGIVER +
+                " WHERE t.pid = ? AND t.tid > ? ORDER BY t.tid LIMIT ?");
+
+        assertUsesIndex(plan, "treatment_pid_tid");
+        assertTrue(plan.stream().noneMatch(step -> step.contains("TEMP B-TREE")), "Plan: " + plan);
+    }
+
+    @Test
+    void keysetPagesOfCaregiverUseCaregiverTidIndex() throws SQLException {
+        List<String> plan = explain(TreatmentDao.SELECT_WITH_CAREGIVER +
+                " WHERE t.cid = ? AND t.tid > ? ORDER BY t.tid LIMIT ?");
+
+        assertUsesIndex(plan, "treatment_cid_tid");
+        assertTrue(plan.stream().noneMatch(step -> step.contains("TEMP B-TREE")), "Plan: " + plan);
+    }
+
+    private List<String> explain(String sql) throws SQLException {
+        return SchemaMigrator.explainQueryPlan(this.connectionManager.getWriter(), sql);
+    }
+
+    /**
+     * Asserts that the treatments are searched with one of the given indexes instead of scanning the table.
+     */
+    private static void assertUsesIndex(List<String> plan, String... indexes) {
+        assertTrue(plan.stream().noneMatch(step -> step.startsWith("SCAN t")), "Plan: " + plan);
+        assertTrue(plan.stream().anyMatch(step -> List.of(indexes).stream()
+                        .anyMatch(index -> step.startsWith("SEARCH t USING INDEX " + index + " "))),
+                "Plan: " + plan);
+    }
+}
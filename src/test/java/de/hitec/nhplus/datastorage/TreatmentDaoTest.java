@@ -0,0 +1,85 @@
+package de.hitec.nhplus.datastorage;
+
+import de.hitec.nhplus.model.Caregiver;
+import de.hitec.nhplus.model.Patient;
+import de.hitec.nhplus.model.Treatment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TreatmentDaoTest {
+
+    private static final int TREATMENTS = 30;
+
+    @TempDir
+    Path directory;
+
+    private ConnectionManager connectionManager;
+    private List<Long> cids;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        this.connectionManager = new ConnectionManager("jdbc:sqlite:" + directory.resolve("test.db"), 2);
+        SchemaMigrator.migrate(this.connectionManager.getWriter());
+        long pid = new PatientDao(this.connectionManager).createAll(List.of(
+                new Patient("Maria", "Muster", LocalDate.of(1940, 5, 1), "3", "101"))).get(0);
+        List<Caregiver> caregivers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            caregivers.add(new Caregiver("Pfleger", "Nummer " + i, "0170" + i, null));
+        }
+        this.cids = new CaregiverDao(this.connectionManager).createAll(caregivers);
+        List<Treatment> treatments = new ArrayList<>();
+        for (int i = 0; i < TREATMENTS; i++) {
+            treatments.add(new Treatment(pid, LocalDate.of(2023, 1, 1).plusDays(i), LocalTime.of(8, 0),
+                    LocalTime.of(8, 30), "Waschen", "", this.cids.get(i % this.cids.size())));
+        }
+        new TreatmentDao(this.connectionManager).createAll(treatments);
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.connectionManager.close();
+    }
+
+    @Test
+    void readAllReadsTreatmentsWithTheirCaregiversInOneStatement() throws SQLException {
+        DaoMetrics.getInstance().reset();
+
+        List<Treatment> treatments = new TreatmentDao(this.connectionManager).readAll();
+
+        assertEquals(TREATMENTS, treatments.size());
+        assertTrue(treatments.stream().allMatch(treatment -> treatment.getCaregiverSurname() != null));
+        OperationStatistics readAll = getStatistics("TreatmentDao", "readAll");
+        assertEquals(1, readAll.getCount());
+        assertEquals(1, readAll.getStatementCount());
+    }
+
+    @Test
+    void readAllKeepsTreatmentsOfDeletedCaregivers() throws SQLException {
+        new CaregiverDao(this.connectionManager).deleteById(this.cids.get(0));
+
+        List<Treatment> treatments = new TreatmentDao(this.connectionManager).readAll();
+
+        assertEquals(TREATMENTS, treatments.size());
+        assertNull(treatments.get(0).getCaregiverSurname());
+    }
+
+    private static OperationStatistics getStatistics(String dao, String operation) {
+        return DaoMetrics.getInstance().getOperations().stream()
+                .filter(statistics -> statistics.getDao().equals(dao) && statistics.getOperation().equals(operation))
+                .findFirst()
+                .orElseThrow();
+    }
+}